@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import kip.emulator.KiPEmulator;
+import kip.utils.PacketUtils;
+
+/**
+ * A measured operation of the benchmark suite.
+ *
+ * The operation is run back to back from one or more threads for a number of
+ * timed rounds after some untimed warm up rounds, so the measurement is taken
+ * from compiled code. Each thread keeps its own count and folds the results
+ * of the operation into a sink so the work can not be optimized away.
+ * @author Christe, Anthony
+ */
+public abstract class Benchmark {
+    /**
+     * Number of operations run between checks of the clock
+     */
+    private static final int BATCH = 64;
+
+    private static volatile long sink = 0;
+
+    private final String name;
+    private final int threads;
+
+    /**
+     * Creates a benchmark run from a single thread
+     * @param name  name shown in the results
+     */
+    protected Benchmark(String name) {
+        this(name, 1);
+    }
+
+    /**
+     * Creates a benchmark
+     * @param name      name shown in the results
+     * @param threads   number of threads running the operation at once
+     */
+    protected Benchmark(String name, int threads) {
+        this.name = name;
+        this.threads = threads;
+    }
+
+    /**
+     * Get the name of the benchmark
+     * @return name shown in the results
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepares the state used by the operation, before any round is run
+     * @throws Exception if the benchmark can not be prepared
+     */
+    protected void setUp() throws Exception {
+    }
+
+    /**
+     * Releases the state used by the operation, after every round has run
+     * @throws Exception if the state can not be released
+     */
+    protected void tearDown() throws Exception {
+    }
+
+    /**
+     * The operation being measured
+     * @param thread    index of the calling thread
+     * @param op        how many operations the calling thread has run so far
+     * @return          a value depending on the work done
+     * @throws Exception if the operation fails, which ends the benchmark
+     */
+    protected abstract long run(int thread, long op) throws Exception;
+
+    /**
+     * Runs the benchmark
+     * @param warmups   number of untimed rounds
+     * @param rounds    number of timed rounds
+     * @param millis    length of each round
+     * @return          operations per second across all threads of each timed
+     *                  round
+     * @throws Exception if the operation fails
+     */
+    public double[] measure(int warmups, int rounds, long millis) throws Exception {
+        double[] results = new double[rounds];
+
+        setUp();
+        try {
+            for (int i = 0; i < warmups; i++) {
+                round(millis);
+            }
+            for (int i = 0; i < rounds; i++) {
+                results[i] = round(millis);
+            }
+        } finally {
+            tearDown();
+        }
+        return results;
+    }
+
+    /**
+     * Runs the operation from every thread for a fixed amount of time
+     * @param millis    length of the round
+     * @return          operations per second across all threads
+     * @throws Exception if the operation failed on any thread
+     */
+    private double round(long millis) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final Exception[] failure = new Exception[1];
+        long start;
+
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long ops = 0;
+                    long result = 0;
+
+                    try {
+                        ready.countDown();
+                        go.await();
+                        while (running.get()) {
+                            for (int j = 0; j < BATCH; j++) {
+                                result += Benchmark.this.run(thread, ops++);
+                            }
+                        }
+                    } catch (Exception e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    } finally {
+                        total.addAndGet(ops);
+                        sink += result;
+                        done.countDown();
+                    }
+                }
+            }, name + " " + i).start();
+        }
+
+        ready.await();
+        start = System.nanoTime();
+        go.countDown();
+        Thread.sleep(millis);
+        running.set(false);
+        done.await();
+
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return total.get() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Generates server packets like the emulator sends: a voltage of random
+     * amplitude and two out of phase currents of random amplitude and phase
+     * @param count number of packets
+     * @param seed  seed of the random amplitudes and phases, so runs compare
+     * @return      the packets
+     */
+    public static ByteBuffer[] generateFrames(int count, long seed) {
+        Random random = new Random(seed);
+        ByteBuffer[] frames = new ByteBuffer[count];
+        int currentAmp;
+        int currentPhase;
+
+        for (int i = 0; i < count; i++) {
+            currentAmp = random.nextInt(768);
+            currentPhase = random.nextInt(180);
+            frames[i] = ByteBuffer.wrap(PacketUtils.createServerPacket((byte) (i % 8),
+                    KiPEmulator.generateSineWave(763 + random.nextInt(11), random.nextInt(180)),
+                    KiPEmulator.generateSineWave(currentAmp, currentPhase),
+                    KiPEmulator.generateSineWave(currentAmp, currentPhase + 180)));
+        }
+        return frames;
+    }
+}
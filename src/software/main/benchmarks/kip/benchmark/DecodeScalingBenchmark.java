@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import kip.emulator.KiPEmulator;
+import kip.utils.PacketUtils;
+
+/**
+ * Stress benchmark showing how packet decoding scales with the number of
+ * decoding threads.
+ *
+ * Every thread repeatedly decodes a server packet the way a packet used to be
+ * decoded on arrival (samples plus the peak of each data source). The lock
+ * free decoder is compared against the same work serialized on one global
+ * monitor, which is how PacketUtils behaved while its decode methods were
+ * static synchronized.
+ *
+ * Usage: DecodeScalingBenchmark [max threads] [seconds per run]
+ * @author Christe, Anthony
+ */
+public class DecodeScalingBenchmark {
+    private static final Object GLOBAL_LOCK = new Object();
+    private static volatile int sink = 0;
+    private static final byte[] FRAME = PacketUtils.createServerPacket((byte) 1,
+            KiPEmulator.generateSineWave(768, 0),
+            KiPEmulator.generateSineWave(500, 30),
+            KiPEmulator.generateSineWave(500, 210));
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0])
+                                           : Runtime.getRuntime().availableProcessors();
+        int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+        double lockFreeBase = 0;
+        double lockedBase = 0;
+        double lockFree;
+        double locked;
+
+        // Warm up both paths before measuring
+        run(maxThreads, 1000, false);
+        run(maxThreads, 1000, true);
+
+        System.out.println("threads  lock-free ops/s  (scaling)  synchronized ops/s  (scaling)");
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            lockFree = run(threads, seconds * 1000, false);
+            locked = run(threads, seconds * 1000, true);
+            if (threads == 1) {
+                lockFreeBase = lockFree;
+                lockedBase = locked;
+            }
+            System.out.println(String.format("%7d  %15.0f  %8.2fx  %18.0f  %8.2fx",
+                                             threads, lockFree, lockFree / lockFreeBase,
+                                             locked, locked / lockedBase));
+        }
+    }
+
+    /**
+     * Decodes the packet from several threads for a fixed amount of time
+     * @param threads   number of decoding threads
+     * @param millis    how long to decode for
+     * @param global    serialize every decode on one global monitor
+     * @return          decodes per second across all threads
+     */
+    private static double run(int threads, long millis, final boolean global)
+            throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        long start;
+
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long ops = 0;
+                    int result = 0;
+                    while (running.get()) {
+                        if (global) {
+                            synchronized (GLOBAL_LOCK) {
+                                result += decode();
+                            }
+                        } else {
+                            result += decode();
+                        }
+                        ops++;
+                    }
+                    total.addAndGet(ops);
+                    sink = result;
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        start = System.nanoTime();
+        Thread.sleep(millis);
+        running.set(false);
+        done.await();
+        return total.get() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Decodes samples and peaks of every data source
+     * @return a value depending on the result so the work is not optimized away
+     */
+    private static int decode() {
+        int[][] samples = PacketUtils.getDACMeasurements(FRAME);
+        return samples[0][0] + PacketUtils.getMaxDACValue(samples[0])
+               + PacketUtils.getMaxDACValue(samples[1])
+               + PacketUtils.getMaxDACValue(samples[2]);
+    }
+}
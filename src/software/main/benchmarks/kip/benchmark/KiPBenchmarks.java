@@ -0,0 +1,392 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import kip.client.Packet;
+import kip.client.PacketHistory;
+import kip.client.io.CsvReader;
+import kip.client.io.CsvWriter;
+import kip.utils.Constants;
+import kip.utils.PacketUtils;
+import kip.utils.PowerUtils;
+
+/**
+ * Benchmark suite of the decode, DSP, history and file hot paths.
+ *
+ * Every benchmark works on the same set of emulator frames, generated from a
+ * fixed seed, so runs can be compared. Results can be saved and a later run
+ * compared against them, so a change can be measured against a baseline:
+ *
+ *   KiPBenchmarks -o before.txt
+ *   (make the change)
+ *   KiPBenchmarks -b before.txt
+ *
+ * Usage: KiPBenchmarks [-s seconds per round] [-w warm up rounds]
+ *                      [-r rounds] [-o results file] [-b baseline file]
+ *                      [name filter]
+ * @author Christe, Anthony
+ */
+public class KiPBenchmarks {
+    /**
+     * Number of distinct frames cycled through, so branches and caches see
+     * varied data
+     */
+    private static final int FRAME_COUNT = 256;
+
+    /**
+     * Number of frames in the files saved and loaded
+     */
+    private static final int FILE_FRAMES = 1000;
+
+    private static final ByteBuffer[] FRAMES = Benchmark.generateFrames(FRAME_COUNT, 42);
+
+    public static void main(String[] args) throws Exception {
+        double seconds = 1;
+        int warmups = 3;
+        int rounds = 5;
+        String output = null;
+        String baseline = null;
+        String filter = "";
+        Map<String, Double> previous = new HashMap<String, Double>();
+        PrintWriter results = null;
+        double[] measured;
+        double mean;
+        double error;
+        Double before;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-s")) {
+                seconds = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-w")) {
+                warmups = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-r")) {
+                rounds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-o")) {
+                output = args[++i];
+            } else if (args[i].equals("-b")) {
+                baseline = args[++i];
+            } else {
+                filter = args[i];
+            }
+        }
+
+        if (baseline != null) {
+            previous = load(new File(baseline));
+        }
+        if (output != null) {
+            results = new PrintWriter(new FileWriter(output));
+        }
+
+        System.out.println(String.format("%-34s  %14s  %10s  %12s  %9s",
+                                         "benchmark", "ops/s", "+/- ops/s", "ns/op", "baseline"));
+        try {
+            for (Benchmark benchmark : createBenchmarks()) {
+                if (!benchmark.getName().contains(filter)) {
+                    continue;
+                }
+
+                measured = benchmark.measure(warmups, rounds, (long) (seconds * 1000));
+                mean = mean(measured);
+                error = deviation(measured, mean);
+                before = previous.get(benchmark.getName());
+
+                System.out.println(String.format("%-34s  %14.0f  %10.0f  %12.1f  %9s",
+                        benchmark.getName(), mean, error, 1e9 / mean,
+                        (before == null) ? "" : String.format("%+.1f%%", (mean / before - 1) * 100)));
+                if (results != null) {
+                    results.println(benchmark.getName() + "\t" + mean + "\t" + error);
+                }
+            }
+        } finally {
+            if (results != null) {
+                results.close();
+            }
+        }
+    }
+
+    /**
+     * Creates every benchmark of the suite
+     * @return the benchmarks, in the order they are run
+     */
+    private static List<Benchmark> createBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        final byte[][] data = new byte[FRAME_COUNT][];
+        final int[][][] samples = new int[FRAME_COUNT][][];
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            data[i] = FRAMES[i].array();
+            samples[i] = PacketUtils.getDACMeasurements(data[i]);
+        }
+
+        benchmarks.add(new Benchmark("packet construction") {
+            @Override
+            protected long run(int thread, long op) {
+                return new Packet(op, FRAMES[(int) (op % FRAME_COUNT)]).getId();
+            }
+        });
+        benchmarks.add(new Benchmark("packet decode") {
+            @Override
+            protected long run(int thread, long op) {
+                return new Packet(op, FRAMES[(int) (op % FRAME_COUNT)]).getVpk();
+            }
+        });
+        benchmarks.add(new Benchmark("getDACMeasurements") {
+            @Override
+            protected long run(int thread, long op) {
+                return PacketUtils.getDACMeasurements(data[(int) (op % FRAME_COUNT)])[2][63];
+            }
+        });
+        benchmarks.add(new Benchmark("getMaxDACValue") {
+            @Override
+            protected long run(int thread, long op) {
+                return PacketUtils.getMaxDACValue(samples[(int) (op % FRAME_COUNT)][0]);
+            }
+        });
+        benchmarks.add(new Benchmark("isValidPacket") {
+            @Override
+            protected long run(int thread, long op) {
+                return PacketUtils.isValidPacket(data[(int) (op % FRAME_COUNT)],
+                                                 Constants.SERVER_PACKET) ? 1 : 0;
+            }
+        });
+        benchmarks.add(new Benchmark("getFrequency") {
+            @Override
+            protected long run(int thread, long op) {
+                return (long) PowerUtils.getFrequency(samples[(int) (op % FRAME_COUNT)][0]);
+            }
+        });
+        benchmarks.add(new Benchmark("voltageTransform") {
+            @Override
+            protected long run(int thread, long op) {
+                return (long) PowerUtils.voltageTransform(samples[(int) (op % FRAME_COUNT)][0])
+                        .getMagnitude(1);
+            }
+        });
+        benchmarks.add(new HistoryBenchmark(1, 0));
+        benchmarks.add(new HistoryBenchmark(1, 1));
+        if (cores > 2) {
+            benchmarks.add(new HistoryBenchmark(cores / 2, cores / 2));
+        }
+        benchmarks.add(new CsvSaveBenchmark());
+        benchmarks.add(new CsvLoadBenchmark());
+        return benchmarks;
+    }
+
+    /**
+     * Adds frames to a packet history from several writer threads while
+     * reader threads keep taking snapshots and copying frames out of them
+     */
+    private static class HistoryBenchmark extends Benchmark {
+        private final int readers;
+        private final AtomicBoolean reading = new AtomicBoolean();
+        private final List<Thread> readerThreads = new ArrayList<Thread>();
+        private PacketHistory history;
+
+        /**
+         * Creates the benchmark
+         * @param writers   number of threads adding frames, which are measured
+         * @param readers   number of threads reading snapshots
+         */
+        HistoryBenchmark(int writers, int readers) {
+            super("history add (" + writers + "w/" + readers + "r)", writers);
+            this.readers = readers;
+        }
+
+        @Override
+        protected void setUp() {
+            history = new PacketHistory(10000);
+            reading.set(true);
+            for (int i = 0; i < readers; i++) {
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        byte[] data = new byte[Constants.SERVER_PACKET_SIZE];
+                        PacketHistory.Snapshot snapshot;
+
+                        while (reading.get()) {
+                            snapshot = history.snapshot();
+                            for (int j = 0; j < snapshot.size() && reading.get(); j++) {
+                                snapshot.getData(j, data);
+                            }
+                        }
+                    }
+                }, "history reader " + i);
+                reader.setDaemon(true);
+                reader.start();
+                readerThreads.add(reader);
+            }
+        }
+
+        @Override
+        protected void tearDown() throws InterruptedException {
+            reading.set(false);
+            for (Thread reader : readerThreads) {
+                reader.join();
+            }
+            readerThreads.clear();
+        }
+
+        @Override
+        protected long run(int thread, long op) {
+            history.add(op, FRAMES[(int) ((op + thread) % FRAME_COUNT)]);
+            return op;
+        }
+    }
+
+    /**
+     * Saves the frames to a CSV file, one file per operation
+     */
+    private static class CsvSaveBenchmark extends Benchmark {
+        private File file;
+
+        CsvSaveBenchmark() {
+            super("csv save (" + FILE_FRAMES + " frames)");
+        }
+
+        @Override
+        protected void setUp() throws IOException {
+            file = File.createTempFile("kip-benchmark", ".csv");
+            file.deleteOnExit();
+        }
+
+        @Override
+        protected void tearDown() {
+            file.delete();
+        }
+
+        @Override
+        protected long run(int thread, long op) throws IOException {
+            save(file);
+            return file.length();
+        }
+    }
+
+    /**
+     * Loads the frames back from a CSV file, one file per operation
+     */
+    private static class CsvLoadBenchmark extends Benchmark {
+        private File file;
+
+        CsvLoadBenchmark() {
+            super("csv load (" + FILE_FRAMES + " frames)");
+        }
+
+        @Override
+        protected void setUp() throws IOException {
+            file = File.createTempFile("kip-benchmark", ".csv");
+            file.deleteOnExit();
+            save(file);
+        }
+
+        @Override
+        protected void tearDown() {
+            file.delete();
+        }
+
+        @Override
+        protected long run(int thread, long op) throws IOException {
+            CsvReader reader = new CsvReader(file);
+            long result = 0;
+
+            try {
+                while (reader.next()) {
+                    result += reader.getEpoch() + reader.getFrame().get(Constants.SERVER_ID_INDEX);
+                }
+            } finally {
+                reader.close();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Saves the frames to a CSV file
+     * @param file the file to write
+     * @throws IOException if the file can not be written
+     */
+    private static void save(File file) throws IOException {
+        CsvWriter writer = new CsvWriter(file);
+        long epoch = 1350000000000000000L;
+
+        try {
+            for (int i = 0; i < FILE_FRAMES; i++) {
+                writer.write(epoch + i * 10000000L, FRAMES[i % FRAME_COUNT].duplicate());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads the results saved by an earlier run
+     * @param file the results file
+     * @return operations per second by benchmark name
+     * @throws IOException if the file can not be read
+     */
+    private static Map<String, Double> load(File file) throws IOException {
+        Map<String, Double> results = new HashMap<String, Double>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String line;
+        String[] fields;
+
+        try {
+            while ((line = reader.readLine()) != null) {
+                fields = line.split("\t");
+                if (fields.length >= 2) {
+                    results.put(fields[0], Double.parseDouble(fields[1]));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double deviation(double[] values, double mean) {
+        double sum = 0;
+
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return (values.length < 2) ? 0 : Math.sqrt(sum / (values.length - 1));
+    }
+}
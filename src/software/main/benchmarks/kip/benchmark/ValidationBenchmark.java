@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.benchmark;
+
+import java.nio.ByteBuffer;
+import kip.emulator.KiPEmulator;
+import kip.utils.Constants;
+import kip.utils.PacketUtils;
+import kip.utils.PacketValidator;
+
+/**
+ * Micro benchmark of packet validation.
+ *
+ * Compares the byte at a time check of a packet array against the eight
+ * bytes at a time check of a heap buffer and of a direct buffer, the kind
+ * datagrams are received into, on a valid frame, a frame with a bad checksum
+ * (which has to be summed completely) and a frame with a bad header (which
+ * is rejected before summing).
+ *
+ * Usage: ValidationBenchmark [seconds per run]
+ * @author Christe, Anthony
+ */
+public class ValidationBenchmark {
+    private static volatile int sink = 0;
+
+    public static void main(String[] args) {
+        int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 1;
+        byte[] valid = PacketUtils.createServerPacket((byte) 1,
+                KiPEmulator.generateSineWave(768, 0),
+                KiPEmulator.generateSineWave(500, 30),
+                KiPEmulator.generateSineWave(500, 210));
+        byte[] badChecksum = valid.clone();
+        byte[] badHeader = valid.clone();
+        byte[][] frames = {valid, badChecksum, badHeader};
+        String[] names = {"valid", "bad checksum", "bad header"};
+
+        badChecksum[Constants.SERVER_CHECKSUM_INDEX]++;
+        badHeader[Constants.SERVER_HEADER_INDEX]++;
+
+        // Warm up every path before measuring
+        for (byte[] frame : frames) {
+            for (int variant = 0; variant < 3; variant++) {
+                run(frame, variant, 200);
+            }
+        }
+
+        System.out.println("frame          byte array ops/s  heap buffer ops/s  direct buffer ops/s");
+        for (int f = 0; f < frames.length; f++) {
+            System.out.println(String.format("%-13s  %16.0f  %17.0f  %19.0f", names[f],
+                                             run(frames[f], 0, seconds * 1000),
+                                             run(frames[f], 1, seconds * 1000),
+                                             run(frames[f], 2, seconds * 1000)));
+        }
+    }
+
+    /**
+     * Validates a frame repeatedly for a fixed amount of time
+     * @param frame     the frame to validate
+     * @param variant   0 for the byte array, 1 for a heap buffer, 2 for a
+     *                  direct buffer
+     * @param millis    how long to validate for
+     * @return          validations per second
+     */
+    private static double run(byte[] frame, int variant, long millis) {
+        ByteBuffer heap = ByteBuffer.wrap(frame);
+        ByteBuffer direct = ByteBuffer.allocateDirect(frame.length);
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long ops = 0;
+        int result = 0;
+        long now;
+
+        direct.put(frame);
+        direct.flip();
+
+        do {
+            for (int i = 0; i < 1000; i++) {
+                switch (variant) {
+                    case 0:
+                        result += PacketValidator.check(frame, Constants.SERVER_PACKET).ordinal();
+                        break;
+                    case 1:
+                        result += PacketValidator.check(heap, Constants.SERVER_PACKET).ordinal();
+                        break;
+                    default:
+                        result += PacketValidator.check(direct, Constants.SERVER_PACKET).ordinal();
+                        break;
+                }
+            }
+            ops += 1000;
+            now = System.nanoTime();
+        } while (now < end);
+
+        sink = result;
+        return ops / ((now - start) / 1e9);
+    }
+}
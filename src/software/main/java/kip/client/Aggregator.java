@@ -0,0 +1,333 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import kip.utils.DACAnalysis;
+
+/**
+ * Streaming rollups of the samples received from every board.
+ *
+ * Each packet is folded into tumbling windows of one second, one minute and
+ * one hour as it is decoded, so long ranges can be plotted and summarized
+ * from a few thousand rows instead of every stored frame. Sliding windows are
+ * answered by combining the rows they cover.
+ *
+ * Each board keeps a fixed ring of windows per resolution, held in primitive
+ * arrays. A window's slot is reused once a window that much newer arrives, so
+ * the most recent hour of seconds, day of minutes and month of hours are
+ * kept. Packets arriving late still land in the windows still in the ring,
+ * and are counted as late only when no resolution keeps their window. The windows of a board are
+ * charged to a {@link HistoryBudget} when the board is first seen, so they
+ * count against the same memory as the packet histories.
+ * @author Christe, Anthony
+ */
+public class Aggregator {
+    /**
+     * One second windows
+     */
+    public static final int SECOND = 0;
+
+    /**
+     * One minute windows
+     */
+    public static final int MINUTE = 1;
+
+    /**
+     * One hour windows
+     */
+    public static final int HOUR = 2;
+
+    private static final long[] WIDTHS = {1000000000L, 60 * 1000000000L, 3600 * 1000000000L};
+    private static final int[] WINDOWS = {3600, 24 * 60, 31 * 24};
+    private static final int BOARDS = 256;
+
+    /**
+     * Bytes taken by the windows of one board
+     */
+    public static final long BOARD_SIZE = boardSize();
+
+    private final AtomicReferenceArray<Board> boards = new AtomicReferenceArray<Board>(BOARDS);
+    private final AtomicLong late = new AtomicLong();
+    private final HistoryBudget budget;
+
+    /**
+     * Creates an aggregator without a memory budget
+     */
+    public Aggregator() {
+        this(null);
+    }
+
+    /**
+     * Creates an aggregator charging the windows of each board to a budget
+     * @param budget    memory shared with the packet histories, or null for
+     *                  none
+     */
+    public Aggregator(HistoryBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Folds a packet into the windows of its board
+     * @param packet the decoded packet
+     */
+    public void add(Packet packet) {
+        int id = packet.getId() & 0xFF;
+        Board board = boards.get(id);
+
+        if (board == null) {
+            if (boards.compareAndSet(id, null, new Board()) && budget != null) {
+                budget.charge(BOARD_SIZE);
+            }
+            board = boards.get(id);
+        }
+        board.add(packet.getEpochNanos(), packet.getSamples());
+    }
+
+    /**
+     * Returns the windows of a board overlapping a time range
+     * @param board         id of the board
+     * @param resolution    SECOND, MINUTE or HOUR
+     * @param from          nanoseconds since the epoch
+     * @param to            nanoseconds since the epoch, not included
+     * @return              windows holding packets, oldest first
+     */
+    public List<Rollup> query(int board, int resolution, long from, long to) {
+        Board b = boards.get(board & 0xFF);
+        return (b == null) ? new ArrayList<Rollup>() : b.query(board, resolution, from, to);
+    }
+
+    /**
+     * Summarizes a sliding window of a board from the stored windows
+     * @param board         id of the board
+     * @param resolution    SECOND, MINUTE or HOUR, the granularity of the range
+     * @param from          nanoseconds since the epoch
+     * @param to            nanoseconds since the epoch, not included
+     * @return              combination of the windows overlapping the range
+     */
+    public Rollup summarize(int board, int resolution, long from, long to) {
+        return Rollup.merge(board, from, to, query(board, resolution, from, to));
+    }
+
+    /**
+     * Number of packets too old to fit in any window still kept
+     * @return number of late packets
+     */
+    public long getLate() {
+        return late.get();
+    }
+
+    /**
+     * Length of the windows of a resolution
+     * @param resolution SECOND, MINUTE or HOUR
+     * @return nanoseconds
+     */
+    public static long getWidth(int resolution) {
+        return WIDTHS[resolution];
+    }
+
+    /**
+     * Works out the bytes taken by the windows of one board, the window
+     * numbers and packet counts plus the four summaries of each data source
+     * @return bytes per board
+     */
+    private static long boardSize() {
+        long size = 0;
+
+        for (int windows : WINDOWS) {
+            size += (long) windows * (2 * 8 + 4 * DACAnalysis.CHANNELS * 8);
+        }
+        return size;
+    }
+
+    /**
+     * Windows of every resolution for one board
+     */
+    private class Board {
+        private final Series[] series = new Series[WIDTHS.length];
+        private final double[] min = new double[DACAnalysis.CHANNELS];
+        private final double[] max = new double[DACAnalysis.CHANNELS];
+        private final double[] sum = new double[DACAnalysis.CHANNELS];
+        private final double[] energy = new double[DACAnalysis.CHANNELS];
+
+        private Board() {
+            for (int r = 0; r < series.length; r++) {
+                series[r] = new Series(WIDTHS[r], WINDOWS[r]);
+            }
+        }
+
+        /**
+         * Summarizes the samples of a packet once and folds the summary into
+         * every resolution
+         * @param epoch     nanoseconds since the epoch
+         * @param samples   samples of every data source
+         */
+        private synchronized void add(long epoch, int[][] samples) {
+            int[] channel;
+            int low;
+            int high;
+            long total;
+            long squares;
+            boolean kept = false;
+
+            for (int ch = 0; ch < DACAnalysis.CHANNELS; ch++) {
+                channel = samples[ch];
+                low = Integer.MAX_VALUE;
+                high = Integer.MIN_VALUE;
+                total = 0;
+                squares = 0;
+                for (int i = 0; i < channel.length; i++) {
+                    low = Math.min(low, channel[i]);
+                    high = Math.max(high, channel[i]);
+                    total += channel[i];
+                    squares += (long) channel[i] * channel[i];
+                }
+                min[ch] = low;
+                max[ch] = high;
+                sum[ch] = total;
+                energy[ch] = squares;
+            }
+
+            for (Series s : series) {
+                kept |= s.add(epoch, min, max, sum, energy);
+            }
+            if (!kept) {
+                late.incrementAndGet();
+            }
+        }
+
+        /**
+         * Copies out the windows of one resolution overlapping a time range
+         * @param board         id of the board
+         * @param resolution    SECOND, MINUTE or HOUR
+         * @param from          nanoseconds since the epoch
+         * @param to            nanoseconds since the epoch, not included
+         * @return              windows holding packets, oldest first
+         */
+        private synchronized List<Rollup> query(int board, int resolution, long from, long to) {
+            return series[resolution].query(board, from, to);
+        }
+    }
+
+    /**
+     * Ring of tumbling windows of one width. Window number n covers
+     * [n * width, (n + 1) * width) and lives in slot n % capacity.
+     */
+    private static class Series {
+        private final long width;
+        private final int capacity;
+        private final long[] windows;
+        private final long[] packets;
+        private final double[] min;
+        private final double[] max;
+        private final double[] sum;
+        private final double[] energy;
+        private long newest = -1;
+
+        private Series(long width, int capacity) {
+            this.width = width;
+            this.capacity = capacity;
+            this.windows = new long[capacity];
+            this.packets = new long[capacity];
+            this.min = new double[capacity * DACAnalysis.CHANNELS];
+            this.max = new double[capacity * DACAnalysis.CHANNELS];
+            this.sum = new double[capacity * DACAnalysis.CHANNELS];
+            this.energy = new double[capacity * DACAnalysis.CHANNELS];
+            Arrays.fill(windows, -1);
+        }
+
+        /**
+         * Folds the summary of a packet into its window
+         * @param epoch     nanoseconds since the epoch
+         * @param pMin      smallest sample of each data source in the packet
+         * @param pMax      largest sample of each data source in the packet
+         * @param pSum      sum of the samples of each data source in the packet
+         * @param pEnergy   sum of the squared samples of each data source
+         * @return          false if the window is no longer kept
+         */
+        private boolean add(long epoch, double[] pMin, double[] pMax, double[] pSum,
+                            double[] pEnergy) {
+            long window = epoch / width;
+            int slot = (int) (window % capacity);
+            int base = slot * DACAnalysis.CHANNELS;
+
+            if (window <= newest - capacity) {
+                return false;
+            }
+            if (windows[slot] != window) {
+                windows[slot] = window;
+                packets[slot] = 0;
+            }
+            newest = Math.max(newest, window);
+
+            for (int ch = 0; ch < DACAnalysis.CHANNELS; ch++) {
+                if (packets[slot] == 0) {
+                    min[base + ch] = pMin[ch];
+                    max[base + ch] = pMax[ch];
+                    sum[base + ch] = pSum[ch];
+                    energy[base + ch] = pEnergy[ch];
+                } else {
+                    min[base + ch] = Math.min(min[base + ch], pMin[ch]);
+                    max[base + ch] = Math.max(max[base + ch], pMax[ch]);
+                    sum[base + ch] += pSum[ch];
+                    energy[base + ch] += pEnergy[ch];
+                }
+            }
+            packets[slot]++;
+            return true;
+        }
+
+        /**
+         * Copies out the kept windows overlapping a time range
+         * @param board id of the board
+         * @param from  nanoseconds since the epoch
+         * @param to    nanoseconds since the epoch, not included
+         * @return      windows holding packets, oldest first
+         */
+        private List<Rollup> query(int board, long from, long to) {
+            List<Rollup> rollups = new ArrayList<Rollup>();
+            long first = Math.max(Math.max(0, from) / width, newest - capacity + 1);
+            long last = Math.min((to - 1) / width, newest);
+            int slot;
+            int base;
+
+            for (long window = first; window <= last && to > from; window++) {
+                slot = (int) (window % capacity);
+                if (windows[slot] != window || packets[slot] == 0) {
+                    continue;
+                }
+                base = slot * DACAnalysis.CHANNELS;
+                rollups.add(new Rollup(board, window * width, width, packets[slot],
+                        copy(min, base), copy(max, base), copy(sum, base), copy(energy, base)));
+            }
+            return rollups;
+        }
+
+        private static double[] copy(double[] values, int base) {
+            double[] channels = new double[DACAnalysis.CHANNELS];
+            System.arraycopy(values, base, channels, 0, channels.length);
+            return channels;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+/**
+ * Told about every board the ingest engine starts hearing from.
+ * @author Christe, Anthony
+ */
+public interface BoardListener {
+    /**
+     * Called once for each new board, from the decoder thread that received
+     * its first packet
+     * @param board the board's partition
+     */
+    void boardAdded(BoardPartition board);
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Everything kept for one board: its own packet history, rollups and
+ * listeners.
+ *
+ * Rollups cost a decode of every packet and several hundred kilobytes of
+ * windows, so they are only kept once something asks for them and only cover
+ * the packets received from then on.
+ *
+ * A board is identified by the id in its packets together with the address
+ * they come from, so two boards left with the same id are still kept apart.
+ * All packets of a partition are decoded by the same decoder thread, its
+ * shard, which keeps them in receive order and lets the history be written
+ * without contention.
+ * @author Christe, Anthony
+ */
+public class BoardPartition {
+    private final byte id;
+    private final SocketAddress source;
+    private final int shard;
+    private final PacketHistory history;
+    private final HistoryBudget budget;
+    private volatile Aggregator aggregator;
+    private final SequenceTracker sequence = new SequenceTracker();
+    private final List<PacketListener> listeners = new CopyOnWriteArrayList<PacketListener>();
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+
+    /**
+     * Constructs a new partition
+     * @param id        id the board puts in its packets
+     * @param source    address the board sends from
+     * @param shard     decoder thread handling the board's packets
+     * @param capacity  maximum number of packets kept in the board's history
+     */
+    public BoardPartition(byte id, SocketAddress source, int shard, int capacity) {
+        this(id, source, shard, capacity, null);
+    }
+
+    /**
+     * Constructs a new partition whose history and rollups draw on a memory
+     * budget
+     * @param id        id the board puts in its packets
+     * @param source    address the board sends from
+     * @param shard     decoder thread handling the board's packets
+     * @param capacity  maximum number of packets kept in the board's history
+     * @param budget    memory shared with the other boards, or null for none
+     */
+    public BoardPartition(byte id, SocketAddress source, int shard, int capacity,
+                          HistoryBudget budget) {
+        this.id = id;
+        this.source = source;
+        this.shard = shard;
+        this.budget = budget;
+        this.history = new PacketHistory(capacity, budget);
+    }
+
+    /**
+     * Stores a decoded packet of the board and passes it to its listeners.
+     * Only called from the partition's decoder thread.
+     * @param packet the decoded packet
+     * @param valid  whether the packet passed validation, only valid packets
+     *               are folded into the rollups and have their sequence
+     *               number tracked
+     */
+    public void add(Packet packet, boolean valid) {
+        Aggregator rollups = aggregator;
+
+        history.add(packet);
+        packets.incrementAndGet();
+        if (valid) {
+            if (rollups != null) {
+                rollups.add(packet);
+            }
+            sequence.track(packet.getSequence());
+        } else {
+            invalid.incrementAndGet();
+        }
+        for (PacketListener listener : listeners) {
+            listener.packetReceived(packet);
+        }
+    }
+
+    /**
+     * Registers a listener to be given every packet of the board
+     * @param listener the listener, called from the board's decoder thread
+     */
+    public void addPacketListener(PacketListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops giving packets to a listener
+     * @param listener the listener to remove
+     */
+    public void removePacketListener(PacketListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Get the id the board puts in its packets
+     * @return id of the board
+     */
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Get the address the board sends from
+     * @return address of the board
+     */
+    public SocketAddress getSource() {
+        return source;
+    }
+
+    /**
+     * Get the decoder thread handling the board
+     * @return index of the decoder
+     */
+    public int getShard() {
+        return shard;
+    }
+
+    /**
+     * Get the packets received from the board
+     * @return the board's own history
+     */
+    public PacketHistory getPacketHistory() {
+        return history;
+    }
+
+    /**
+     * Get the rollups of the board's valid packets, starting to keep them on
+     * the first call
+     * @return the board's own aggregator
+     */
+    public Aggregator getAggregator() {
+        Aggregator rollups = aggregator;
+
+        if (rollups == null) {
+            synchronized (this) {
+                if (aggregator == null) {
+                    aggregator = new Aggregator(budget);
+                }
+                rollups = aggregator;
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * Get the packets lost or reordered on the way from the board, found from
+     * the sequence numbers of its valid packets
+     * @return the board's sequence tracker
+     */
+    public SequenceTracker getSequenceTracker() {
+        return sequence;
+    }
+
+    /**
+     * Get the number of packets received from the board
+     * @return number of packets
+     */
+    public long getPackets() {
+        return packets.get();
+    }
+
+    /**
+     * Get the number of packets from the board that failed validation
+     * @return number of invalid packets
+     */
+    public long getInvalid() {
+        return invalid.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Board " + (id & 0xFF) + " " + source;
+    }
+}
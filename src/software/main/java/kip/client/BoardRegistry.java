@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import kip.utils.ConfigurationManager;
+
+/**
+ * The partitions of every board heard from.
+ *
+ * Partitions are created the first time a board's packet is decoded and live
+ * as long as the registry. Their histories grow as they fill, drawing on a
+ * memory budget shared by every board. Each board is assigned to a decoder thread by
+ * hashing its id and address, so the receiver can route a datagram before it
+ * is decoded and a board's packets always reach the same thread.
+ * @author Christe, Anthony
+ */
+public class BoardRegistry {
+    private final ConcurrentMap<Key, BoardPartition> boards = new ConcurrentHashMap<Key, BoardPartition>();
+    private final List<BoardListener> listeners = new CopyOnWriteArrayList<BoardListener>();
+    private final int capacity;
+    private final HistoryBudget budget;
+
+    /**
+     * Creates a registry whose boards keep the configured number of packets,
+     * within the configured memory budget shared by every board
+     */
+    public BoardRegistry() {
+        this(Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.BOARD_HISTORY_CAPACITY)),
+             new HistoryBudget(Long.parseLong(ConfigurationManager.getProperty(
+                ConfigurationManager.BOARD_HISTORY_MEMORY_BUDGET)) * 1024 * 1024));
+    }
+
+    /**
+     * Creates a registry without a memory budget
+     * @param capacity maximum number of packets kept in each board's history
+     */
+    public BoardRegistry(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a registry
+     * @param capacity  maximum number of packets kept in each board's history
+     * @param budget    memory shared by the histories of every board, or null
+     *                  for none
+     */
+    public BoardRegistry(int capacity, HistoryBudget budget) {
+        this.capacity = capacity;
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the partition of a board, creating it if this is the board's
+     * first packet
+     * @param id        id in the board's packets
+     * @param source    address the board sends from
+     * @param shard     decoder thread handling the board
+     * @return the board's partition
+     */
+    public BoardPartition get(byte id, SocketAddress source, int shard) {
+        Key key = new Key(id, source);
+        BoardPartition board = boards.get(key);
+        BoardPartition existing;
+
+        if (board == null) {
+            board = new BoardPartition(id, source, shard, capacity, budget);
+            existing = boards.putIfAbsent(key, board);
+            if (existing != null) {
+                return existing;
+            }
+            for (BoardListener listener : listeners) {
+                listener.boardAdded(board);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Returns the partition of a board if it has been heard from
+     * @param id        id in the board's packets
+     * @param source    address the board sends from
+     * @return the board's partition, or null
+     */
+    public BoardPartition find(byte id, SocketAddress source) {
+        return boards.get(new Key(id, source));
+    }
+
+    /**
+     * Returns every board heard from so far
+     * @return the partitions, in no particular order
+     */
+    public List<BoardPartition> getBoards() {
+        return new ArrayList<BoardPartition>(boards.values());
+    }
+
+    /**
+     * Number of boards heard from
+     * @return number of partitions
+     */
+    public int size() {
+        return boards.size();
+    }
+
+    /**
+     * Registers a listener to be told about new boards
+     * @param listener the listener, called from the decoder threads
+     */
+    public void addBoardListener(BoardListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops telling a listener about new boards
+     * @param listener the listener to remove
+     */
+    public void removeBoardListener(BoardListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Picks the decoder thread for a board
+     * @param id        id in the board's packets
+     * @param source    address the board sends from, may be null
+     * @param shards    number of decoder threads
+     * @return index of the decoder, from 0 to shards - 1
+     */
+    public static int shard(byte id, SocketAddress source, int shards) {
+        int hash = 31 * ((source == null) ? 0 : source.hashCode()) + (id & 0xFF);
+
+        // Spread the bits so boards differing only in their low bits separate
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        hash ^= (hash >>> 13);
+        return (hash & Integer.MAX_VALUE) % shards;
+    }
+
+    /**
+     * Identity of a board
+     */
+    private static class Key {
+        private final byte id;
+        private final SocketAddress source;
+
+        private Key(byte id, SocketAddress source) {
+            this.id = id;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return id == other.id
+                   && (source == null ? other.source == null : source.equals(other.source));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * ((source == null) ? 0 : source.hashCode()) + id;
+        }
+    }
+}
@@ -21,13 +21,18 @@ package kip.client;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.net.DatagramSocket;
+import java.io.IOException;
 import java.net.InetAddress;
-import java.net.SocketException;
-import java.util.Arrays;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import javax.swing.JButton;
 import javax.swing.JTextArea;
 import kip.client.ui.RealTimePanel;
+import kip.utils.CommandFrames;
 
 /**
  * Central point that controls the actions and access to the local history between
@@ -35,17 +40,27 @@ import kip.client.ui.RealTimePanel;
  * @author Christe, Anthony
  */
 public class ClientActionManager {
-    private DatagramSocket socket = null;
+    private DatagramChannel channel = null;
     private PacketHistory packetHistory = null;
+    private BoardRegistry boards = null;
+    private TriggerScheduler triggerScheduler = null;
+    private EventLog eventLog = null;
+    private IngestEngine ingestEngine = null;
+    private final List<PacketListener> packetListeners = new CopyOnWriteArrayList<PacketListener>();
 
     /**
      * Creates a new client action manager
      */
     public ClientActionManager() {
         packetHistory = new PacketHistory();
+        boards = new BoardRegistry();
+        triggerScheduler = new TriggerScheduler();
+        eventLog = new EventLog();
         try {
-            socket = new DatagramSocket();
-        } catch (SocketException e) {
+            channel = DatagramChannel.open();
+            channel.bind(null);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
             System.err.println("Unable to create socket");
             System.err.println(e.getMessage());
         }
@@ -78,7 +93,7 @@ public class ClientActionManager {
             port = Integer.parseInt(portStr);
 
             clientWorker = new UDPClientWorker(address, port,
-                    high, low, socket, status);
+                    high, low, channel, eventLog);
             clientWorker.execute();
         } catch (java.net.UnknownHostException e) {
             status.append("Can not connect to host\n");
@@ -115,7 +130,7 @@ public class ClientActionManager {
 
             clientWorker = new UDPClientWorker(address, port, false,
                     addrBytes[0], addrBytes[1], addrBytes[2], addrBytes[3], 
-                    addrBytes[4], addrBytes[5], socket, status);
+                    addrBytes[4], addrBytes[5], channel, eventLog);
             clientWorker.execute();
         } catch (java.net.UnknownHostException e) {
             status.append("Can not connect to host\n");
@@ -152,7 +167,7 @@ public class ClientActionManager {
             
             clientWorker = new UDPClientWorker(address, port, true,
                     addrBytes[0], addrBytes[1], addrBytes[2], addrBytes[3], (byte) 0, (byte) 0,
-                    socket, status);
+                    channel, eventLog);
             
             clientWorker.execute();
             
@@ -185,7 +200,7 @@ public class ClientActionManager {
             port = Integer.parseInt(portStr);
             id = Byte.parseByte(idStr);
 
-            clientWorker = new UDPClientWorker(address, port, id, socket, status);
+            clientWorker = new UDPClientWorker(address, port, id, channel, eventLog);
             clientWorker.execute();
         } catch (java.net.UnknownHostException e) {
             status.append("Can not connect to host\n");
@@ -212,7 +227,7 @@ public class ClientActionManager {
             port = Integer.parseInt(portStr);
             
 
-            clientWorker = new UDPClientWorker(address, port, true, socket, status);
+            clientWorker = new UDPClientWorker(address, port, true, channel, eventLog);
             clientWorker.execute();
         } catch (java.net.UnknownHostException e) {
             status.append("Can not connect to host\n");
@@ -245,16 +260,14 @@ public class ClientActionManager {
             hertz = Integer.parseInt(hertzStr);
             sec = Integer.parseInt(secStr);
 
-            final UDPClientWorker clientWorker = new UDPClientWorker(address,
-                                                                     port, hertz,
-                                                                     sec, socket,
-                                                                     status);
-            clientWorker.execute();
+            final TriggerJob job = triggerScheduler.schedule(channel,
+                    new InetSocketAddress(address, port), hertz,
+                    (sec < 0) ? -1 : (long) hertz * Math.max(sec, 1), eventLog);
 
             btnCancel.addActionListener(new ActionListener() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    clientWorker.cancel(true);
+                    job.cancel();
                 }
             });
 
@@ -268,35 +281,165 @@ public class ClientActionManager {
     }
     
     /**
-     * Stored received board packet to local history
-     * @param packet the packet being stored
+     * Tell a board to stream packets at a fixed rate without being triggered,
+     * and to stop once the duration is over or cancel is pressed
+     * @param addressStr    the ip or host address of the board
+     * @param portStr       the board's listening port
+     * @param hertzStr      how many packets per second the board should send
+     * @param secStr        how many seconds the board should stream (-1 for
+     *                      infinite)
+     * @param status        reference to main window for thread to update
+     * @param btnCancel     reference to cancel button to get action performed
+     */
+    public void startStream(String addressStr, String portStr, String hertzStr,
+                            String secStr, JTextArea status, JButton btnCancel) {
+        InetAddress address = null;
+        int port = -1;
+        int hertz = -1;
+        int sec = -1;
+
+        try {
+            address = java.net.InetAddress.getByName(addressStr);
+            port = Integer.parseInt(portStr);
+            hertz = Integer.parseInt(hertzStr);
+            sec = Integer.parseInt(secStr);
+
+            new UDPClientWorker(address, port, CommandFrames.startStream(hertz),
+                                channel, eventLog).execute();
+
+            final InetAddress board = address;
+            final int boardPort = port;
+            final Runnable stop = new Runnable() {
+                @Override
+                public void run() {
+                    new UDPClientWorker(board, boardPort, CommandFrames.stopStream(),
+                                        channel, eventLog).execute();
+                }
+            };
+            final ScheduledFuture<?> end = (sec < 0) ? null
+                    : triggerScheduler.schedule(stop, Math.max(sec, 1), TimeUnit.SECONDS);
+
+            btnCancel.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (end == null || end.cancel(false)) {
+                        stop.run();
+                    }
+                }
+            });
+
+        } catch (java.net.UnknownHostException e) {
+            status.append("Can not connect to host\n");
+        } catch (NumberFormatException e) {
+            status.append("Unknown port, hertz, or duration\n");
+        } catch (Exception e) {
+            status.append(e.getMessage());
+        }
+    }
+    
+    /**
+     * Let every packet listener know that a board packet was decoded.
+     * 
+     * The packet's frame was already stored in the local history when it was
+     * received.
+     * @param packet the decoded packet
+     */
+    public void packetReceived(Packet packet) {
+        for (PacketListener listener : packetListeners) {
+            listener.packetReceived(packet);
+        }
+    }
+    
+    /**
+     * Registers a listener to be given every packet received
+     * @param listener the listener, called from the decoder threads
+     */
+    public void addPacketListener(PacketListener listener) {
+        packetListeners.add(listener);
+    }
+    
+    /**
+     * Stops giving packets to a listener
+     * @param listener the listener to remove
      */
-    public synchronized void packetReceived(Packet packet) {
-        packetHistory.add(packet);
-        //realTimePanel.updatePanels(packet);
+    public void removePacketListener(PacketListener listener) {
+        packetListeners.remove(listener);
     }
     
     /**
-     * Starts the UDP Server thread
-     * @param status reference to status window for thread updates
+     * Starts the engine that receives and decodes packets from the boards
+     * @param status reference to status window for engine updates
      */
-    public void startServerWorker(JTextArea status) {
-        new UDPServerWorker(socket, status, this).execute();
+    public void startIngestEngine(JTextArea status) {
+        ingestEngine = new IngestEngine(channel, packetHistory, boards, eventLog, this);
+        try {
+            ingestEngine.start();
+        } catch (IOException e) {
+            status.append("Unable to start receiving packets\n" + e.getMessage());
+        }
     }
     
     /**
-     * Starts thread that updates the real time plots
+     * Returns the counters kept while receiving packets
+     * @return the ingest counters, or null if the ingest engine is not running
+     */
+    public IngestStatistics getIngestStatistics() {
+        return (ingestEngine == null) ? null : ingestEngine.getStatistics();
+    }
+    
+    /**
+     * Starts feeding received packets to the real time plots
      * @param realTimePanel reference to realTimePanel for updates
      */
-    public synchronized void startRealTimePlotWorker(RealTimePanel realTimePanel) {
-        new RealTimePlotWorker(realTimePanel, packetHistory).execute();
+    public void startRealTimeFeed(RealTimePanel realTimePanel) {
+        RealTimeFeed feed = new RealTimeFeed(realTimePanel);
+        
+        addPacketListener(feed);
+        feed.start();
+    }
+    
+    /**
+     * Starts feeding the packets of one board to real time plots
+     * @param realTimePanel reference to realTimePanel for updates
+     * @param board         the board whose packets are plotted
+     */
+    public void startRealTimeFeed(RealTimePanel realTimePanel, BoardPartition board) {
+        RealTimeFeed feed = new RealTimeFeed(realTimePanel);
+        
+        board.addPacketListener(feed);
+        feed.start();
     }
     
     /**
      * Returns entire local packet history
      * @return the entire local packet history
      */
-    public synchronized PacketHistory getPacketHistory() {
+    public PacketHistory getPacketHistory() {
         return packetHistory;
     }
+    
+    /**
+     * Get the log of what is sent to and received from the boards
+     * @return the event log, shown in the status window once attached to it
+     */
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+    
+    /**
+     * Get the scheduler sending trigger packets to the boards
+     * @return the trigger scheduler
+     */
+    public TriggerScheduler getTriggerScheduler() {
+        return triggerScheduler;
+    }
+    
+    /**
+     * Get the partitions of every board heard from, each with its own history,
+     * rollups and listeners
+     * @return the board registry fed by the ingest engine
+     */
+    public BoardRegistry getBoards() {
+        return boards;
+    }
 }
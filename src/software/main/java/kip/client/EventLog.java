@@ -0,0 +1,336 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import kip.utils.BoundedQueue;
+import kip.utils.CommandFrames;
+import kip.utils.ConfigurationManager;
+import kip.utils.TimeUtils;
+
+/**
+ * Asynchronous log of what the client sends and receives.
+ *
+ * Logging only records the facts of an event, such as where a packet came
+ * from and its bytes, in a bounded lock-free queue. Nothing is formatted when
+ * an event is logged. A Swing timer drains the queue on the event dispatch
+ * thread and formats only the events that will still be in the status window
+ * once it is trimmed to STATUS_LINES lines.
+ *
+ * At most EVENT_LOG_RATE events are kept each second and at most
+ * EVENT_LOG_SIZE can wait to be shown. Events over either limit are counted
+ * and reported as suppressed, so a flood of packets never costs more than a
+ * counter increment per packet.
+ * @author Christe, Anthony
+ */
+public class EventLog {
+    /**
+     * A plain message
+     */
+    public static final int MESSAGE = 0;
+
+    /**
+     * A packet received from a board
+     */
+    public static final int RECEIVED = 1;
+
+    /**
+     * A packet sent to a board
+     */
+    public static final int SENT = 2;
+
+    /**
+     * How often the status window is updated in milliseconds
+     */
+    private static final int REFRESH_MILLIS = 250;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final BoundedQueue<Event> events;
+    private final int rate;
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger inWindow = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final SimpleDateFormat format = new SimpleDateFormat("MM/dd/yy HH:mm:ss.SSS");
+    private final Date date = new Date();
+    private final int statusLines;
+    private Timer timer = null;
+
+    /**
+     * Creates an event log with the configured limits
+     */
+    public EventLog() {
+        this(Integer.parseInt(ConfigurationManager.getProperty(ConfigurationManager.EVENT_LOG_SIZE)),
+             Integer.parseInt(ConfigurationManager.getProperty(ConfigurationManager.EVENT_LOG_RATE)),
+             Integer.parseInt(ConfigurationManager.getProperty(ConfigurationManager.STATUS_LINES)));
+    }
+
+    /**
+     * Creates an event log
+     * @param size          number of events that can wait to be shown
+     * @param rate          number of events kept per second, 0 for no limit
+     * @param statusLines   number of lines kept in the status window
+     */
+    public EventLog(int size, int rate, int statusLines) {
+        this.events = new BoundedQueue<Event>(size);
+        this.rate = rate;
+        this.statusLines = Math.max(1, statusLines);
+    }
+
+    /**
+     * Logs a message
+     * @param message the message
+     */
+    public void log(String message) {
+        if (admit()) {
+            offer(new Event(MESSAGE, message, null, (byte) 0, false, 0, null));
+        }
+    }
+
+    /**
+     * Logs a packet received from a board
+     * @param source    address the packet came from
+     * @param id        id of the board
+     * @param valid     whether the packet passed validation
+     * @param length    length of the datagram in bytes
+     * @param data      the packet, shown in debug mode, must not be changed
+     *                  afterwards
+     */
+    public void received(SocketAddress source, byte id, boolean valid, int length, byte[] data) {
+        if (admit()) {
+            offer(new Event(RECEIVED, null, source, id, valid, length, data));
+        }
+    }
+
+    /**
+     * Logs a packet sent to a board
+     * @param target    address the packet was sent to
+     * @param frame     the frame sent, from its position to its limit, shown
+     *                  in debug mode, must not be changed afterwards
+     */
+    public void sent(SocketAddress target, ByteBuffer frame) {
+        if (admit()) {
+            offer(new Event(SENT, null, target, (byte) 0, true, frame.remaining(), frame.duplicate()));
+        }
+    }
+
+    /**
+     * Number of events dropped by the rate limit or a full queue since they
+     * were last reported
+     * @return number of events suppressed
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    /**
+     * Starts showing events in a status window
+     * @param status the status window, only touched on the event dispatch
+     *               thread
+     */
+    public void attach(final JTextArea status) {
+        if (timer != null) {
+            timer.stop();
+        }
+        timer = new Timer(REFRESH_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                drain(status);
+            }
+        });
+        timer.start();
+    }
+
+    /**
+     * Stops showing events
+     */
+    public void detach() {
+        if (timer != null) {
+            timer.stop();
+            timer = null;
+        }
+    }
+
+    /**
+     * Formats the waiting events into a status window and trims it to its
+     * line limit. Called on the event dispatch thread.
+     * @param status the status window
+     */
+    public void drain(JTextArea status) {
+        String text = drain();
+
+        if (!text.isEmpty()) {
+            status.append(text);
+            trim(status);
+        }
+    }
+
+    /**
+     * Takes the waiting events and formats those that fit in the status
+     * window, dropping the rest unformatted
+     * @return the formatted lines, each ending in a new line
+     */
+    public String drain() {
+        Event[] waiting = new Event[events.size()];
+        int count = 0;
+        long dropped;
+        Event event;
+        StringBuilder text = new StringBuilder();
+
+        while (count < waiting.length && (event = events.poll()) != null) {
+            waiting[count++] = event;
+        }
+
+        dropped = suppressed.getAndSet(0);
+        if (dropped > 0) {
+            text.append('[').append(formatTime(TimeUtils.now())).append("] ")
+                .append(dropped).append(" log messages suppressed\n");
+        }
+        for (int i = Math.max(0, count - statusLines); i < count; i++) {
+            format(waiting[i], text);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Applies the rate limit
+     * @return true if the event may be kept
+     */
+    private boolean admit() {
+        long second;
+        long current;
+
+        if (rate <= 0) {
+            return true;
+        }
+        second = System.nanoTime() / NANOS_PER_SECOND;
+        current = window.get();
+        if (second != current && window.compareAndSet(current, second)) {
+            inWindow.set(0);
+        }
+        if (inWindow.incrementAndGet() > rate) {
+            suppressed.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues an event, counting it as suppressed if the queue is full
+     * @param event the event
+     */
+    private void offer(Event event) {
+        if (!events.offer(event)) {
+            suppressed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Formats an event as a line of the status window
+     * @param event the event
+     * @param text  receives the line
+     */
+    private void format(Event event, StringBuilder text) {
+        text.append('[').append(formatTime(event.epoch)).append("] ");
+        switch (event.kind) {
+            case RECEIVED:
+                text.append("<RCV> ").append(event.valid ? "[VALID]" : "[INVALID]")
+                    .append(' ').append(event.address).append(" ID=").append(event.id);
+                if (ConfigurationManager.debug()) {
+                    text.append("\n\t[DEBUG][size ").append(event.length).append(']')
+                        .append(Arrays.toString((byte[]) event.data));
+                }
+                break;
+            case SENT:
+                text.append("<SND> ").append(event.address);
+                if (ConfigurationManager.debug()) {
+                    text.append("\n\t[DEBUG][size ").append(event.length).append(']')
+                        .append(CommandFrames.toString((ByteBuffer) event.data));
+                }
+                break;
+            default:
+                text.append(event.message);
+                break;
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Formats a time stamp like the rest of the status window
+     * @param epoch nanoseconds since the epoch
+     * @return the formatted time
+     */
+    private String formatTime(long epoch) {
+        date.setTime(TimeUtils.toMillis(epoch));
+        return format.format(date);
+    }
+
+    /**
+     * Removes the oldest lines of a status window over its limit
+     * @param status the status window
+     */
+    private void trim(JTextArea status) {
+        int excess = status.getLineCount() - statusLines;
+
+        if (excess > 0) {
+            try {
+                status.replaceRange("", 0, status.getLineStartOffset(excess));
+            } catch (BadLocationException e) {
+                status.setText("");
+            }
+        }
+    }
+
+    /**
+     * The facts of one logged event
+     */
+    private static class Event {
+        private final int kind;
+        private final long epoch = TimeUtils.now();
+        private final String message;
+        private final SocketAddress address;
+        private final byte id;
+        private final boolean valid;
+        private final int length;
+        private final Object data;
+
+        private Event(int kind, String message, SocketAddress address, byte id,
+                      boolean valid, int length, Object data) {
+            this.kind = kind;
+            this.message = message;
+            this.address = address;
+            this.id = id;
+            this.valid = valid;
+            this.length = length;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory shared by several packet histories.
+ *
+ * Histories drawing on a budget allocate their storage as they fill and stop
+ * growing once the budget is spent, wrapping around at the size they reached
+ * instead.
+ * The rollups of the boards are charged to the same budget when they are
+ * started.
+ * @author Christe, Anthony
+ */
+public class HistoryBudget {
+    private final long limit;
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * Creates a budget
+     * @param limit bytes the histories may use together
+     */
+    public HistoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Reserves memory if the budget has enough left
+     * @param bytes bytes wanted
+     * @return true if the memory was reserved
+     */
+    public boolean reserve(long bytes) {
+        long current;
+
+        do {
+            current = reserved.get();
+            if (current + bytes > limit) {
+                return false;
+            }
+        } while (!reserved.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * Counts memory that has to be used whether or not the budget has enough
+     * left, such as the first storage of a history
+     * @param bytes bytes used
+     */
+    public void charge(long bytes) {
+        reserved.addAndGet(bytes);
+    }
+
+    /**
+     * Returns reserved memory that ended up not being used
+     * @param bytes bytes no longer used
+     */
+    public void release(long bytes) {
+        reserved.addAndGet(-bytes);
+    }
+
+    /**
+     * Get the memory the histories may use together
+     * @return limit in bytes
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Get the memory used so far
+     * @return reserved bytes
+     */
+    public long getReserved() {
+        return reserved.get();
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import kip.utils.BoundedQueue;
+import kip.utils.ConfigurationManager;
+import kip.utils.Constants;
+import kip.utils.PacketValidator;
+import kip.utils.TimeUtils;
+
+/**
+ * Receives packets from boards and decodes them.
+ *
+ * A single receiver thread waits on a selector for the non-blocking channel to
+ * become readable and then drains up to a batch of ready datagrams into
+ * preallocated slots, each holding a pooled direct buffer. Every datagram read
+ * is stored in the packet history right away, so the history keeps receive
+ * order and holds even the packets that are dropped before decoding.
+ *
+ * Each board, told apart by the id in its packets and its address, is
+ * assigned to one of a pool of decoder threads. The receiver routes every
+ * datagram of the batch to its board's decoder over that decoder's bounded
+ * lock-free queue, so receiving never waits on decoding or on the UI, boards
+ * are decoded in parallel and each board's packets stay in order. Decoded
+ * packets go into the board's own partition, which is created by the board's
+ * first valid packet. When no slot is free or the queue is full, the datagram
+ * is read and counted as dropped so the socket keeps draining. A decoder that
+ * finds its queue empty for a while parks until the receiver queues it more
+ * work, so an idle client uses no processor time.
+ * @author Christe, Anthony
+ */
+public class IngestEngine {
+    /**
+     * How many times an idle decoder checks its queue again before parking
+     */
+    private static final int DECODER_SPINS = 100;
+
+    private final DatagramChannel channel;
+    private final PacketHistory history;
+    private final BoardRegistry boards;
+    private final EventLog log;
+    private final ClientActionManager cam;
+    private final List<BoundedQueue<Datagram>> received;
+    private final BoundedQueue<Datagram> free;
+    private final Datagram overflow = new Datagram();
+    private final Datagram[] batch;
+    private final int receiveBufferSize;
+    private final IngestStatistics statistics = new IngestStatistics();
+    private final Thread receiver;
+    private final Thread[] decoders;
+    private final AtomicIntegerArray parked;
+    private Selector selector = null;
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a new ingest engine
+     * @param channel   non-blocking channel connected to the boards
+     * @param history   history every received packet is stored in
+     * @param boards    partitions decoded packets are stored in
+     * @param log       event log for updates from the engine
+     * @param cam       reference to ClientActionManager
+     */
+    public IngestEngine(DatagramChannel channel, PacketHistory history,
+                        BoardRegistry boards, EventLog log,
+                        ClientActionManager cam) {
+        int queueSize = Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.INGEST_QUEUE_SIZE));
+        int decoderThreads = Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.DECODER_THREADS));
+        int batchSize = Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.RECEIVE_BATCH_SIZE));
+
+        if (decoderThreads <= 0) {
+            decoderThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        this.channel = channel;
+        this.history = history;
+        this.boards = boards;
+        this.log = log;
+        this.cam = cam;
+        this.received = new ArrayList<BoundedQueue<Datagram>>(decoderThreads);
+        for (int i = 0; i < decoderThreads; i++) {
+            received.add(new BoundedQueue<Datagram>(Math.max(1, queueSize / decoderThreads)));
+        }
+        this.batch = new Datagram[Math.max(1, batchSize)];
+        this.receiveBufferSize = Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.RECEIVE_BUFFER_SIZE));
+
+        // Enough slots to fill every queue while every decoder holds one and
+        // the receiver fills a batch
+        this.free = new BoundedQueue<Datagram>(received.size() * received.get(0).capacity()
+                                               + decoderThreads + batch.length);
+        for (int i = 0; i < free.capacity(); i++) {
+            free.offer(new Datagram());
+        }
+
+        this.receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "KiP receiver");
+        this.receiver.setDaemon(true);
+
+        this.decoders = new Thread[decoderThreads];
+        this.parked = new AtomicIntegerArray(decoderThreads);
+        for (int i = 0; i < decoders.length; i++) {
+            final int shard = i;
+            decoders[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    decode(shard);
+                }
+            }, "KiP decoder " + i);
+            decoders[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * Registers the channel for reading and starts the receiver and decoders
+     * @throws IOException if the selector can not be opened
+     */
+    public void start() throws IOException {
+        int actual;
+
+        if (receiveBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            actual = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+            if (actual < receiveBufferSize) {
+                log.log("Receive buffer limited to " + actual + " bytes by the system");
+            }
+        }
+
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        running = true;
+        receiver.start();
+        for (Thread decoder : decoders) {
+            decoder.start();
+        }
+    }
+
+    /**
+     * Stops receiving and decoding packets
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread decoder : decoders) {
+            LockSupport.unpark(decoder);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.log("Problem closing selector");
+        }
+    }
+
+    /**
+     * Get the counters kept by the engine
+     * @return received, invalid, and dropped packet counts
+     */
+    public IngestStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Wait for the channel to become readable and drain the ready datagrams
+     */
+    private void receive() {
+        try {
+            while (running) {
+                if (selector.select() > 0) {
+                    selector.selectedKeys().clear();
+                    receiveBatch();
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Engine was shut down
+        } catch (IOException e) {
+            log.log("Problem receiving response");
+            log.log(e.getMessage());
+        }
+    }
+
+    /**
+     * Read ready datagrams until the socket is empty or the batch is full, then
+     * queue the whole batch to the decoders of the boards it came from
+     * @throws IOException if a datagram can not be read
+     */
+    private void receiveBatch() throws IOException {
+        int count = 0;
+        int read = 0;
+        Datagram datagram;
+        Datagram target;
+        long epoch;
+        SocketAddress source;
+
+        while (read < batch.length) {
+            datagram = free.poll();
+            target = (datagram == null) ? overflow : datagram;
+            target.buffer.clear();
+            source = channel.receive(target.buffer);
+
+            if (source == null) {
+                if (datagram != null) {
+                    free.offer(datagram);
+                }
+                break;
+            }
+
+            read++;
+            epoch = TimeUtils.now();
+            target.buffer.flip();
+            history.add(epoch, target.buffer);
+
+            if (datagram == null) {
+                // No slot to keep it in
+                statistics.dropped();
+            } else {
+                datagram.source = source;
+                datagram.epoch = epoch;
+                datagram.shard = BoardRegistry.shard(peekId(datagram.buffer), source,
+                                                     received.size());
+                batch[count++] = datagram;
+            }
+        }
+
+        statistics.received(read);
+
+        for (int i = 0; i < count; i++) {
+            if (received.get(batch[i].shard).offer(batch[i])) {
+                wake(batch[i].shard);
+            } else {
+                free.offer(batch[i]);
+                statistics.dropped();
+            }
+            batch[i] = null;
+        }
+    }
+
+    /**
+     * Unparks a decoder that is waiting for work, once however many datagrams
+     * were queued to it
+     * @param shard index of the decoder
+     */
+    private void wake(int shard) {
+        if (parked.get(shard) != 0 && parked.compareAndSet(shard, 1, 0)) {
+            LockSupport.unpark(decoders[shard]);
+        }
+    }
+
+    /**
+     * Read the board id of a datagram without decoding it
+     * @param buffer the received datagram
+     * @return id of the board, or 0 if the datagram is too short to hold one
+     */
+    private static byte peekId(ByteBuffer buffer) {
+        int index = buffer.position() + Constants.SERVER_ID_INDEX;
+        return (index < buffer.limit()) ? buffer.get(index) : 0;
+    }
+
+    /**
+     * Take datagrams off a decoder's queue and decode them until the engine
+     * stops, parking while the queue stays empty
+     * @param shard index of the decoder
+     */
+    private void decode(int shard) {
+        BoundedQueue<Datagram> queue = received.get(shard);
+        Datagram datagram;
+        int idle = 0;
+
+        while (running) {
+            datagram = queue.poll();
+            if (datagram != null) {
+                idle = 0;
+                handleDatagram(datagram);
+            } else if (++idle < DECODER_SPINS) {
+                Thread.yield();
+            } else {
+                // Raise the flag before checking the queue once more, so a
+                // datagram queued meanwhile either is found here or has the
+                // receiver unpark this thread
+                parked.set(shard, 1);
+                if (queue.size() == 0 && running) {
+                    LockSupport.park(this);
+                }
+                parked.set(shard, 0);
+                idle = 0;
+            }
+        }
+    }
+
+    /**
+     * Validate the datagram in place, counting why it is invalid, copy it out
+     * of its pooled buffer, store it in its board's partition if the board is
+     * known or the packet is valid, log it, and
+     * let the client action manager know that we've received a packet
+     * @param datagram the received datagram
+     */
+    private void handleDatagram(Datagram datagram) {
+        int length = datagram.buffer.remaining();
+        byte[] data = new byte[Constants.SERVER_PACKET_SIZE];
+        SocketAddress source = datagram.source;
+        long epoch = datagram.epoch;
+        int shard = datagram.shard;
+        boolean valid = statistics.getValidator().validate(datagram.buffer, Constants.SERVER_PACKET)
+                        == PacketValidator.Reason.VALID;
+
+        datagram.buffer.get(data, 0, Math.min(length, data.length));
+        free.offer(datagram);
+
+        byte id = data[Constants.SERVER_ID_INDEX];
+        Packet packet = new Packet(epoch, ByteBuffer.wrap(data));
+        BoardPartition board = valid ? boards.get(id, source, shard) : boards.find(id, source);
+
+        // Only valid packets can add a board, so a damaged id is not taken
+        // for a new board
+        if (board != null) {
+            board.add(packet, valid);
+        }
+        log.received(source, id, valid, length, data);
+        cam.packetReceived(packet);
+    }
+
+    /**
+     * A received datagram and the pooled buffer holding it
+     */
+    private static class Datagram {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(
+                Constants.SERVER_PACKET_SIZE);
+        private SocketAddress source = null;
+        private long epoch = 0;
+        private int shard = 0;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import kip.utils.PacketValidator;
+
+/**
+ * Counters kept by the ingest engine
+ * @author Christe, Anthony
+ */
+public class IngestStatistics {
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final PacketValidator validator = new PacketValidator();
+
+    /**
+     * Counts datagrams read from the socket
+     * @param count number of datagrams read
+     */
+    void received(int count) {
+        received.addAndGet(count);
+    }
+
+    /**
+     * Validator that checks and counts every decoded datagram
+     * @return the validator
+     */
+    PacketValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Counts a datagram that was read but could not be queued for decoding
+     */
+    void dropped() {
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Number of datagrams read from the socket
+     * @return datagrams received
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Number of received datagrams that were not valid server packets
+     * @return invalid datagrams
+     */
+    public long getInvalid() {
+        return validator.getInvalid();
+    }
+
+    /**
+     * Number of received datagrams that failed validation for a reason
+     * @param reason why the datagrams were invalid
+     * @return invalid datagrams
+     */
+    public long getInvalid(PacketValidator.Reason reason) {
+        return validator.getCount(reason);
+    }
+
+    /**
+     * Number of received datagrams dropped because the decoders fell behind
+     * @return dropped datagrams
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Received: " + getReceived() + "  Invalid: " + getInvalid()
+               + "  Dropped: " + getDropped();
+    }
+}
@@ -19,13 +19,27 @@
 
 package kip.client;
 
+import java.nio.ByteBuffer;
 import java.util.Calendar;
 import kip.utils.Constants;
+import kip.utils.DACAnalysis;
+import kip.utils.HarmonicAnalysis;
 import kip.utils.PacketUtils;
 import kip.utils.PowerUtils;
+import kip.utils.RealFFT;
+import kip.utils.Spectrum;
+import kip.utils.TimeUtils;
 
 /**
  * Provides access to data stored in UDP packets
+ * 
+ * The packet only holds a read-only view of the datagram. Samples, peaks,
+ * frequencies, and the FFT are decoded the first time they are asked for and
+ * cached from then on, so packets that are never inspected only cost the copy
+ * (or none at all) made when they were received.
+ * 
+ * The time stamp is kept as nanoseconds since the epoch. Calendar fields are
+ * only worked out when one of the date getters is called.
  * @author Christe, Anthony
  */
 public class Packet implements Comparable<Packet> {
@@ -44,13 +58,21 @@ public class Packet implements Comparable<Packet> {
      */
     public static final int CURRENT_CHANNEL_2 = 2;
     
-    private Calendar timeStamp = null;
-    private byte[] data;
-    private int[][] samples;
-    private int Vpk, curCh1Pk, curCh2Pk;
-    private int delay = 0;
-    private double currentCh1, currentCh2, Vrms, watts, freqCh1, freqCh2;
-    private double[] fft;
+    private final long epochNanos;
+    private final ByteBuffer frame;
+    private volatile DACAnalysis analysis;
+    private volatile Spectrum[] spectra;
+    private volatile HarmonicAnalysis[] harmonics;
+    
+    /**
+     * Constructs a new packet object
+     * @param epochNanos    nanoseconds since the epoch when packet was received
+     * @param data          contents of datagram
+     */
+    public Packet(long epochNanos, byte[] data) {
+        this.epochNanos = epochNanos;
+        this.frame = ByteBuffer.wrap(data.clone()).asReadOnlyBuffer();
+    }
     
     /**
      * Constructs a new packet object
@@ -58,23 +80,33 @@ public class Packet implements Comparable<Packet> {
      * @param data contents of datagram
      */
     public Packet(Calendar timeStamp, byte[] data) {
-        this.timeStamp = timeStamp;
-        this.data = data.clone();
-        this.samples = PacketUtils.getDACMeasurements(this.data);
-        this.fft = PowerUtils.voltageTransform(samples[VOLTAGE]);
-        this.Vpk = PacketUtils.getMaxDACValue(data, VOLTAGE);
-        this.curCh1Pk = PacketUtils.getMaxDACValue(data, CURRENT_CHANNEL_1);
-        this.curCh2Pk = PacketUtils.getMaxDACValue(data, CURRENT_CHANNEL_2);
-        this.currentCh1 = PowerUtils.getCurrentCh1(curCh1Pk);
-        this.currentCh2 = PowerUtils.getCurrentCh2(curCh2Pk);
-        this.Vrms = this.Vpk / Constants.SQRT_OF_2;
-        this.watts = PowerUtils.getWatts(this.Vpk / Constants.SQRT_OF_2,
-                                         this.currentCh1);
-        this.freqCh1 = PowerUtils.getFrequency(samples[CURRENT_CHANNEL_1]);
-        this.freqCh2 = PowerUtils.getFrequency(samples[CURRENT_CHANNEL_2]);
-        this.delay = this.delay  | (data[Constants.SERVER_DELAY_INDEX_HIGH] & 0xFF);
-        this.delay = this.delay << 8;
-        this.delay = this.delay | (data[Constants.SERVER_DELAY_INDEX_LOW] & 0xFF);
+        this(TimeUtils.fromMillis(timeStamp.getTimeInMillis()), data);
+    }
+    
+    /**
+     * Constructs a new packet object without copying the datagram.
+     * 
+     * The packet keeps a read-only view of the remaining bytes of frame, so the
+     * caller must not reuse that region of the buffer once the packet is built.
+     * @param epochNanos    nanoseconds since the epoch when packet was received
+     * @param frame         buffer positioned at the start of the datagram
+     */
+    public Packet(long epochNanos, ByteBuffer frame) {
+        this.epochNanos = epochNanos;
+        this.frame = frame.slice().asReadOnlyBuffer();
+    }
+    
+    /**
+     * Decodes and analyzes all data sources on first access
+     * @return samples, peaks, frequencies, and RMS of all data sources
+     */
+    private DACAnalysis analysis() {
+        DACAnalysis a = analysis;
+        if (a == null) {
+            a = PowerUtils.analyze(frame, new DACAnalysis());
+            analysis = a;
+        }
+        return a;
     }
     
     /**
@@ -82,7 +114,17 @@ public class Packet implements Comparable<Packet> {
      * @return data stored in packet
      */
     public byte[] getData() {
-        return this.data.clone();
+        byte[] data = new byte[frame.capacity()];
+        frame.duplicate().get(data);
+        return data;
+    }
+    
+    /**
+     * Return a read-only view of the data stored in packet without copying it
+     * @return read-only view of data stored in packet
+     */
+    public ByteBuffer getFrame() {
+        return frame.duplicate();
     }
     
     /**
@@ -93,11 +135,9 @@ public class Packet implements Comparable<Packet> {
     public int[] getSamples(final int channel) {
         switch (channel) {
             case VOLTAGE:
-                return samples[VOLTAGE];
             case CURRENT_CHANNEL_1:
-                return samples[CURRENT_CHANNEL_1];
             case CURRENT_CHANNEL_2:
-                return samples[CURRENT_CHANNEL_2];
+                return analysis().getSamples(channel);
             default:
                 return new int[0];
         }
@@ -112,7 +152,73 @@ public class Packet implements Comparable<Packet> {
      * @return samples for all data sources
      */
     public int[][] getSamples() {
-        return this.samples.clone();
+        return analysis().getSamples().clone();
+    }
+    
+    /**
+     * Transforms all data sources on first access
+     * @return spectra of all data sources
+     */
+    private Spectrum[] spectra() {
+        Spectrum[] s = spectra;
+        if (s == null) {
+            s = new Spectrum[DACAnalysis.CHANNELS];
+            for (int ch = 0; ch < s.length; ch++) {
+                s[ch] = RealFFT.transform(analysis().getSamples(ch), new Spectrum());
+            }
+            spectra = s;
+        }
+        return s;
+    }
+    
+    /**
+     * Get the spectrum of either the voltage, current channel 1, or current
+     * channel 2 samples
+     * @param channel   the data source
+     * @return          spectrum of the data source
+     */
+    public Spectrum getSpectrum(final int channel) {
+        return spectra()[channel];
+    }
+    
+    /**
+     * Get the FFT of the voltage samples
+     * @return spectrum of the voltage
+     */
+    public Spectrum getVoltageTransform() {
+        return getSpectrum(VOLTAGE);
+    }
+    
+    /**
+     * Get the power quality of the voltage paired with a current channel.
+     * 
+     * Both current channels are analyzed together the first time either is
+     * asked for and cached from then on.
+     * @param channel   current channel 1 or current channel 2
+     * @return          harmonics, distortion, crest factors and power
+     */
+    public HarmonicAnalysis getHarmonics(final int channel) {
+        HarmonicAnalysis[] h = harmonics;
+        if (h == null) {
+            h = new HarmonicAnalysis[DACAnalysis.CHANNELS];
+            for (int ch = CURRENT_CHANNEL_1; ch <= CURRENT_CHANNEL_2; ch++) {
+                h[ch] = PowerUtils.analyzeHarmonics(analysis(), spectra(), ch,
+                                                    new HarmonicAnalysis());
+            }
+            harmonics = h;
+        }
+        if (channel != CURRENT_CHANNEL_1 && channel != CURRENT_CHANNEL_2) {
+            throw new IllegalArgumentException("Not a current channel: " + channel);
+        }
+        return h[channel];
+    }
+    
+    /**
+     * Get the id of the board that sent the packet
+     * @return board id
+     */
+    public byte getId() {
+        return frame.get(Constants.SERVER_ID_INDEX);
     }
     
     /**
@@ -120,7 +226,7 @@ public class Packet implements Comparable<Packet> {
      * @return voltage peak of packet
      */
     public int getVpk() {
-        return this.Vpk;
+        return analysis().getPeak(VOLTAGE);
     }
     
     /**
@@ -131,12 +237,21 @@ public class Packet implements Comparable<Packet> {
         return Constants.VOLTAGE;
     }
     
+    /**
+     * Get the root mean square of a data source in DAC units
+     * @param channel   the data source
+     * @return          root mean square of the samples
+     */
+    public double getRms(final int channel) {
+        return analysis().getRms(channel);
+    }
+    
     /**
      * Get the frequency for current channel 1
      * @return frequency of current channel 1
      */
     public double getFreqCh1() {
-        return freqCh1;
+        return analysis().getFrequency(CURRENT_CHANNEL_1);
     }
     
     /**
@@ -144,7 +259,7 @@ public class Packet implements Comparable<Packet> {
      * @return frequency of current channel 2
      */
     public double getFreqCh2() {
-        return freqCh2;
+        return analysis().getFrequency(CURRENT_CHANNEL_2);
     }
     
     /**
@@ -152,7 +267,7 @@ public class Packet implements Comparable<Packet> {
      * @return current channel 1 peak
      */
     public int getCurCh1PK() {
-        return this.curCh1Pk;
+        return analysis().getPeak(CURRENT_CHANNEL_1);
     }
 
     /**
@@ -160,7 +275,7 @@ public class Packet implements Comparable<Packet> {
      * @return current channel 2 peak
      */
     public int getCurCh2PK() {
-        return this.curCh2Pk;
+        return analysis().getPeak(CURRENT_CHANNEL_2);
     }
     
     /**
@@ -168,7 +283,7 @@ public class Packet implements Comparable<Packet> {
      * @return the current ch 1 (amps)
      */
     public double getCurrentCh1() {
-        return this.currentCh1;
+        return PowerUtils.getCurrentCh1(getCurCh1PK());
     }
     
     /**
@@ -176,7 +291,7 @@ public class Packet implements Comparable<Packet> {
      * @return the current ch 2 (amps)
      */
     public double getCurrentCh2() {
-        return this.currentCh2;
+        return PowerUtils.getCurrentCh2(getCurCh2PK());
     }
 
     /**
@@ -184,7 +299,8 @@ public class Packet implements Comparable<Packet> {
      * @return watts
      */
     public double getWatts() {
-        return this.watts;
+        return PowerUtils.getWatts(getVpk() / Constants.SQRT_OF_2,
+                                   getCurrentCh1());
     }
 
     /**
@@ -192,7 +308,18 @@ public class Packet implements Comparable<Packet> {
      * @return the board delay in milliseconds
      */
     public int getDelay() {
-        return delay;
+        return ((frame.get(Constants.SERVER_DELAY_INDEX_HIGH) & 0xFF) << 8)
+               | (frame.get(Constants.SERVER_DELAY_INDEX_LOW) & 0xFF);
+    }
+    
+    /**
+     * Get the number the board gave the packet, counting up with every packet
+     * it sends
+     * @return the sequence number, or 0 if the board does not number its
+     *         packets
+     */
+    public int getSequence() {
+        return frame.getInt(Constants.SERVER_SEQUENCE_INDEX);
     }
     
     /**
@@ -200,7 +327,7 @@ public class Packet implements Comparable<Packet> {
      * @return packet's time stamp
      */
     public Calendar getTimeStamp() {
-        return this.timeStamp;
+        return TimeUtils.toCalendar(epochNanos);
     }
     
     /**
@@ -208,7 +335,7 @@ public class Packet implements Comparable<Packet> {
      * @return year 
      */
     public int getYear() {
-        return timeStamp.get(Calendar.YEAR);
+        return getTimeStamp().get(Calendar.YEAR);
     }
 
     /**
@@ -216,7 +343,7 @@ public class Packet implements Comparable<Packet> {
      * @return month
      */
     public int getMonth() {
-        return timeStamp.get(Calendar.MONTH);
+        return getTimeStamp().get(Calendar.MONTH);
     }
     
     /**
@@ -224,7 +351,7 @@ public class Packet implements Comparable<Packet> {
      * @return day
      */
     public int getDay() {
-        return timeStamp.get(Calendar.DAY_OF_MONTH);
+        return getTimeStamp().get(Calendar.DAY_OF_MONTH);
     }
 
     /**
@@ -232,7 +359,7 @@ public class Packet implements Comparable<Packet> {
      * @return hour
      */
     public int getHour() {
-        return timeStamp.get(Calendar.HOUR_OF_DAY);
+        return getTimeStamp().get(Calendar.HOUR_OF_DAY);
     }
 
     /**
@@ -240,7 +367,7 @@ public class Packet implements Comparable<Packet> {
      * @return minute
      */
     public int getMinute() {
-        return timeStamp.get(Calendar.MINUTE);
+        return getTimeStamp().get(Calendar.MINUTE);
     }
 
     /**
@@ -248,7 +375,7 @@ public class Packet implements Comparable<Packet> {
      * @return second
      */
     public int getSecond() {
-        return timeStamp.get(Calendar.SECOND);
+        return getTimeStamp().get(Calendar.SECOND);
     }
 
     /**
@@ -256,7 +383,7 @@ public class Packet implements Comparable<Packet> {
      * @return milliseconds
      */
     public long getMilliSeconds() {
-        return timeStamp.get(Calendar.MILLISECOND);
+        return TimeUtils.toMillis(epochNanos) % 1000;
     }
 
     /**
@@ -264,7 +391,15 @@ public class Packet implements Comparable<Packet> {
      * @return milliseconds since the epoch
      */
     public long getEpoch() {
-        return this.timeStamp.getTimeInMillis();
+        return TimeUtils.toMillis(epochNanos);
+    }
+    
+    /**
+     * Gets the time in nanoseconds since the epoch
+     * @return nanoseconds since the epoch
+     */
+    public long getEpochNanos() {
+        return epochNanos;
     }
 
     @Override
@@ -274,6 +409,7 @@ public class Packet implements Comparable<Packet> {
     
     @Override
     public int compareTo(Packet packet) {
-        return this.timeStamp.compareTo(packet.getTimeStamp());
+        return (epochNanos < packet.epochNanos) ? -1
+               : ((epochNanos == packet.epochNanos) ? 0 : 1);
     }
 }
@@ -19,58 +19,607 @@
 
 package kip.client;
 
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import kip.utils.ConfigurationManager;
+import kip.utils.Constants;
 
 /**
- * Stores all packets locally
+ * Stores packets locally
+ * 
+ * The history is a fixed capacity ring. Raw frames are kept back to back in
+ * byte arrays, and their time stamps, in nanoseconds since the epoch, and
+ * sequence numbers in parallel long arrays, so a stored packet costs its 402
+ * bytes plus 16 and nothing else. Once the history is full, adding a packet
+ * overwrites the oldest one.
+ * 
+ * The ring is stored in segments allocated as it first fills, so a history
+ * holding few packets uses little memory. A history can draw its segments
+ * from a {@link HistoryBudget} shared with other histories; once the budget is
+ * spent the history stops growing and wraps around at the size it reached.
+ * 
+ * Nothing in the history locks. Every packet added gets the next sequence
+ * number, and each slot records the sequence number of the packet it holds.
+ * Readers take a {@link Snapshot} of the sequence numbers stored at that moment
+ * and read packets through it while packets keep being added. A packet that
+ * gets overwritten while a snapshot is reading it is reported as missing
+ * instead of being returned half written.
+ * 
+ * Packets are normally added in the order they are received, so the time
+ * stamps of a snapshot are sorted and packets can be found by time with a
+ * binary search over the time stamp column instead of a scan. Packets loaded
+ * from a file on top of live ones, or files that were not sorted, break that
+ * order. The history remembers the last packet added out of time order, and a
+ * snapshot that includes it sorts its packets by time stamp once when it is
+ * taken, so its positions still run from oldest to newest.
  * @author Christe, Anthony
  */
-@SuppressWarnings({"unchecked", "rawtypes"})
 public class PacketHistory {
-    private LinkedList<Packet> history = null;
-    private Packet buffer = null;
+    /**
+     * Bytes of memory used by each slot of the ring: the frame, its time stamp
+     * and the sequence number of the packet it holds
+     */
+    public static final int SLOT_SIZE = Constants.SERVER_PACKET_SIZE + 8 + 8;
+    
+    /**
+     * Returned in place of a time stamp for a packet that is no longer stored
+     */
+    public static final long MISSING = Long.MIN_VALUE;
+    
+    private static final long WRITING = -1;
+    
+    /**
+     * Number of packets stored in each segment of the ring
+     */
+    private static final int SEGMENT = 256;
+    
+    private final int maxCapacity;
+    private final HistoryBudget budget;
+    private final AtomicReferenceArray<Segment> segments;
+    private volatile int capacity;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong first = new AtomicLong();
+    private final AtomicLong disorder = new AtomicLong(-1);
+    private volatile int fence = 0;
 
     /**
-     * Creates a new packet history object
+     * Creates a new packet history object sized from the configuration
+     * 
+     * The capacity is the configured number of packets, reduced if needed to
+     * fit in the configured memory budget.
      */
     public PacketHistory() {
-        history = new LinkedList<Packet>();
+        this(capacityFromConfiguration());
+    }
+    
+    /**
+     * Creates a new packet history object
+     * @param capacity maximum number of packets to keep
+     */
+    public PacketHistory(int capacity) {
+        this(capacity, null);
+    }
+    
+    /**
+     * Creates a new packet history object sharing a memory budget
+     * @param capacity  maximum number of packets to keep
+     * @param budget    memory shared with other histories, or null for none.
+     *                  The first segment is always allocated, even past the
+     *                  budget.
+     */
+    public PacketHistory(int capacity, HistoryBudget budget) {
+        this.maxCapacity = Math.max(1, capacity);
+        this.capacity = this.maxCapacity;
+        this.budget = budget;
+        this.segments = new AtomicReferenceArray<Segment>((maxCapacity - 1) / SEGMENT + 1);
+        segments.set(0, new Segment(segmentSize(0)));
+        if (budget != null) {
+            budget.charge((long) segmentSize(0) * SLOT_SIZE);
+        }
+    }
+    
+    /**
+     * Computes the history capacity from the configuration
+     * @return number of packets that fit in both the capacity and memory budget
+     */
+    private static int capacityFromConfiguration() {
+        long packets = Long.parseLong(ConfigurationManager.getProperty(
+                ConfigurationManager.HISTORY_CAPACITY));
+        long budget = Long.parseLong(ConfigurationManager.getProperty(
+                ConfigurationManager.HISTORY_MEMORY_BUDGET)) * 1024 * 1024;
+        return (int) Math.min(Integer.MAX_VALUE, Math.min(packets, budget / SLOT_SIZE));
     }
     
     /**
      * Adds a packet to the local history
      * @param packet the packet to add to the local history
      */
-    public synchronized void add(Packet packet) {
-        history.addLast(packet);
-        buffer = packet;
+    public void add(Packet packet) {
+        add(packet.getEpochNanos(), packet.getFrame());
     }
-
+    
     /**
-     * Returns the local history
-     * @return the local history
+     * Adds a raw frame to the local history, discarding the oldest packet if the
+     * history is full.
+     * 
+     * Never blocks or retries. Packets should be added in the order they were
+     * received.
+     * @param epoch nanoseconds since the epoch when the frame was received
+     * @param frame buffer positioned at the start of the frame
      */
-    public synchronized LinkedList<Packet> getHistory() {
-        return history;
+    public void add(long epoch, ByteBuffer frame) {
+        long seq = next.getAndIncrement();
+        int slot = claim(seq);
+        Segment segment = segments.get(slot / SEGMENT);
+        int index = slot % SEGMENT;
+        int offset = index * Constants.SERVER_PACKET_SIZE;
+        int length = Math.min(frame.remaining(), Constants.SERVER_PACKET_SIZE);
+        
+        // Mark the slot before touching it. Reading next back (a volatile
+        // read) keeps the frame writes below from being moved ahead of the mark
+        segment.stored.set(index, WRITING);
+        next.get();
+        
+        frame.duplicate().get(segment.frames, offset, length);
+        if (length < Constants.SERVER_PACKET_SIZE) {
+            Arrays.fill(segment.frames, offset + length,
+                        offset + Constants.SERVER_PACKET_SIZE, (byte) 0);
+        }
+        segment.epochs[index] = epoch;
+        
+        // A packet is checked against the one before it before publishing and
+        // against the one after it once published, so of two neighbours added
+        // at once at least one sees the other
+        long before = (seq > 0) ? peekEpoch(seq - 1) : MISSING;
+        
+        segment.stored.set(index, seq);
+        if (before == MISSING && seq > 0) {
+            before = peekEpoch(seq - 1);
+        }
+        if (before != MISSING && epoch < before) {
+            markDisorder(seq);
+        }
+        long after = peekEpoch(seq + 1);
+        if (after != MISSING && after < epoch) {
+            markDisorder(seq + 1);
+        }
     }
     
     /**
-     * Returns the most recently stored packet.
-     * 
-     * Once a packet is read from the buffer, the buffer becomes empty until a
-     * new packet is added to the buffer. This allows us to construct our real
-     * time panels correctly.
-     * @return the most recent packet added to local history
+     * Remembers that a packet's time stamp is older than the packet added just
+     * before it
+     * @param seq sequence number of the packet
      */
-    public synchronized Packet getBuffer() {
-        Packet p;
-
-        if (buffer == null) {
+    private void markDisorder(long seq) {
+        long current;
+        
+        do {
+            current = disorder.get();
+        } while (current < seq && !disorder.compareAndSet(current, seq));
+    }
+    
+    /**
+     * Reads the time stamp of a stored packet without copying its frame or
+     * checking that it is not overwritten meanwhile
+     * @param seq   sequence number of the packet
+     * @return      time stamp of the packet, or MISSING if it is not stored
+     */
+    private long peekEpoch(long seq) {
+        int slot = (int) (seq % capacity);
+        Segment segment = segments.get(slot / SEGMENT);
+        int index = slot % SEGMENT;
+        
+        if (segment == null || segment.stored.get(index) != seq) {
+            return MISSING;
+        }
+        return segment.epochs[index];
+    }
+    
+    /**
+     * Finds the slot of a packet being added, allocating its segment the first
+     * time the ring reaches it
+     * @param seq   sequence number of the packet
+     * @return      slot of the packet in the ring
+     */
+    private int claim(long seq) {
+        int slot = (int) (seq % capacity);
+        int segment = slot / SEGMENT;
+        Segment created;
+        
+        if (segments.get(segment) != null) {
+            return slot;
+        }
+        
+        // A missing segment means the ring has not wrapped yet, so every
+        // packet so far lies in the segments before this one
+        if (budget != null && !budget.reserve((long) segmentSize(segment) * SLOT_SIZE)) {
+            synchronized (segments) {
+                capacity = Math.min(capacity, segment * SEGMENT);
+                return (int) (seq % capacity);
+            }
+        }
+        created = new Segment(segmentSize(segment));
+        if (!segments.compareAndSet(segment, null, created) && budget != null) {
+            budget.release((long) created.epochs.length * SLOT_SIZE);
+        }
+        return slot;
+    }
+    
+    /**
+     * Number of packets held by a segment, the last one holding the rest
+     * @param segment index of the segment
+     * @return number of packets
+     */
+    private int segmentSize(int segment) {
+        return Math.min(SEGMENT, maxCapacity - segment * SEGMENT);
+    }
+    
+    /**
+     * Number of packets stored
+     * @return number of packets in the local history
+     */
+    public int size() {
+        long end = next.get();
+        return (int) Math.min(capacity, end - first.get());
+    }
+    
+    /**
+     * Maximum number of packets stored before the oldest are discarded. A
+     * history that ran out of its memory budget keeps fewer packets than it
+     * was created for.
+     * @return capacity of the local history
+     */
+    public int capacity() {
+        return capacity;
+    }
+    
+    /**
+     * Takes a snapshot of the packets stored right now
+     * @return snapshot of the local history
+     */
+    public Snapshot snapshot() {
+        long end = next.get();
+        long start = Math.min(Math.max(first.get(), end - capacity), end);
+        
+        // Only the packets after the first of the snapshot can be out of order
+        if (disorder.get() <= start) {
+            return new Snapshot(start, end, null);
+        }
+        return new Snapshot(start, end, sortByTime(start, end));
+    }
+    
+    /**
+     * Sorts packets by time stamp, keeping packets with the same time stamp in
+     * the order they were added. Packets overwritten meanwhile come first.
+     * @param start sequence number of the first packet
+     * @param end   sequence number after the last packet
+     * @return      sequence numbers of the packets, oldest first
+     */
+    private long[] sortByTime(long start, long end) {
+        final long[] times = new long[(int) (end - start)];
+        Integer[] order = new Integer[times.length];
+        long[] sequences = new long[times.length];
+        
+        for (int i = 0; i < times.length; i++) {
+            times[i] = read(start + i, null);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return (times[a] < times[b]) ? -1 : ((times[a] == times[b]) ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < order.length; i++) {
+            sequences[i] = start + order[i];
+        }
+        return sequences;
+    }
+    
+    /**
+     * Rebuilds a packet from its sequence number
+     * @param sequence  sequence number of the packet, see
+     *                  {@link Snapshot#getSequence(int)}
+     * @return          the packet, or null if it is no longer stored
+     */
+    public Packet get(long sequence) {
+        byte[] data = new byte[Constants.SERVER_PACKET_SIZE];
+        long epoch = (sequence < first.get()) ? MISSING : read(sequence, data);
+        
+        if (epoch == MISSING) {
             return null;
-        } else {
-            p = buffer;
-            buffer = null;
-            return p;
+        }
+        return new Packet(epoch, ByteBuffer.wrap(data));
+    }
+    
+    /**
+     * Takes a snapshot of the packets received within a time range
+     * @param from  nanoseconds since the epoch
+     * @param to    nanoseconds since the epoch, not included
+     * @return      snapshot of the packets in the range
+     */
+    public Snapshot range(long from, long to) {
+        return snapshot().range(from, to);
+    }
+    
+    /**
+     * Finds the stored packet received closest to a time
+     * @param epoch nanoseconds since the epoch
+     * @return      the closest packet, or null if the history is empty
+     */
+    public Packet nearest(long epoch) {
+        Snapshot snapshot = snapshot();
+        int index = snapshot.nearest(epoch);
+        return (index < 0) ? null : snapshot.get(index);
+    }
+    
+    /**
+     * Counts the stored packets received within a time range
+     * @param from  nanoseconds since the epoch
+     * @param to    nanoseconds since the epoch, not included
+     * @return      number of packets in the range
+     */
+    public int countBetween(long from, long to) {
+        return snapshot().countBetween(from, to);
+    }
+    
+    /**
+     * Removes all stored packets
+     */
+    public void clear() {
+        first.set(next.get());
+    }
+    
+    /**
+     * Copies a packet out of the ring if it is still stored
+     * @param seq   sequence number of the packet
+     * @param data  array of at least SERVER_PACKET_SIZE bytes to copy into, or
+     *              null for just the time stamp
+     * @return time stamp of the packet, or MISSING if it was overwritten
+     */
+    private long read(long seq, byte[] data) {
+        int slot = (int) (seq % capacity);
+        Segment segment = segments.get(slot / SEGMENT);
+        int index = slot % SEGMENT;
+        long epoch;
+        
+        if (segment == null || segment.stored.get(index) != seq) {
+            return MISSING;
+        }
+        
+        epoch = segment.epochs[index];
+        if (data != null) {
+            System.arraycopy(segment.frames, index * Constants.SERVER_PACKET_SIZE, data, 0,
+                             Constants.SERVER_PACKET_SIZE);
+        }
+        
+        // The volatile write keeps the copy above from being moved past the
+        // check that the slot was not reused while we were reading it
+        fence = 0;
+        return (segment.stored.get(index) == seq) ? epoch : MISSING;
+    }
+    
+    /**
+     * A run of slots of the ring
+     */
+    private static class Segment {
+        private final byte[] frames;
+        private final long[] epochs;
+        private final AtomicLongArray stored;
+        
+        private Segment(int size) {
+            frames = new byte[size * Constants.SERVER_PACKET_SIZE];
+            epochs = new long[size];
+            stored = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                stored.set(i, WRITING);
+            }
+        }
+    }
+    
+    /**
+     * Consistent view of the packets stored when the snapshot was taken.
+     * 
+     * Taking a snapshot is cheap and never blocks packets from being added.
+     * Packets are addressed from 0 (oldest) to size() - 1 (newest). If the
+     * history wraps around while the snapshot is in use, the packets of the
+     * snapshot added first are overwritten and read back as MISSING or null.
+     */
+    public class Snapshot implements Iterable<Packet> {
+        private final long start;
+        private final long end;
+        private final long[] sequences;
+        
+        /**
+         * Creates a snapshot
+         * @param start     sequence number of the first packet
+         * @param end       sequence number after the last packet
+         * @param sequences sequence numbers of the packets sorted by time, or
+         *                  null if the packets from start to end are in order
+         */
+        private Snapshot(long start, long end, long[] sequences) {
+            this.start = start;
+            this.end = end;
+            this.sequences = sequences;
+        }
+        
+        /**
+         * Number of packets in the snapshot
+         * @return number of packets
+         */
+        public int size() {
+            return (sequences == null) ? (int) (end - start) : sequences.length;
+        }
+        
+        /**
+         * Returns the time stamp of a packet
+         * @param index position of the packet, 0 being the oldest
+         * @return nanoseconds since the epoch, or MISSING if overwritten
+         */
+        public long getEpoch(int index) {
+            return read(seq(index), null);
+        }
+        
+        /**
+         * Copies the frame of a packet
+         * @param index position of the packet, 0 being the oldest
+         * @param data  array of at least SERVER_PACKET_SIZE bytes to copy into
+         * @return nanoseconds since the epoch, or MISSING if overwritten
+         */
+        public long getData(int index, byte[] data) {
+            return read(seq(index), data);
+        }
+        
+        /**
+         * Returns the sequence number of a packet, which identifies it for as
+         * long as it is stored no matter how many packets are added after it
+         * @param index position of the packet, 0 being the oldest
+         * @return sequence number of the packet
+         */
+        public long getSequence(int index) {
+            return seq(index);
+        }
+        
+        /**
+         * Finds the first packet received at or after a time with a binary
+         * search over the time stamps. Packets overwritten while searching
+         * count as older than any time, as they are always the oldest.
+         * @param epoch nanoseconds since the epoch
+         * @return      position of the packet, or size() if there is none
+         */
+        public int indexOf(long epoch) {
+            int low = 0;
+            int high = size();
+            int mid;
+            
+            while (low < high) {
+                mid = (low + high) >>> 1;
+                if (getEpoch(mid) < epoch) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        /**
+         * Narrows the snapshot to the packets received within a time range
+         * @param from  nanoseconds since the epoch
+         * @param to    nanoseconds since the epoch, not included
+         * @return      snapshot of the packets in the range
+         */
+        public Snapshot range(long from, long to) {
+            int first = indexOf(from);
+            int last = Math.max(first, indexOf(to));
+            
+            if (sequences == null) {
+                return new Snapshot(start + first, start + last, null);
+            }
+            return new Snapshot(start, end, Arrays.copyOfRange(sequences, first, last));
+        }
+        
+        /**
+         * Counts the packets received within a time range
+         * @param from  nanoseconds since the epoch
+         * @param to    nanoseconds since the epoch, not included
+         * @return      number of packets in the range
+         */
+        public int countBetween(long from, long to) {
+            return Math.max(0, indexOf(to) - indexOf(from));
+        }
+        
+        /**
+         * Finds the packet received closest to a time
+         * @param epoch nanoseconds since the epoch
+         * @return      position of the packet, or -1 if no packet is stored
+         */
+        public int nearest(long epoch) {
+            int after = indexOf(epoch);
+            long afterEpoch = (after < size()) ? getEpoch(after) : MISSING;
+            long beforeEpoch = (after > 0) ? getEpoch(after - 1) : MISSING;
+            
+            if (beforeEpoch == MISSING) {
+                return (afterEpoch == MISSING) ? -1 : after;
+            }
+            if (afterEpoch == MISSING || epoch - beforeEpoch <= afterEpoch - epoch) {
+                return after - 1;
+            }
+            return after;
+        }
+        
+        /**
+         * Rebuilds a packet
+         * @param index position of the packet, 0 being the oldest
+         * @return the packet, or null if it was overwritten
+         */
+        public Packet get(int index) {
+            byte[] data = new byte[Constants.SERVER_PACKET_SIZE];
+            long epoch = getData(index, data);
+            
+            if (epoch == MISSING) {
+                return null;
+            }
+            return new Packet(epoch, ByteBuffer.wrap(data));
+        }
+        
+        /**
+         * Maps a position in the snapshot to a sequence number
+         * @param index position of the packet, 0 being the oldest
+         * @return sequence number of the packet
+         */
+        private long seq(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return (sequences == null) ? start + index : sequences[index];
+        }
+        
+        /**
+         * Iterates over the packets of the snapshot, oldest first, skipping any
+         * that have been overwritten
+         * @return iterator over the packets
+         */
+        @Override
+        public Iterator<Packet> iterator() {
+            return new Iterator<Packet>() {
+                private int index = 0;
+                private Packet nextPacket = advance();
+                
+                private Packet advance() {
+                    Packet packet = null;
+                    while (packet == null && index < size()) {
+                        packet = get(index++);
+                    }
+                    return packet;
+                }
+                
+                @Override
+                public boolean hasNext() {
+                    return nextPacket != null;
+                }
+                
+                @Override
+                public Packet next() {
+                    Packet packet = nextPacket;
+                    if (packet == null) {
+                        throw new NoSuchElementException();
+                    }
+                    nextPacket = advance();
+                    return packet;
+                }
+                
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+/**
+ * Receives every packet decoded by the ingest engine.
+ *
+ * Listeners are called from the decoder threads, possibly from several at
+ * once, and must return quickly. Work on the UI belongs on the event dispatch
+ * thread.
+ * @author Christe, Anthony
+ */
+public interface PacketListener {
+    /**
+     * Called once for every packet received, valid or not
+     * @param packet the decoded packet
+     */
+    void packetReceived(Packet packet);
+}
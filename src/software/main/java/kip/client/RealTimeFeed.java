@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Timer;
+import kip.client.ui.RealTimePanel;
+import kip.utils.ConfigurationManager;
+
+/**
+ * Feeds the real time plots with every packet received.
+ *
+ * Packets are folded into a running mean and maximum of each plotted quantity
+ * as they are decoded. A Swing timer firing REAL_TIME_REFRESH times a second
+ * takes what has been gathered since the last frame and hands it to the real
+ * time panel on the event dispatch thread, so the plots are only ever touched
+ * from that thread and are redrawn once per frame however fast packets
+ * arrive.
+ * @author Christe, Anthony
+ */
+public class RealTimeFeed implements PacketListener, ActionListener {
+    /**
+     * Line frequency in hertz
+     */
+    public static final int FREQUENCY = 0;
+
+    /**
+     * Current of channel 1 in amps
+     */
+    public static final int CURRENT = 1;
+
+    /**
+     * Power in watts
+     */
+    public static final int WATTS = 2;
+
+    /**
+     * Number of quantities plotted
+     */
+    public static final int QUANTITIES = 3;
+
+    private final RealTimePanel realTimePanel;
+    private final Timer timer;
+    private final double[] sum = new double[QUANTITIES];
+    private final double[] max = new double[QUANTITIES];
+    private final long[] count = new long[QUANTITIES];
+    private long packets = 0;
+
+    /**
+     * Constructs the real time feed
+     * @param realTimePanel the panel that contains the real time plots
+     */
+    public RealTimeFeed(RealTimePanel realTimePanel) {
+        int realTimeRefresh = Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.REAL_TIME_REFRESH));
+
+        this.realTimePanel = realTimePanel;
+        this.timer = new Timer(1000 / Math.max(1, realTimeRefresh), this);
+        this.timer.setCoalesce(true);
+    }
+
+    /**
+     * Starts delivering frames to the real time panel
+     */
+    public void start() {
+        timer.start();
+    }
+
+    /**
+     * Stops delivering frames to the real time panel
+     */
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Folds a packet into the current frame. Frequencies that could not be
+     * measured are left out.
+     * @param packet the decoded packet
+     */
+    @Override
+    public void packetReceived(Packet packet) {
+        double freq = packet.getFreqCh1();
+        double current = packet.getCurrentCh1();
+        double watts = packet.getWatts();
+
+        synchronized (this) {
+            if (freq > 0) {
+                add(FREQUENCY, freq);
+            }
+            add(CURRENT, current);
+            add(WATTS, watts);
+            packets++;
+        }
+    }
+
+    /**
+     * Hands the current frame to the real time panel. Called by the timer on
+     * the event dispatch thread.
+     * @param evt the timer event
+     */
+    @Override
+    public void actionPerformed(ActionEvent evt) {
+        realTimePanel.updatePanels(System.currentTimeMillis(), drain());
+    }
+
+    /**
+     * Takes the values gathered since the last frame and starts a new one
+     * @return the finished frame
+     */
+    public synchronized Frame drain() {
+        Frame frame = new Frame(packets, new double[QUANTITIES], max.clone(), count.clone());
+
+        for (int i = 0; i < QUANTITIES; i++) {
+            frame.mean[i] = (count[i] == 0) ? 0.0 : sum[i] / count[i];
+            sum[i] = 0.0;
+            max[i] = 0.0;
+            count[i] = 0;
+        }
+        packets = 0;
+        return frame;
+    }
+
+    /**
+     * Adds one value of a quantity to the current frame
+     * @param quantity the quantity
+     * @param value    the value
+     */
+    private void add(int quantity, double value) {
+        sum[quantity] += value;
+        max[quantity] = (count[quantity] == 0) ? value : Math.max(max[quantity], value);
+        count[quantity]++;
+    }
+
+    /**
+     * The packets received between two updates of the real time plots
+     */
+    public static class Frame {
+        private final long packets;
+        private final double[] mean;
+        private final double[] max;
+        private final long[] count;
+
+        private Frame(long packets, double[] mean, double[] max, long[] count) {
+            this.packets = packets;
+            this.mean = mean;
+            this.max = max;
+            this.count = count;
+        }
+
+        /**
+         * Get the number of packets received during the frame
+         * @return number of packets
+         */
+        public long getPackets() {
+            return packets;
+        }
+
+        /**
+         * Whether a quantity was measured during the frame
+         * @param quantity FREQUENCY, CURRENT or WATTS
+         * @return true if at least one packet had a value for it
+         */
+        public boolean has(int quantity) {
+            return count[quantity] > 0;
+        }
+
+        /**
+         * Get the mean of a quantity over the frame
+         * @param quantity FREQUENCY, CURRENT or WATTS
+         * @return mean value, 0 if it was not measured
+         */
+        public double getMean(int quantity) {
+            return mean[quantity];
+        }
+
+        /**
+         * Get the largest value of a quantity during the frame
+         * @param quantity FREQUENCY, CURRENT or WATTS
+         * @return largest value, 0 if it was not measured
+         */
+        public double getMax(int quantity) {
+            return max[quantity];
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import kip.utils.Constants;
+import kip.utils.DACAnalysis;
+import kip.utils.TimeUtils;
+
+/**
+ * Summary of the samples one board sent during a window of time.
+ *
+ * For each data source (voltage, current channel 1, current channel 2) the
+ * minimum, maximum, mean and RMS of every sample received in the window are
+ * kept, along with the energy of the samples, the sum of their squares. All
+ * values are in DAC units.
+ * @author Christe, Anthony
+ */
+public class Rollup {
+    private final int board;
+    private final long start;
+    private final long width;
+    private final long packets;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+    private final double[] energy;
+
+    /**
+     * Constructs a new rollup
+     * @param board     id of the board
+     * @param start     nanoseconds since the epoch when the window opens
+     * @param width     length of the window in nanoseconds
+     * @param packets   number of packets in the window
+     * @param min       smallest sample of each data source
+     * @param max       largest sample of each data source
+     * @param sum       sum of the samples of each data source
+     * @param energy    sum of the squared samples of each data source
+     */
+    public Rollup(int board, long start, long width, long packets,
+                  double[] min, double[] max, double[] sum, double[] energy) {
+        this.board = board;
+        this.start = start;
+        this.width = width;
+        this.packets = packets;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.energy = energy;
+    }
+
+    /**
+     * Get the board the samples came from
+     * @return id of the board
+     */
+    public int getBoard() {
+        return board;
+    }
+
+    /**
+     * Get the time the window opens
+     * @return nanoseconds since the epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Get the time the window closes
+     * @return nanoseconds since the epoch, not included in the window
+     */
+    public long getEnd() {
+        return start + width;
+    }
+
+    /**
+     * Get the time the window opens
+     * @return milliseconds since the epoch
+     */
+    public long getEpoch() {
+        return TimeUtils.toMillis(start);
+    }
+
+    /**
+     * Get the number of packets received in the window
+     * @return number of packets
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Get the number of samples of each data source received in the window
+     * @return number of samples
+     */
+    public long getSamples() {
+        return packets * Constants.SERVER_SAMPLES_PER_CH;
+    }
+
+    /**
+     * Get the smallest sample of a data source
+     * @param channel the data source
+     * @return smallest sample, 0 for an empty window
+     */
+    public double getMin(int channel) {
+        return min[channel];
+    }
+
+    /**
+     * Get the largest sample of a data source
+     * @param channel the data source
+     * @return largest sample, 0 for an empty window
+     */
+    public double getMax(int channel) {
+        return max[channel];
+    }
+
+    /**
+     * Get the mean of the samples of a data source
+     * @param channel the data source
+     * @return mean of the samples, 0 for an empty window
+     */
+    public double getMean(int channel) {
+        return (packets == 0) ? 0.0 : sum[channel] / getSamples();
+    }
+
+    /**
+     * Get the root mean square of the samples of a data source
+     * @param channel the data source
+     * @return root mean square of the samples, 0 for an empty window
+     */
+    public double getRms(int channel) {
+        return (packets == 0) ? 0.0 : Math.sqrt(energy[channel] / getSamples());
+    }
+
+    /**
+     * Get the energy of the samples of a data source
+     * @param channel the data source
+     * @return sum of the squared samples
+     */
+    public double getEnergy(int channel) {
+        return energy[channel];
+    }
+
+    /**
+     * Combines consecutive rollups of one board into one covering all of them
+     * @param board     id of the board
+     * @param start     nanoseconds since the epoch when the combined window
+     *                  opens
+     * @param end       nanoseconds since the epoch when the combined window
+     *                  closes
+     * @param rollups   rollups to combine, may be empty
+     * @return          the combined rollup
+     */
+    public static Rollup merge(int board, long start, long end, Iterable<Rollup> rollups) {
+        double[] min = new double[DACAnalysis.CHANNELS];
+        double[] max = new double[DACAnalysis.CHANNELS];
+        double[] sum = new double[DACAnalysis.CHANNELS];
+        double[] energy = new double[DACAnalysis.CHANNELS];
+        long packets = 0;
+
+        for (Rollup rollup : rollups) {
+            for (int ch = 0; ch < DACAnalysis.CHANNELS; ch++) {
+                min[ch] = (packets == 0) ? rollup.min[ch] : Math.min(min[ch], rollup.min[ch]);
+                max[ch] = (packets == 0) ? rollup.max[ch] : Math.max(max[ch], rollup.max[ch]);
+                sum[ch] += rollup.sum[ch];
+                energy[ch] += rollup.energy[ch];
+            }
+            packets += rollup.packets;
+        }
+        return new Rollup(board, start, end - start, packets, min, max, sum, energy);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.util.Arrays;
+import kip.utils.PacketUtils;
+
+/**
+ * Detects lost and reordered packets of one board from their sequence
+ * numbers.
+ *
+ * Each numbered packet is expected to follow the last one in order. A jump
+ * ahead counts the skipped packets as missing, and the skipped numbers within
+ * the reorder window are remembered in a bitmap. A late packet whose number
+ * was skipped counts as reordered and is no longer missing; any other late
+ * packet counts as a duplicate. A jump back further than the reorder window,
+ * back to 1 where a board starts counting, or two late packets in a row that
+ * follow each other without filling a gap is taken as the board restarting
+ * its count. Unnumbered packets are ignored.
+ *
+ * Only the board's decoder thread tracks packets; the counts can be read from
+ * any thread.
+ * @author Christe, Anthony
+ */
+public class SequenceTracker {
+    /**
+     * How far behind the expected sequence number a packet can arrive and
+     * still be counted as reordered, a power of 2
+     */
+    public static final int REORDER_WINDOW = 1024;
+
+    /**
+     * Skipped numbers within the window, one bit for each, indexed by their
+     * position in the count modulo the window
+     */
+    private final long[] outstanding = new long[REORDER_WINDOW / 64];
+    private int expected = 0;
+    private long position = 0;
+    private int lastDuplicate = 0;
+    private volatile long numbered = 0;
+    private volatile long missing = 0;
+    private volatile long reordered = 0;
+    private volatile long restarts = 0;
+    private volatile long duplicates = 0;
+
+    /**
+     * Tracks the sequence number of a received packet
+     * @param sequence the packet's sequence number, 0 if it has none
+     */
+    public void track(int sequence) {
+        int gap;
+
+        if (sequence == 0) {
+            return;
+        }
+        numbered++;
+        if (expected == 0) {
+            start(sequence);
+            return;
+        }
+
+        gap = distance(expected, sequence);
+        if (gap >= 0) {
+            skip(gap);
+            expected = PacketUtils.nextSequence(sequence);
+            lastDuplicate = 0;
+        } else if (gap >= -REORDER_WINDOW && isOutstanding(position + gap)) {
+            setOutstanding(position + gap, false);
+            reordered++;
+            missing--;
+            lastDuplicate = 0;
+        } else if (gap < -REORDER_WINDOW || sequence == 1) {
+            restarts++;
+            start(sequence);
+        } else if (lastDuplicate != 0 && sequence == PacketUtils.nextSequence(lastDuplicate)) {
+            // The late packet before this one was the start of the new count
+            duplicates--;
+            restarts++;
+            start(sequence);
+        } else {
+            duplicates++;
+            lastDuplicate = sequence;
+        }
+    }
+
+    /**
+     * Number of packets received with a sequence number
+     * @return numbered packets
+     */
+    public long getNumbered() {
+        return numbered;
+    }
+
+    /**
+     * Number of packets skipped in the sequence that never arrived
+     * @return missing packets
+     */
+    public long getMissing() {
+        return missing;
+    }
+
+    /**
+     * Number of packets that arrived after a later packet
+     * @return reordered packets
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /**
+     * Number of late packets that filled no gap
+     * @return duplicate packets
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Number of times the board started counting again
+     * @return restarts of the sequence
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    @Override
+    public String toString() {
+        return "Missing: " + missing + "  Reordered: " + reordered + "  Duplicates: " + duplicates;
+    }
+
+    /**
+     * Starts the count again from a packet, forgetting the numbers skipped so
+     * far
+     * @param sequence the packet's sequence number
+     */
+    private void start(int sequence) {
+        Arrays.fill(outstanding, 0);
+        expected = PacketUtils.nextSequence(sequence);
+        position++;
+        lastDuplicate = 0;
+    }
+
+    /**
+     * Moves the count past a packet that skipped some numbers, remembering the
+     * skipped numbers within the window
+     * @param gap   how many numbers were skipped
+     */
+    private void skip(int gap) {
+        long received = position + gap;
+
+        missing += gap;
+        for (long p = Math.max(position, received + 1 - REORDER_WINDOW); p < received; p++) {
+            setOutstanding(p, true);
+        }
+        setOutstanding(received, false);
+        position = received + 1;
+    }
+
+    /**
+     * Whether a number within the window was skipped and has not arrived yet
+     * @param p position of the number in the count
+     * @return  true if the number is outstanding
+     */
+    private boolean isOutstanding(long p) {
+        int bit = (int) (p & (REORDER_WINDOW - 1));
+        return (outstanding[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Marks a number within the window as outstanding or not
+     * @param p     position of the number in the count
+     * @param value whether the number is outstanding
+     */
+    private void setOutstanding(long p, boolean value) {
+        int bit = (int) (p & (REORDER_WINDOW - 1));
+
+        if (value) {
+            outstanding[bit >>> 6] |= 1L << bit;
+        } else {
+            outstanding[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+
+    /**
+     * Number of sequence numbers from one to another, leaving out the skipped
+     * 0 when the count wraps around
+     * @param from  the first sequence number
+     * @param to    the second sequence number
+     * @return      how far the second is ahead of the first, negative if it is
+     *              behind
+     */
+    private static int distance(int from, int to) {
+        int gap = to - from;
+
+        // Unsigned comparison: wrapped forward past 0, or back past 0
+        if (gap > 0 && (to ^ Integer.MIN_VALUE) < (from ^ Integer.MIN_VALUE)) {
+            gap--;
+        } else if (gap < 0 && (to ^ Integer.MIN_VALUE) > (from ^ Integer.MIN_VALUE)) {
+            gap++;
+        }
+        return gap;
+    }
+}
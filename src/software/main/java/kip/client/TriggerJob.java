@@ -0,0 +1,291 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ScheduledFuture;
+import kip.utils.ConfigurationManager;
+
+/**
+ * A run of trigger packets sent to one board at a fixed rate.
+ *
+ * Runs are timed from when the job started rather than from the previous
+ * send, so the rate never drifts however long sending takes. A run that
+ * starts a whole period or more late skips the triggers it missed instead of
+ * sending them in a burst and counts them as missed. A trigger that does not
+ * fit in the socket send buffer is counted as overrun rather than sent. How
+ * late each trigger is sent compared to its ideal time is kept as jitter.
+ *
+ * Every trigger is sent from the same cached frame, so a run allocates
+ * nothing per trigger.
+ * @author Christe, Anthony
+ */
+public class TriggerJob implements Runnable {
+    private final TriggerScheduler scheduler;
+    private final DatagramChannel channel;
+    private final SocketAddress target;
+    private final ByteBuffer frame;
+    private final int logInterval;
+    private final long period;
+    private final long count;
+    private final EventLog log;
+    private volatile long start = 0;
+    private long next = 0;
+    private volatile long sent = 0;
+    private volatile long missed = 0;
+    private volatile long overrun = 0;
+    private volatile long totalJitter = 0;
+    private volatile long maxJitter = 0;
+    private volatile ScheduledFuture<?> future = null;
+    private volatile boolean done = false;
+
+    /**
+     * Constructs a new trigger job
+     * @param scheduler the scheduler running the job
+     * @param channel   the channel being used to send the packets
+     * @param target    address of the board
+     * @param frame     view of the trigger frame, owned by the job
+     * @param period    nanoseconds between triggers
+     * @param count     number of triggers to send, negative to send until
+     *                  cancelled
+     * @param log       event log for updates from this job, may be null
+     */
+    TriggerJob(TriggerScheduler scheduler, DatagramChannel channel,
+               SocketAddress target, ByteBuffer frame, long period, long count,
+               EventLog log) {
+        this.scheduler = scheduler;
+        this.channel = channel;
+        this.target = target;
+        this.frame = frame;
+        this.logInterval = Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.TRIGGER_LOG_INTERVAL));
+        this.period = period;
+        this.count = count;
+        this.log = log;
+    }
+
+    /**
+     * Sends the trigger for the current period. Called by the scheduler once
+     * per period.
+     */
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        long tick = (now - start) / period;
+        long jitter;
+
+        if (done) {
+            return;
+        }
+        if (tick < next) {
+            // The executor catching up on a period already skipped
+            return;
+        }
+        if (tick > next) {
+            if (count >= 0) {
+                tick = Math.min(tick, count);
+            }
+            missed += tick - next;
+            next = tick;
+        }
+        if (count >= 0 && next >= count) {
+            finish();
+            return;
+        }
+
+        jitter = now - (start + next * period);
+        if (send()) {
+            totalJitter += jitter;
+            if (jitter > maxJitter) {
+                maxJitter = jitter;
+            }
+        }
+        next++;
+        if (count >= 0 && next >= count) {
+            finish();
+        }
+    }
+
+    /**
+     * Stops sending triggers
+     */
+    public void cancel() {
+        finish();
+    }
+
+    /**
+     * Whether the job has sent all of its triggers or was cancelled
+     * @return true if no more triggers will be sent
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Get the address the triggers are sent to
+     * @return address of the board
+     */
+    public SocketAddress getTarget() {
+        return target;
+    }
+
+    /**
+     * Get the time between triggers
+     * @return nanoseconds between triggers
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Get the number of triggers sent
+     * @return number of triggers sent
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Get the number of triggers skipped because their period had passed
+     * @return number of triggers missed
+     */
+    public long getMissed() {
+        return missed;
+    }
+
+    /**
+     * Get the number of triggers dropped because the socket send buffer was
+     * full
+     * @return number of triggers overrun
+     */
+    public long getOverrun() {
+        return overrun;
+    }
+
+    /**
+     * Get how late triggers were sent on average
+     * @return mean lateness in nanoseconds
+     */
+    public long getMeanJitter() {
+        long triggers = sent;
+        return (triggers == 0) ? 0 : totalJitter / triggers;
+    }
+
+    /**
+     * Get the latest any trigger was sent
+     * @return largest lateness in nanoseconds
+     */
+    public long getMaxJitter() {
+        return maxJitter;
+    }
+
+    @Override
+    public String toString() {
+        return "Triggers to " + target + ": " + sent + " sent, " + missed
+               + " missed, " + overrun + " overrun, jitter mean " + getMeanJitter() / 1000 + " us max "
+               + maxJitter / 1000 + " us";
+    }
+
+    /**
+     * Starts the job's clock, called just before it is first scheduled
+     */
+    void start() {
+        start = System.nanoTime();
+    }
+
+    /**
+     * Keeps the handle used to cancel the job
+     * @param future the scheduled job
+     */
+    void setFuture(ScheduledFuture<?> future) {
+        this.future = future;
+        if (done) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Sends one trigger from the cached frame. Only one in every
+     * TRIGGER_LOG_INTERVAL triggers is logged.
+     * @return true if the trigger was sent
+     */
+    private boolean send() {
+        try {
+            frame.rewind();
+            if (channel.send(frame, target) == 0) {
+                // Non-blocking channel with a full send buffer
+                overrun++;
+                return false;
+            }
+            sent++;
+            if (logInterval > 0 && (sent - 1) % logInterval == 0) {
+                logSend();
+            }
+            return true;
+        } catch (IOException e) {
+            publish("Problem sending packet");
+            return false;
+        }
+    }
+
+    /**
+     * Logs a sampled trigger
+     */
+    private void logSend() {
+        ByteBuffer view;
+
+        if (log != null) {
+            view = frame.duplicate();
+            view.rewind();
+            log.sent(target, view);
+        }
+    }
+
+    /**
+     * Stops the job and reports what it sent
+     */
+    private synchronized void finish() {
+        ScheduledFuture<?> scheduled;
+
+        if (done) {
+            return;
+        }
+        done = true;
+        scheduled = future;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        scheduler.finished(this);
+        publish(toString());
+    }
+
+    /**
+     * Logs a message
+     * @param message the message to log
+     */
+    private void publish(String message) {
+        if (log != null) {
+            log.log(message);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import kip.utils.CommandFrames;
+import kip.utils.ConfigurationManager;
+
+/**
+ * Sends trigger packets to any number of boards from a small pool of threads.
+ *
+ * Every run of triggers is a job scheduled at a fixed rate on a shared
+ * scheduled executor, so hundreds of boards can be polled at their own rates
+ * by TRIGGER_THREADS threads. Periods are kept in nanoseconds, so rates above
+ * 1000 Hz keep their exact period.
+ * @author Christe, Anthony
+ */
+public class TriggerScheduler {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Set<TriggerJob> jobs = Collections.newSetFromMap(
+            new ConcurrentHashMap<TriggerJob, Boolean>());
+
+    /**
+     * Creates a scheduler with the configured number of threads
+     */
+    public TriggerScheduler() {
+        this(Integer.parseInt(ConfigurationManager.getProperty(
+                ConfigurationManager.TRIGGER_THREADS)));
+    }
+
+    /**
+     * Creates a scheduler
+     * @param threads number of threads sending triggers
+     */
+    public TriggerScheduler(int threads) {
+        final AtomicInteger created = new AtomicInteger();
+
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "KiP trigger " + created.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts sending trigger packets to a board
+     * @param channel   the channel being used to send the packets
+     * @param target    address of the board
+     * @param hertz     how many times per second to send a trigger packet
+     * @param count     number of triggers to send, negative to send until
+     *                  cancelled
+     * @param log       event log for updates, may be null
+     * @return the running job
+     */
+    public TriggerJob schedule(DatagramChannel channel, SocketAddress target,
+                               double hertz, long count, EventLog log) {
+        long period;
+        TriggerJob job;
+
+        if (!(hertz > 0) || hertz > NANOS_PER_SECOND) {
+            throw new IllegalArgumentException("Trigger rate out of range: " + hertz);
+        }
+        period = Math.round(NANOS_PER_SECOND / hertz);
+        job = new TriggerJob(this, channel, target, CommandFrames.trigger(),
+                             period, count, log);
+
+        jobs.add(job);
+        job.start();
+        job.setFuture(executor.scheduleAtFixedRate(job, 0, period, TimeUnit.NANOSECONDS));
+        return job;
+    }
+
+    /**
+     * Runs a task once after a delay on the scheduler's threads
+     * @param task  the task, which should not block
+     * @param delay how long to wait before running the task
+     * @param unit  unit of the delay
+     * @return the pending task, which can be cancelled
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return executor.schedule(task, delay, unit);
+    }
+
+    /**
+     * Returns the jobs still sending triggers
+     * @return running jobs, in no particular order
+     */
+    public List<TriggerJob> getJobs() {
+        return new ArrayList<TriggerJob>(jobs);
+    }
+
+    /**
+     * Stops every job and the scheduler's threads
+     */
+    public void shutdown() {
+        for (TriggerJob job : getJobs()) {
+            job.cancel();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Forgets a job that has finished
+     * @param job the finished job
+     */
+    void finished(TriggerJob job) {
+        jobs.remove(job);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ *
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import kip.utils.Constants;
+
+/**
+ * Layout of binary KiP capture files.
+ *
+ * A capture file is a header, a run of fixed size records and an index footer,
+ * all big endian:
+ *
+ * <pre>
+ * header   int magic, int version, int frame size, int index interval
+ * record   long nanoseconds since the epoch, frame size bytes of raw frame
+ * index    long time stamp of every index interval'th record
+ * trailer  long number of records, int flags, int trailer magic
+ * </pre>
+ *
+ * Records are written in the order they are received, so their time stamps
+ * normally never decrease and can be searched by time. A file cut short before
+ * the footer was written still has all of its complete records readable.
+ * @author Christe, Anthony
+ */
+public class CaptureFormat {
+    /**
+     * File name extension of capture files
+     */
+    public static final String EXTENSION = ".kip";
+
+    /**
+     * First word of a capture file, "KiPC"
+     */
+    public static final int MAGIC = 0x4B695043;
+
+    /**
+     * Last word of a completely written capture file, "KiPI"
+     */
+    public static final int TRAILER_MAGIC = 0x4B695049;
+
+    /**
+     * Version of the layout written
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Number of bytes in the header
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Number of bytes in the trailer
+     */
+    public static final int TRAILER_SIZE = 16;
+
+    /**
+     * Number of bytes of raw frame per record
+     */
+    public static final int FRAME_SIZE = Constants.SERVER_PACKET_SIZE;
+
+    /**
+     * Number of bytes per record, the time stamp followed by the frame
+     */
+    public static final int RECORD_SIZE = 8 + FRAME_SIZE;
+
+    /**
+     * Number of records between index entries
+     */
+    public static final int INDEX_INTERVAL = 1024;
+
+    /**
+     * Set in the trailer flags when no record is older than the one before it
+     */
+    public static final int FLAG_SORTED = 0x1;
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ *
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import kip.client.Packet;
+
+/**
+ * Random access to the records of a binary capture file.
+ *
+ * The records are memory mapped rather than read, so opening a capture only
+ * reads its header and index and the operating system pages records in as they
+ * are used. Records can be looked up by ordinal or by time stamp and may be
+ * read from any number of threads at once.
+ *
+ * A file whose writer never finished is still opened, with its index rebuilt
+ * from the complete records it holds.
+ * @author Christe, Anthony
+ * @see CaptureFormat
+ */
+public class CaptureReader implements Closeable {
+    /**
+     * Records per mapped segment, as a single mapping can not exceed 2 GB
+     */
+    private static final long SEGMENT_RECORDS = Integer.MAX_VALUE / CaptureFormat.RECORD_SIZE;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private final long[] index;
+    private final boolean sorted;
+
+    /**
+     * Opens a capture file
+     * @param file location of the capture file
+     * @throws IOException if the file can not be read or is not a capture file
+     */
+    public CaptureReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = this.file.getChannel();
+            long length = channel.size();
+            ByteBuffer header = read(channel, 0, CaptureFormat.HEADER_SIZE);
+            ByteBuffer trailer;
+            long records = -1;
+            int flags = 0;
+
+            if (header.getInt() != CaptureFormat.MAGIC
+                    || header.getInt() != CaptureFormat.VERSION
+                    || header.getInt() != CaptureFormat.FRAME_SIZE
+                    || header.getInt() != CaptureFormat.INDEX_INTERVAL) {
+                throw new IOException("Not a KiP capture file: " + file);
+            }
+
+            if (length >= CaptureFormat.HEADER_SIZE + CaptureFormat.TRAILER_SIZE) {
+                trailer = read(channel, length - CaptureFormat.TRAILER_SIZE,
+                               CaptureFormat.TRAILER_SIZE);
+                records = trailer.getLong();
+                flags = trailer.getInt();
+                if (trailer.getInt() != CaptureFormat.TRAILER_MAGIC) {
+                    records = -1;
+                }
+            }
+
+            if (records >= 0 && records <= length / CaptureFormat.RECORD_SIZE
+                    && length == footerOffset(records) + entries(records) * 8L
+                                 + CaptureFormat.TRAILER_SIZE) {
+                size = records;
+                segments = map(channel, size);
+                index = readIndex(channel, size);
+                sorted = (flags & CaptureFormat.FLAG_SORTED) != 0;
+            } else {
+                // The writer never finished, keep every complete record
+                size = (length - CaptureFormat.HEADER_SIZE) / CaptureFormat.RECORD_SIZE;
+                segments = map(channel, size);
+                index = new long[entries(size)];
+                sorted = rebuildIndex();
+            }
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of records in the capture
+     * @return number of records
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Whether records are in time order, which makes time lookups fast
+     * @return true if no record is older than the one before it
+     */
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Returns the time stamp of a record
+     * @param ordinal position of the record, 0 being the first
+     * @return nanoseconds since the epoch
+     */
+    public long getEpoch(long ordinal) {
+        return segment(ordinal).getLong(offset(ordinal));
+    }
+
+    /**
+     * Copies the frame of a record
+     * @param ordinal position of the record, 0 being the first
+     * @param data    array of at least FRAME_SIZE bytes to copy into
+     * @return nanoseconds since the epoch
+     */
+    public long getData(long ordinal, byte[] data) {
+        ByteBuffer record = segment(ordinal).duplicate();
+
+        record.position(offset(ordinal));
+        long epoch = record.getLong();
+        record.get(data, 0, CaptureFormat.FRAME_SIZE);
+        return epoch;
+    }
+
+    /**
+     * Returns the frame of a record without copying it
+     * @param ordinal position of the record, 0 being the first
+     * @return read only buffer over the frame in the mapped file
+     */
+    public ByteBuffer getFrame(long ordinal) {
+        ByteBuffer record = segment(ordinal).duplicate();
+        int offset = offset(ordinal) + 8;
+
+        record.limit(offset + CaptureFormat.FRAME_SIZE);
+        record.position(offset);
+        return record.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a record as a packet backed by the mapped file
+     * @param ordinal position of the record, 0 being the first
+     * @return the packet
+     */
+    public Packet get(long ordinal) {
+        return new Packet(getEpoch(ordinal), getFrame(ordinal));
+    }
+
+    /**
+     * Finds the first record at or after a time.
+     *
+     * In a sorted capture this is a binary search over the index and then over
+     * one index interval of records. In an unsorted capture every record is
+     * scanned in file order.
+     * @param epoch nanoseconds since the epoch
+     * @return ordinal of the first record no older than epoch, or size() if
+     *         there is none
+     */
+    public long indexOf(long epoch) {
+        int low = 0;
+        int high = index.length;
+        int mid;
+        long first;
+        long last;
+
+        if (!sorted) {
+            for (long i = 0; i < size; i++) {
+                if (getEpoch(i) >= epoch) {
+                    return i;
+                }
+            }
+            return size;
+        }
+
+        // Count the index entries older than epoch
+        while (low < high) {
+            mid = (low + high) >>> 1;
+            if (index[mid] < epoch) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == 0) {
+            return 0;
+        }
+
+        // The record is in the interval of the last entry older than epoch
+        first = (long) (low - 1) * CaptureFormat.INDEX_INTERVAL;
+        last = Math.min(size, first + CaptureFormat.INDEX_INTERVAL);
+        while (first < last) {
+            long middle = (first + last) >>> 1;
+            if (getEpoch(middle) < epoch) {
+                first = middle + 1;
+            } else {
+                last = middle;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Closes the file. Mapped records stay valid until they are no longer
+     * referenced.
+     * @throws IOException if the file can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Finds the mapped segment holding a record
+     * @param ordinal position of the record
+     * @return mapped segment
+     */
+    private MappedByteBuffer segment(long ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Ordinal: " + ordinal + ", Size: " + size);
+        }
+        return segments[(int) (ordinal / SEGMENT_RECORDS)];
+    }
+
+    /**
+     * Finds the offset of a record within its segment
+     * @param ordinal position of the record
+     * @return offset in bytes
+     */
+    private int offset(long ordinal) {
+        return (int) (ordinal % SEGMENT_RECORDS) * CaptureFormat.RECORD_SIZE;
+    }
+
+    /**
+     * Recomputes the index from the records of the file
+     * @return true if the records are in time order
+     */
+    private boolean rebuildIndex() {
+        boolean ordered = true;
+        long last = Long.MIN_VALUE;
+        long epoch;
+
+        for (long i = 0; i < size; i++) {
+            epoch = getEpoch(i);
+            if (i % CaptureFormat.INDEX_INTERVAL == 0) {
+                index[(int) (i / CaptureFormat.INDEX_INTERVAL)] = epoch;
+            }
+            ordered = ordered && epoch >= last;
+            last = epoch;
+        }
+        return ordered;
+    }
+
+    /**
+     * Maps the records of the file
+     * @param channel channel of the file
+     * @param records number of records to map
+     * @return one mapping per segment
+     * @throws IOException if the file can not be mapped
+     */
+    private static MappedByteBuffer[] map(FileChannel channel, long records) throws IOException {
+        MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((records + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+        long first;
+
+        for (int i = 0; i < mapped.length; i++) {
+            first = i * SEGMENT_RECORDS;
+            mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    CaptureFormat.HEADER_SIZE + first * CaptureFormat.RECORD_SIZE,
+                    Math.min(SEGMENT_RECORDS, records - first) * CaptureFormat.RECORD_SIZE);
+        }
+        return mapped;
+    }
+
+    /**
+     * Reads the index footer
+     * @param channel channel of the file
+     * @param records number of records in the file
+     * @return time stamp of every index interval'th record
+     * @throws IOException if the index can not be read
+     */
+    private static long[] readIndex(FileChannel channel, long records) throws IOException {
+        long[] entries = new long[entries(records)];
+
+        read(channel, footerOffset(records), entries.length * 8).asLongBuffer().get(entries);
+        return entries;
+    }
+
+    /**
+     * Reads a region of the file
+     * @param channel  channel of the file
+     * @param position offset of the region
+     * @param length   number of bytes to read
+     * @return buffer holding the region
+     * @throws IOException if the file is too short
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Capture file is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Offset of the index footer
+     * @param records number of records in the file
+     * @return offset in bytes
+     */
+    private static long footerOffset(long records) {
+        return CaptureFormat.HEADER_SIZE + records * CaptureFormat.RECORD_SIZE;
+    }
+
+    /**
+     * Number of index entries for a number of records
+     * @param records number of records
+     * @return number of index entries
+     */
+    private static int entries(long records) {
+        return (int) ((records + CaptureFormat.INDEX_INTERVAL - 1) / CaptureFormat.INDEX_INTERVAL);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams a run of records out of a capture file.
+ * @author Christe, Anthony
+ */
+public class CaptureSource implements RecordSource {
+    private final CaptureReader reader;
+    private final long first;
+    private final long last;
+    private long ordinal;
+    private ByteBuffer frame = null;
+
+    /**
+     * Streams every record of a capture
+     * @param reader the open capture, closed along with the source
+     */
+    public CaptureSource(CaptureReader reader) {
+        this(reader, 0, reader.size());
+    }
+
+    /**
+     * Streams a run of records of a capture
+     * @param reader the open capture, closed along with the source
+     * @param first  ordinal of the first record to stream
+     * @param last   ordinal past the last record to stream
+     */
+    public CaptureSource(CaptureReader reader, long first, long last) {
+        this.reader = reader;
+        this.first = Math.max(0, first);
+        this.last = Math.min(reader.size(), last);
+        this.ordinal = this.first - 1;
+    }
+
+    @Override
+    public boolean next() {
+        if (ordinal + 1 >= last) {
+            return false;
+        }
+        ordinal++;
+        frame = reader.getFrame(ordinal);
+        return true;
+    }
+
+    @Override
+    public long getEpoch() {
+        return reader.getEpoch(ordinal);
+    }
+
+    @Override
+    public ByteBuffer getFrame() {
+        return frame;
+    }
+
+    @Override
+    public int getProgress() {
+        return (last <= first) ? 100 : (int) ((ordinal + 1 - first) * 100 / (last - first));
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ *
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import kip.client.Packet;
+
+/**
+ * Streams packets into a binary capture file.
+ *
+ * Records are gathered in a direct buffer and written out in large blocks, so
+ * writing never holds more than a few hundred records in memory however long
+ * the capture is. The index footer is written by close, which must be called
+ * for the file to be complete.
+ * @author Christe, Anthony
+ * @see CaptureFormat
+ */
+public class CaptureWriter implements RecordSink {
+    private static final int BUFFERED_RECORDS = 256;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long[] index = new long[16];
+    private long count = 0;
+    private long last = Long.MIN_VALUE;
+    private boolean sorted = true;
+    private boolean closed = false;
+
+    /**
+     * Creates a capture file, replacing any file already there
+     * @param file location of the capture file
+     * @throws IOException if the file can not be created
+     */
+    public CaptureWriter(File file) throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+        buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS * CaptureFormat.RECORD_SIZE);
+        buffer.putInt(CaptureFormat.MAGIC);
+        buffer.putInt(CaptureFormat.VERSION);
+        buffer.putInt(CaptureFormat.FRAME_SIZE);
+        buffer.putInt(CaptureFormat.INDEX_INTERVAL);
+    }
+
+    /**
+     * Appends a record
+     * @param epoch nanoseconds since the epoch when the frame was received
+     * @param frame buffer positioned at the start of the frame, frames shorter
+     *              than FRAME_SIZE are padded with zeros
+     * @throws IOException if the record can not be written
+     */
+    @Override
+    public void write(long epoch, ByteBuffer frame) throws IOException {
+        ByteBuffer source = frame.duplicate();
+        int length = Math.min(source.remaining(), CaptureFormat.FRAME_SIZE);
+
+        if (buffer.remaining() < CaptureFormat.RECORD_SIZE) {
+            flush();
+        }
+        if (count % CaptureFormat.INDEX_INTERVAL == 0) {
+            addIndexEntry(epoch);
+        }
+        sorted = sorted && epoch >= last;
+        last = epoch;
+
+        source.limit(source.position() + length);
+        buffer.putLong(epoch);
+        buffer.put(source);
+        for (int i = length; i < CaptureFormat.FRAME_SIZE; i++) {
+            buffer.put((byte) 0);
+        }
+        count++;
+    }
+
+    /**
+     * Appends a record
+     * @param epoch nanoseconds since the epoch when the frame was received
+     * @param frame the raw frame
+     * @throws IOException if the record can not be written
+     */
+    public void write(long epoch, byte[] frame) throws IOException {
+        write(epoch, ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Appends a packet
+     * @param packet the packet to write
+     * @throws IOException if the record can not be written
+     */
+    public void write(Packet packet) throws IOException {
+        write(packet.getEpochNanos(), packet.getFrame());
+    }
+
+    /**
+     * Number of records written so far
+     * @return number of records
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Writes the index footer and closes the file
+     * @throws IOException if the footer can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        int entries = indexEntries();
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            for (int i = 0; i < entries; i++) {
+                if (buffer.remaining() < 8) {
+                    flush();
+                }
+                buffer.putLong(index[i]);
+            }
+            if (buffer.remaining() < CaptureFormat.TRAILER_SIZE) {
+                flush();
+            }
+            buffer.putLong(count);
+            buffer.putInt(sorted ? CaptureFormat.FLAG_SORTED : 0);
+            buffer.putInt(CaptureFormat.TRAILER_MAGIC);
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes out the buffered bytes
+     * @throws IOException if the bytes can not be written
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Records the time stamp of the first record of an index interval
+     * @param epoch time stamp of the record
+     */
+    private void addIndexEntry(long epoch) {
+        int entry = (int) (count / CaptureFormat.INDEX_INTERVAL);
+
+        if (entry == index.length) {
+            index = Arrays.copyOf(index, index.length * 2);
+        }
+        index[entry] = epoch;
+    }
+
+    /**
+     * Number of index entries for the records written
+     * @return number of index entries
+     */
+    private int indexEntries() {
+        return (int) ((count + CaptureFormat.INDEX_INTERVAL - 1) / CaptureFormat.INDEX_INTERVAL);
+    }
+}
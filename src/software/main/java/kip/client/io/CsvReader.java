@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import kip.utils.Constants;
+import kip.utils.TimeUtils;
+
+/**
+ * Streams packet records out of a CSV file.
+ *
+ * Each line holds the time stamp in milliseconds since the epoch followed by
+ * the signed bytes of the frame, all separated by commas. The file is read
+ * through one fixed size buffer and parsed a byte at a time, so reading
+ * allocates nothing per record and memory use does not depend on the size of
+ * the file.
+ * @author Christe, Anthony
+ */
+public class CsvReader implements RecordSource {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long length;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] frame = new byte[Constants.SERVER_PACKET_SIZE];
+    private final ByteBuffer frameBuffer = ByteBuffer.wrap(frame);
+    private long epoch = 0;
+    private long number = 0;
+    private long line = 0;
+
+    /**
+     * Opens a CSV file
+     * @param file location of the CSV file
+     * @throws IOException if the file can not be opened
+     */
+    public CsvReader(File file) throws IOException {
+        channel = new FileInputStream(file).getChannel();
+        length = channel.size();
+        buffer.flip();
+    }
+
+    /**
+     * Parses the next line of the file. Blank lines are skipped, bytes past
+     * the size of a frame are ignored and shorter frames are padded with zeros.
+     * @return true if a record was read, false at the end of the file
+     * @throws IOException if the line is malformed or can not be read
+     */
+    @Override
+    public boolean next() throws IOException {
+        int c = read();
+        int size = 0;
+
+        while (c == '\n' || c == '\r') {
+            c = read();
+        }
+        if (c < 0) {
+            return false;
+        }
+        line++;
+
+        c = parseNumber(c);
+        epoch = TimeUtils.fromMillis(number);
+        while (c == ',') {
+            c = parseNumber(read());
+            if (number < Byte.MIN_VALUE || number > Byte.MAX_VALUE) {
+                throw malformed();
+            }
+            if (size < frame.length) {
+                frame[size++] = (byte) number;
+            }
+        }
+        if (c != '\n' && c != '\r' && c >= 0) {
+            throw malformed();
+        }
+
+        while (size < frame.length) {
+            frame[size++] = 0;
+        }
+        frameBuffer.clear();
+        return true;
+    }
+
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public ByteBuffer getFrame() {
+        return frameBuffer;
+    }
+
+    @Override
+    public int getProgress() {
+        long read;
+
+        try {
+            read = channel.position() - buffer.remaining();
+        } catch (IOException e) {
+            return 0;
+        }
+        return (length == 0) ? 100 : (int) (read * 100 / length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Parses a decimal integer into number
+     * @param c first character of the integer
+     * @return the character following the integer
+     * @throws IOException if there is no integer or it can not be read
+     */
+    private int parseNumber(int c) throws IOException {
+        boolean negative = (c == '-');
+        long value = 0;
+        int digits = 0;
+
+        if (negative) {
+            c = read();
+        }
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            digits++;
+            c = read();
+        }
+        if (digits == 0 || digits > 18) {
+            throw malformed();
+        }
+
+        number = negative ? -value : value;
+        return c;
+    }
+
+    /**
+     * Reads the next character of the file
+     * @return the character, or -1 at the end of the file
+     * @throws IOException if the file can not be read
+     */
+    private int read() throws IOException {
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int count = channel.read(buffer);
+            buffer.flip();
+            if (count < 0) {
+                return -1;
+            }
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Error for a line that does not hold a record
+     * @return exception naming the line
+     */
+    private IOException malformed() {
+        return new IOException("Malformed CSV record on line " + line);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import kip.utils.Constants;
+import kip.utils.TimeUtils;
+
+/**
+ * Streams packet records into a CSV file readable by {@link CsvReader} and
+ * other tools.
+ *
+ * Lines are formatted straight into a fixed size byte buffer, using a table
+ * holding the text of every byte value, and written out whenever it fills.
+ * @author Christe, Anthony
+ */
+public class CsvWriter implements RecordSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Longest line written: a 19 digit time stamp, then a comma and up to four
+     * characters per byte, then a newline
+     */
+    private static final int MAX_LINE = 20 + 5 * Constants.SERVER_PACKET_SIZE + 1;
+
+    private static final byte[][] BYTE_TEXT = new byte[256][];
+
+    static {
+        for (int i = Byte.MIN_VALUE; i <= Byte.MAX_VALUE; i++) {
+            BYTE_TEXT[i & 0xFF] = Integer.toString(i).getBytes();
+        }
+    }
+
+    private final FileChannel channel;
+    private final byte[] text = new byte[BUFFER_SIZE];
+    private final byte[] digits = new byte[20];
+    private int count = 0;
+
+    /**
+     * Creates a CSV file, replacing any file already there
+     * @param file location of the CSV file
+     * @throws IOException if the file can not be created
+     */
+    public CsvWriter(File file) throws IOException {
+        channel = new FileOutputStream(file).getChannel();
+    }
+
+    /**
+     * Writes a record as a line of the file. Frames are written at their full
+     * size, padded with zeros if shorter.
+     * @param epoch nanoseconds since the epoch, written as milliseconds
+     * @param frame buffer positioned at the start of the frame
+     * @throws IOException if the line can not be written
+     */
+    @Override
+    public void write(long epoch, ByteBuffer frame) throws IOException {
+        int position = frame.position();
+        int length = Math.min(frame.remaining(), Constants.SERVER_PACKET_SIZE);
+        byte[] value;
+
+        if (count + MAX_LINE > text.length) {
+            flush();
+        }
+
+        appendNumber(TimeUtils.toMillis(epoch));
+        for (int i = 0; i < Constants.SERVER_PACKET_SIZE; i++) {
+            value = BYTE_TEXT[(i < length) ? frame.get(position + i) & 0xFF : 0];
+            text[count++] = ',';
+            System.arraycopy(value, 0, text, count, value.length);
+            count += value.length;
+        }
+        text[count++] = '\n';
+    }
+
+    /**
+     * Writes out the remaining lines and closes the file
+     * @throws IOException if the lines can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Formats a decimal integer into the buffer
+     * @param number the integer
+     */
+    private void appendNumber(long number) {
+        int size = 0;
+        long rest = Math.abs(number);
+
+        do {
+            digits[size++] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest > 0);
+
+        if (number < 0) {
+            text[count++] = '-';
+        }
+        while (size > 0) {
+            text[count++] = digits[--size];
+        }
+    }
+
+    /**
+     * Writes out the buffered lines
+     * @throws IOException if the lines can not be written
+     */
+    private void flush() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text, 0, count);
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        count = 0;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.nio.ByteBuffer;
+import kip.client.PacketHistory;
+
+/**
+ * Adds streamed records to a packet history without decoding them.
+ * @author Christe, Anthony
+ */
+public class HistorySink implements RecordSink {
+    private final PacketHistory history;
+
+    /**
+     * Streams records into a packet history
+     * @param history the history to add records to
+     */
+    public HistorySink(PacketHistory history) {
+        this.history = history;
+    }
+
+    @Override
+    public void write(long epoch, ByteBuffer frame) {
+        history.add(epoch, frame);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.nio.ByteBuffer;
+import kip.client.PacketHistory;
+import kip.utils.Constants;
+
+/**
+ * Streams the packets of a history snapshot, oldest first, skipping any that
+ * are overwritten before they are read.
+ * @author Christe, Anthony
+ */
+public class HistorySource implements RecordSource {
+    private final PacketHistory.Snapshot snapshot;
+    private final byte[] frame = new byte[Constants.SERVER_PACKET_SIZE];
+    private final ByteBuffer frameBuffer = ByteBuffer.wrap(frame);
+    private int index = 0;
+    private long epoch = 0;
+
+    /**
+     * Streams a snapshot of a packet history
+     * @param snapshot the packets to stream
+     */
+    public HistorySource(PacketHistory.Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public boolean next() {
+        while (index < snapshot.size()) {
+            epoch = snapshot.getData(index++, frame);
+            if (epoch != PacketHistory.MISSING) {
+                frameBuffer.clear();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public ByteBuffer getFrame() {
+        return frameBuffer;
+    }
+
+    @Override
+    public int getProgress() {
+        return (snapshot.size() == 0) ? 100 : (int) (index * 100L / snapshot.size());
+    }
+
+    @Override
+    public void close() {
+    }
+}
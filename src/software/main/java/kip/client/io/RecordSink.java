@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination for a stream of packet records, such as a CSV or capture file.
+ * @author Christe, Anthony
+ */
+public interface RecordSink extends Closeable {
+    /**
+     * Writes a record
+     * @param epoch nanoseconds since the epoch when the frame was received
+     * @param frame buffer positioned at the start of the frame, left unchanged
+     * @throws IOException if the record can not be written
+     */
+    void write(long epoch, ByteBuffer frame) throws IOException;
+}
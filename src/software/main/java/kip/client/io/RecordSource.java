@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream of packet records read one at a time, such as a CSV file or the
+ * packet history.
+ * @author Christe, Anthony
+ */
+public interface RecordSource extends Closeable {
+    /**
+     * Moves to the next record
+     * @return true if there is a record, false at the end of the stream
+     * @throws IOException if the record can not be read
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Time stamp of the current record
+     * @return nanoseconds since the epoch
+     */
+    long getEpoch();
+
+    /**
+     * Frame of the current record, only valid until next is called
+     * @return buffer positioned at the start of the frame
+     */
+    ByteBuffer getFrame();
+
+    /**
+     * How far through the stream the current record is
+     * @return percentage from 0 to 100
+     */
+    int getProgress();
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Passes on only the records received within a time range.
+ * @author Christe, Anthony
+ */
+public class TimeRangeFilter implements RecordSink {
+    private final RecordSink sink;
+    private final long start;
+    private final long end;
+
+    /**
+     * Filters records on their way to another sink
+     * @param sink  where records in the range are written, closed along with
+     *              the filter
+     * @param start first nanosecond since the epoch to keep
+     * @param end   nanosecond since the epoch after the last one to keep
+     */
+    public TimeRangeFilter(RecordSink sink, long start, long end) {
+        this.sink = sink;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public void write(long epoch, ByteBuffer frame) throws IOException {
+        if (epoch >= start && epoch < end) {
+            sink.write(epoch, frame);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sink.close();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.awt.Component;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JTextArea;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+/**
+ * Thread class to stream records from a source to a sink off the event
+ * dispatch thread, showing a cancellable progress dialog while it runs.
+ * 
+ * Only the record being copied is held in memory. Both ends are closed when
+ * the transfer finishes, fails or is cancelled.
+ * @author Christe, Anthony
+ */
+public class TransferWorker extends SwingWorker<Long, Void> {
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private final RecordSource source;
+    private final RecordSink sink;
+    private final String message;
+    private final JTextArea status;
+    private final ProgressMonitor monitor;
+
+    /**
+     * Prepares a transfer, call execute to start it
+     * @param parent  component the progress dialog is shown over
+     * @param message what the transfer is doing, shown in the progress dialog
+     * @param source  where records are read from
+     * @param sink    where records are written to
+     * @param status  reference to status window for the result of the transfer
+     */
+    public TransferWorker(Component parent, String message, RecordSource source,
+                          RecordSink sink, JTextArea status) {
+        this.source = source;
+        this.sink = sink;
+        this.message = message;
+        this.status = status;
+        this.monitor = new ProgressMonitor(parent, message, null, 0, 100);
+
+        addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("progress".equals(evt.getPropertyName())) {
+                    monitor.setProgress((Integer) evt.getNewValue());
+                    if (monitor.isCanceled()) {
+                        cancel(false);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies every record from the source to the sink
+     * @return number of records copied
+     * @throws Exception don't allow Swing thread manager to eat exceptions
+     */
+    @Override
+    protected Long doInBackground() throws Exception {
+        long count = 0;
+
+        try {
+            while (!isCancelled() && source.next()) {
+                sink.write(source.getEpoch(), source.getFrame());
+                if (++count % PROGRESS_INTERVAL == 0) {
+                    setProgress(Math.min(100, source.getProgress()));
+                }
+            }
+        } finally {
+            try {
+                source.close();
+            } finally {
+                sink.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reports the result of the transfer to the status window
+     */
+    @Override
+    protected void done() {
+        monitor.close();
+        try {
+            status.append(message + ": " + get() + " packets\n");
+        } catch (CancellationException e) {
+            status.append(message + ": cancelled\n");
+        } catch (InterruptedException e) {
+            status.append(message + ": interrupted\n");
+        } catch (ExecutionException e) {
+            status.append(message + ": failed\n" + e.getCause().getMessage() + "\n");
+        }
+    }
+}
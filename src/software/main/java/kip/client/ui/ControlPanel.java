@@ -31,8 +31,11 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.Timer;
 import javax.swing.border.TitledBorder;
+import kip.client.BoardPartition;
 import kip.client.ClientActionManager;
+import kip.client.IngestStatistics;
 import kip.utils.ConfigurationManager;
 
 /**
@@ -59,7 +62,9 @@ public class ControlPanel extends JPanel {
     private final JTextArea status = new JTextArea();
     //private final JButton btnSendId = new JButton("Send ID");
     private final JButton btnSendTriggers = new JButton("Send Triggers");
+    private final JButton btnStream = new JButton("Stream");
     private final JButton btnCancel = new JButton("Cancel");
+    private final JLabel lblStatistics = new JLabel();
     /*
     private final JButton btnMAC = new JButton("DEBUG: Send MAC");
     private final JButton btnIP = new JButton("DEBUG: Send IP");
@@ -95,7 +100,9 @@ public class ControlPanel extends JPanel {
         controlParameters.add(inputs, BorderLayout.CENTER);
         this.add(controlParameters, BorderLayout.NORTH);
 
+        buttons.add(lblStatistics);
         buttons.add(btnSendTriggers);
+        buttons.add(btnStream);
         buttons.add(btnCancel);
 
         controlButtonsAndStatus.add(buttons, BorderLayout.NORTH);
@@ -115,6 +122,34 @@ public class ControlPanel extends JPanel {
                                  status, btnCancel);
             }
         });
+
+        btnStream.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                cam.startStream(txtAddress.getText(), txtPort.getText(),
+                                txtHertz.getText(), txtDuration.getText(),
+                                status, btnCancel);
+            }
+        });
+        
+        // Keep the packet counters current without touching the ingest threads
+        new Timer(1000, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                IngestStatistics statistics = cam.getIngestStatistics();
+                long missing = 0;
+                long reordered = 0;
+                
+                if (statistics != null) {
+                    for (BoardPartition board : cam.getBoards().getBoards()) {
+                        missing += board.getSequenceTracker().getMissing();
+                        reordered += board.getSequenceTracker().getReordered();
+                    }
+                    lblStatistics.setText(statistics + "  Missing: " + missing
+                                          + "  Reordered: " + reordered);
+                }
+            }
+        }).start();
     }
     
     /**
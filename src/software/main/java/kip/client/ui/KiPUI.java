@@ -27,6 +27,8 @@ import javax.swing.JMenuBar;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
 import javax.swing.SwingUtilities;
+import kip.client.BoardListener;
+import kip.client.BoardPartition;
 import kip.client.ClientActionManager;
 import kip.utils.ConfigurationManager;
 
@@ -39,6 +41,7 @@ public class KiPUI extends JPanel {
     private static JFrame frame = null;
     private JTabbedPane tabs = null;
     private ControlPanel controlPanel = null;
+    private JTabbedPane boardTabs = null;
     private RealTimePanel realTimePanel = null;
     private PacketExplorer packetExplorer = null;
     private ClientActionManager cam = null;
@@ -51,13 +54,26 @@ public class KiPUI extends JPanel {
         cam = new ClientActionManager();
         tabs = new JTabbedPane();
         controlPanel = new ControlPanel(cam);
+        boardTabs = new JTabbedPane();
         realTimePanel = new RealTimePanel(cam);
         packetExplorer = new PacketExplorer(cam);
         
         frame.setJMenuBar(new MenuBar(cam, controlPanel));
         
-        cam.startServerWorker(controlPanel.getStatusArea());
-        cam.startRealTimePlotWorker(realTimePanel);
+        cam.getBoards().addBoardListener(new BoardListener() {
+            @Override
+            public void boardAdded(final BoardPartition board) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        addBoardPanel(board);
+                    }
+                });
+            }
+        });
+        cam.getEventLog().attach(controlPanel.getStatusArea());
+        cam.startIngestEngine(controlPanel.getStatusArea());
+        cam.startRealTimeFeed(realTimePanel);
 
         initUI();
     }
@@ -68,11 +84,23 @@ public class KiPUI extends JPanel {
     public final void initUI() {
         controlPanel.setPreferredSize(new Dimension(1200, 700));
         tabs.addTab("Control", controlPanel);
-        tabs.addTab("Real Time Data", realTimePanel);
+        boardTabs.addTab("All Boards", realTimePanel);
+        tabs.addTab("Real Time Data", boardTabs);
         tabs.addTab("Packet Explorer", packetExplorer);
         add(tabs);
     }
 
+    /**
+     * Adds a tab of real time plots fed only by one board's packets
+     * @param board the board's partition
+     */
+    private void addBoardPanel(BoardPartition board) {
+        RealTimePanel panel = new RealTimePanel(cam);
+        
+        cam.startRealTimeFeed(panel, board);
+        boardTabs.addTab(board.toString(), panel);
+    }
+
     private static void createAndShowUI() {
         frame = new JFrame("KiP");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
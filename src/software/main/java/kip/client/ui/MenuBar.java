@@ -21,14 +21,10 @@ package kip.client.ui;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Scanner;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import javax.swing.JFileChooser;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
@@ -36,19 +32,35 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JTextArea;
 import kip.client.ClientActionManager;
-import kip.client.Packet;
+import kip.client.PacketHistory;
+import kip.client.io.CaptureFormat;
+import kip.client.io.CaptureReader;
+import kip.client.io.CaptureSource;
+import kip.client.io.CaptureWriter;
+import kip.client.io.CsvReader;
+import kip.client.io.CsvWriter;
+import kip.client.io.HistorySink;
+import kip.client.io.HistorySource;
+import kip.client.io.RecordSink;
+import kip.client.io.RecordSource;
+import kip.client.io.TimeRangeFilter;
+import kip.client.io.TransferWorker;
+import kip.utils.TimeUtils;
 
 @SuppressWarnings({"serial", "unchecked"})
 /**
  * Menubar object for quitting program and setting options on KiP Board
  */
 public class MenuBar extends JMenuBar implements ActionListener {
+    private static final String TIME_FORMAT = "MM/dd/yy HH:mm:ss";
+    
     private ClientActionManager cam;
     private ControlPanel controlPanel;
     private JMenu fileMenu;
     private JMenu boardMenu;
     private JMenuItem menuSave;
     private JMenuItem menuOpen;
+    private JMenuItem menuExport;
     private JMenuItem menuClearPackets;
     private JMenuItem menuQuit;
     private JMenuItem boardSendIP;
@@ -79,6 +91,8 @@ public class MenuBar extends JMenuBar implements ActionListener {
         menuSave.addActionListener(this);
         menuOpen = new JMenuItem("Open Packets");
         menuOpen.addActionListener(this);
+        menuExport = new JMenuItem("Export Time Range");
+        menuExport.addActionListener(this);
         menuClearPackets = new JMenuItem("Clear Packets");
         menuClearPackets.addActionListener(this);
         menuQuit = new JMenuItem("Quit");
@@ -86,6 +100,7 @@ public class MenuBar extends JMenuBar implements ActionListener {
         
         fileMenu.add(menuSave);
         fileMenu.add(menuOpen);
+        fileMenu.add(menuExport);
         fileMenu.addSeparator();
         fileMenu.add(menuClearPackets);
         fileMenu.addSeparator();
@@ -123,63 +138,165 @@ public class MenuBar extends JMenuBar implements ActionListener {
     }
     
     /**
-     * Saves packets to file
+     * Saves packets to file, as a binary capture if the file name has the
+     * capture extension and as CSV otherwise
      * @param file location to save file too
      */
     private void savePackets(File file) {
-        BufferedWriter bufferedWriter;
-        String line = "";
-        byte[] data;
-        
         try {
-            bufferedWriter = new BufferedWriter(new FileWriter(file));
-            for(Packet p : cam.getPacketHistory().getHistory()) {
-                line = p.getEpoch() + ",";
-                data = p.getData();
-                for(int i = 0; i < data.length; i++) {
-                    line = line + data[i] + ",";
-                }
-                bufferedWriter.write(line.substring(0, line.length() - 1) + "\n");
-            }
-            bufferedWriter.flush();
-            bufferedWriter.close();
+            transfer("Saving packets", new HistorySource(cam.getPacketHistory().snapshot()),
+                     createSink(file));
         } catch (IOException e) {
-            controlPanel.getStatusArea().append("Could not save file\n" + e.getMessage());
+            controlPanel.getStatusArea().append("Could not save file\n" + e.getMessage() + "\n");
         }
     }
     
     /**
-     * Load packets from file
+     * Load packets from file into the packet history without decoding them.
+     * 
+     * Only the newest packets of a binary capture that fit in the history are
+     * read.
      * @param file location to load packets from
      */
     private void loadPackets(File file) {
-        Scanner in;
-        String[] split;
-        Packet packet;
-        Calendar calendar = null;
-        byte[] data;
+        PacketHistory history = cam.getPacketHistory();
+        CaptureReader reader;
+        RecordSource source;
+        
+        try {
+            if(isCapture(file)) {
+                reader = new CaptureReader(file);
+                source = new CaptureSource(reader, reader.size() - history.capacity(), reader.size());
+            } else {
+                source = new CsvReader(file);
+            }
+            transfer("Loading packets", source, new HistorySink(history));
+        } catch (IOException e) {
+            controlPanel.getStatusArea().append("Could not open file\n" + e.getMessage() + "\n");
+        }
+    }
+    
+    /**
+     * Copies the packets of a file received within a time range to another
+     * file, without loading them into the packet history
+     * @param from  location to read packets from
+     * @param to    location to write packets to
+     * @param start first millisecond since the epoch to keep
+     * @param end   millisecond since the epoch after the last one to keep
+     */
+    private void exportPackets(File from, File to, long start, long end) {
+        long startNanos = TimeUtils.fromMillis(start);
+        long endNanos = TimeUtils.fromMillis(end);
+        CaptureReader reader;
+        RecordSource source;
         
         try {
-            in = new Scanner(file);
-            
-            while(in.hasNext()) {
-                split = in.nextLine().split(",");
-                calendar = Calendar.getInstance();
-                calendar.setTimeInMillis(Long.parseLong(split[0]));
-                data = new byte[split.length - 1];
-                
-                for(int i = 1; i < split.length; i++) {
-                    data[i - 1] = Byte.parseByte(split[i]);
+            if(isCapture(from)) {
+                reader = new CaptureReader(from);
+                if(reader.isSorted()) {
+                    source = new CaptureSource(reader, reader.indexOf(startNanos), reader.indexOf(endNanos));
+                } else {
+                    source = new CaptureSource(reader);
                 }
-                
-                packet = new Packet(calendar, data);
-                cam.getPacketHistory().add(packet);
+            } else {
+                source = new CsvReader(from);
             }
-            
-            in.close();
         } catch (IOException e) {
-            controlPanel.getStatusArea().append("Could not open file\n" + e.getMessage());
+            controlPanel.getStatusArea().append("Could not open file\n" + e.getMessage() + "\n");
+            return;
+        }
+        
+        try {
+            transfer("Exporting packets", source,
+                     new TimeRangeFilter(createSink(to), startNanos, endNanos));
+        } catch (IOException e) {
+            controlPanel.getStatusArea().append("Could not save file\n" + e.getMessage() + "\n");
+            try {
+                source.close();
+            } catch (IOException ex) {
+                // Already reporting the error that got us here
+            }
+        }
+    }
+    
+    /**
+     * Streams packets in the background, showing its progress
+     * @param message what the transfer is doing
+     * @param source  where packets are read from
+     * @param sink    where packets are written to
+     */
+    private void transfer(String message, RecordSource source, RecordSink sink) {
+        new TransferWorker(controlPanel, message, source, sink,
+                           controlPanel.getStatusArea()).execute();
+    }
+    
+    /**
+     * Creates a file to write packets to
+     * @param file location of the file
+     * @return capture writer if the file name has the capture extension, CSV
+     *         writer otherwise
+     * @throws IOException if the file can not be created
+     */
+    private RecordSink createSink(File file) throws IOException {
+        return isCapture(file) ? new CaptureWriter(file) : new CsvWriter(file);
+    }
+    
+    /**
+     * Checks whether a file is a binary capture file
+     * @param file the file
+     * @return true if the file name has the capture extension
+     */
+    private boolean isCapture(File file) {
+        return file.getName().toLowerCase().endsWith(CaptureFormat.EXTENSION);
+    }
+    
+    /**
+     * Asks for a time
+     * @param message what the time is for
+     * @return milliseconds since the epoch, or -1 if no time was entered
+     */
+    private long displayTimeDialog(String message) {
+        String response = JOptionPane.showInputDialog(message + " (" + TIME_FORMAT + ")");
+        
+        if(response == null) {
+            return -1;
         }
+        try {
+            return new SimpleDateFormat(TIME_FORMAT).parse(response.trim()).getTime();
+        } catch (ParseException e) {
+            controlPanel.getStatusArea().append("Unrecognized time " + response + "\n");
+            return -1;
+        }
+    }
+    
+    /**
+     * Asks for a file, a time range and a destination and exports the packets
+     * of the file within the range
+     * @param fileChooser chooser used to pick both files
+     */
+    private void exportTimeRange(JFileChooser fileChooser) {
+        File from;
+        File to;
+        long start;
+        long end;
+        
+        if(fileChooser.showOpenDialog(controlPanel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        from = fileChooser.getSelectedFile();
+        start = displayTimeDialog("Export packets from");
+        if(start < 0) {
+            return;
+        }
+        end = displayTimeDialog("Export packets until");
+        if(end < 0) {
+            return;
+        }
+        if(fileChooser.showSaveDialog(controlPanel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        to = fileChooser.getSelectedFile();
+        exportPackets(from, to, start, end);
     }
     
     @Override
@@ -207,10 +324,13 @@ public class MenuBar extends JMenuBar implements ActionListener {
                 loadPackets(file);
             }
         }
+        if(menuItem == menuExport) {
+            exportTimeRange(fileChooser);
+        }
         if(menuItem == menuClearPackets) {
             returnVal = JOptionPane.showConfirmDialog(controlPanel, "Are you sure you want to remove all stored packets?", "Clear Packet History", JOptionPane.YES_NO_OPTION);
             if(returnVal == JOptionPane.YES_OPTION) {
-                cam.getPacketHistory().getHistory().clear();
+                cam.getPacketHistory().clear();
             }
         }
         if(menuItem == menuQuit) {
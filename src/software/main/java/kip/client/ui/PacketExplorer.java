@@ -24,19 +24,17 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Enumeration;
-import java.util.LinkedList;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTree;
+import javax.swing.Timer;
 import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
-import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeSelectionModel;
 import kip.client.ClientActionManager;
 import kip.client.Packet;
@@ -47,13 +45,18 @@ import kip.client.Packet;
  */
 @SuppressWarnings({"serial", "unchecked"})
 public class PacketExplorer extends JPanel implements TreeSelectionListener {
+    /**
+     * How often new packets are added to the tree
+     */
+    private static final int TREE_REFRESH_MILLIS = 1000;
+    
     private ClientActionManager cam = null;
     // Tree components
     private JScrollPane scrollPane = null;
     private JPanel treePanel = new JPanel(new BorderLayout(), false);
-    private final DefaultMutableTreeNode top = new DefaultMutableTreeNode(
-            "Packets");
-    private JTree tree = new JTree(top);
+    private PacketTreeModel model = null;
+    private JTree tree = null;
+    private Timer refreshTimer = null;
     private JButton btnRefresh = new JButton("Refresh");
     private Border treeEmptyBorder = BorderFactory.createEmptyBorder(5, 5, 5, 5);
     private TitledBorder treeTitledBorder = BorderFactory.createTitledBorder(
@@ -79,6 +82,8 @@ public class PacketExplorer extends JPanel implements TreeSelectionListener {
     public PacketExplorer(ClientActionManager cam) {
         super(new BorderLayout(), false);
         this.cam = cam;
+        this.model = new PacketTreeModel(cam.getPacketHistory(), "Packets");
+        this.tree = new JTree(model);
         initTree();
         initPlots();
     }
@@ -94,9 +99,18 @@ public class PacketExplorer extends JPanel implements TreeSelectionListener {
         btnRefresh.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                refreshTree(top);
+                model.refresh();
+            }
+        });
+        
+        // New packets show up in the tree without rebuilding it
+        refreshTimer = new Timer(TREE_REFRESH_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                model.refresh();
             }
         });
+        refreshTimer.start();
 
         treePanel.add(btnRefresh, BorderLayout.NORTH);
         scrollPane = new JScrollPane(tree, JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
@@ -139,98 +153,9 @@ public class PacketExplorer extends JPanel implements TreeSelectionListener {
 
     @Override
     public void valueChanged(TreeSelectionEvent e) {
-        DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        if (node == null) {
-            return;
-        }
-        if (node.isLeaf()) {
-            updatePlots((Packet) node.getUserObject());
+        Packet packet = model.getPacket(tree.getLastSelectedPathComponent());
+        if (packet != null) {
+            updatePlots(packet);
         }
     }
-
-    /**
-     * Builds a tree in linear time representing packet data with a hierarchy based on 
-     * granularity of time.
-     * 
-     * For each granularity of time, determine if a root for that subtree exists,
-     * if not, create a new root for that subtree, otherwise, move on to next
-     * granularity of time
-     * @param top the root of the tree
-     */
-    private void refreshTree(DefaultMutableTreeNode top) {
-        DefaultMutableTreeNode year = null;
-        DefaultMutableTreeNode month = null;
-        DefaultMutableTreeNode day = null;
-        DefaultMutableTreeNode hour = null;
-        DefaultMutableTreeNode minute = null;
-        DefaultMutableTreeNode second = null;
-        int curYear = 0;
-        int curMonth = 0;
-        int curDay = 0;
-        int curHour = 0;
-        int curMinute = 0;
-        int curSecond = 0;
-        LinkedList<Packet> history = cam.getPacketHistory().getHistory();
-        
-        // Rebuild from scratch after each refresh
-        top.removeAllChildren();
-
-        for (Packet packet : history) {
-            curYear = packet.getYear();
-            curMonth = packet.getMonth();
-            curDay = packet.getDay();
-            curHour = packet.getHour();
-            curMinute = packet.getMinute();
-            curSecond = packet.getSecond();
-
-            if (canMatchField(top, curYear) < 0) {
-                year = new DefaultMutableTreeNode(curYear);
-                top.add(year);
-            }
-            if (canMatchField(year, curMonth) < 0) {
-                month = new DefaultMutableTreeNode(curMonth);
-                year.add(month);
-            }
-            if (canMatchField(month, curDay) < 0) {
-                day = new DefaultMutableTreeNode(curDay);
-                month.add(day);
-            }
-            if (canMatchField(day, curHour) < 0) {
-                hour = new DefaultMutableTreeNode(curHour);
-                day.add(hour);
-            }
-            if (canMatchField(hour, curMinute) < 0) {
-                minute = new DefaultMutableTreeNode(curMinute);
-                hour.add(minute);
-            }
-            if (canMatchField(minute, curSecond) < 0) {
-                second = new DefaultMutableTreeNode(curSecond);
-                minute.add(second);
-            }
-            second.add(new DefaultMutableTreeNode(packet));
-        }
-
-        tree.updateUI();
-    }
-
-    /**
-     * Does a root node for val exists?
-     * @param top the root of the tree
-     * @param val the value we're checking for existence
-     * @return index of found node, or -1 if it doesn't exist
-     */
-    private int canMatchField(DefaultMutableTreeNode top, int val) {
-        int idx = -1;
-        Enumeration<DefaultMutableTreeNode> children = top.children();
-        DefaultMutableTreeNode node = null;
-
-        while (children.hasMoreElements()) {
-            node = children.nextElement();
-            if (((Integer) node.getUserObject()) == val) {
-                return top.getIndex(node);
-            }
-        }
-
-        return idx;
-    }
 }
@@ -26,6 +26,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import kip.client.Packet;
+import kip.utils.HarmonicAnalysis;
 
 /**
  * Details tab of packet explorer
@@ -71,6 +72,20 @@ public class PacketExplorerDetails extends JPanel {
             infoArea.append(key + "\n" + val + "\n\n");
     }
 	
+    /**
+     * Appends the power quality of a current channel
+     * @param channel   name of the current channel
+     * @param harmonics power quality of the channel
+     */
+    private void appendHarmonics(String channel, HarmonicAnalysis harmonics) {
+        appendInfo("Current THD " + channel, Double.toString(harmonics.getCurrentThd()));
+        appendInfo("Current Crest Factor " + channel, Double.toString(harmonics.getCurrentCrestFactor()));
+        appendInfo("Active Power " + channel, Double.toString(harmonics.getActivePower()));
+        appendInfo("Reactive Power " + channel, Double.toString(harmonics.getReactivePower()));
+        appendInfo("Apparent Power " + channel, Double.toString(harmonics.getApparentPower()));
+        appendInfo("Power Factor " + channel, Double.toString(harmonics.getPowerFactor()));
+    }
+	
     /**
      * Update details based off information in packet
      * @param packet the packet used to update the details
@@ -85,6 +100,10 @@ public class PacketExplorerDetails extends JPanel {
         appendInfo("Amperes Channel 1", Double.toString(packet.getCurrentCh1()));
         appendInfo("Amperes Channel 2", Double.toString(packet.getCurrentCh2()));
         appendInfo("Watts", Double.toString(packet.getWatts()));
+        appendInfo("Voltage THD", Double.toString(packet.getHarmonics(Packet.CURRENT_CHANNEL_1).getVoltageThd()));
+        appendInfo("Voltage Crest Factor", Double.toString(packet.getHarmonics(Packet.CURRENT_CHANNEL_1).getVoltageCrestFactor()));
+        appendHarmonics("Channel 1", packet.getHarmonics(Packet.CURRENT_CHANNEL_1));
+        appendHarmonics("Channel 2", packet.getHarmonics(Packet.CURRENT_CHANNEL_2));
         appendInfo("Voltage DACs", Arrays.toString(packet.getSamples(Packet.VOLTAGE)));
         appendInfo("Current Channel 1 DACs", Arrays.toString(packet.getSamples(Packet.CURRENT_CHANNEL_1)));
         appendInfo("Current Channel 2 DACs", Arrays.toString(packet.getSamples(Packet.CURRENT_CHANNEL_2)));
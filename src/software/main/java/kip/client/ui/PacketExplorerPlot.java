@@ -112,15 +112,28 @@ public class PacketExplorerPlot extends JPanel {
     public void update(int[] samples, int constant) {
         int pk = 0;
 
-        dataTable.clear();
-        constantDataTable.clear();
+        // Samples are written over the rows already plotted
+        if (dataTable.getRowCount() != samples.length) {
+            dataTable.clear();
+            for (int i = 0; i < samples.length; i++) {
+                dataTable.add((long) i, samples[i]);
+            }
+        }
+        if (constant < 0) {
+            constantDataTable.clear();
+        } else if (constantDataTable.getRowCount() != samples.length) {
+            constantDataTable.clear();
+            for (int i = 0; i < samples.length; i++) {
+                constantDataTable.add((long) i, constant);
+            }
+        }
 
         plot.getAxis(XYPlot.AXIS_X).setRange(0, samples.length - 1);
         
         for (int i = 0; i < samples.length; i++) {
-            dataTable.add((long) i, samples[i]);
+            dataTable.set(1, i, samples[i]);
             if (constant >= 0) {
-                constantDataTable.add((long) i, constant);
+                constantDataTable.set(1, i, constant);
             }
             if (samples[i] > pk) {
                 pk = samples[i];
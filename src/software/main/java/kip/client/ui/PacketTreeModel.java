@@ -0,0 +1,359 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.ui;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import kip.client.Packet;
+import kip.client.PacketHistory;
+import kip.utils.TimeUtils;
+
+/**
+ * Tree of the packet history grouped by year, month, day, hour, minute and
+ * second.
+ *
+ * No tree is built up front. The children of a node are worked out the first
+ * time the tree asks for them by hopping through the history's time index one
+ * bucket at a time, so a node costs one binary search per child and the
+ * packets under a second only get nodes once that second is shown.
+ *
+ * {@link #refresh()} takes a new snapshot of the history and recomputes only
+ * the nodes the tree has already asked about. New packets and packets
+ * dropped from the history are reported as inserted and removed nodes, so
+ * the tree keeps its expanded paths and selection. Must be used from the
+ * event dispatch thread.
+ * @author Christe, Anthony
+ */
+public class PacketTreeModel implements TreeModel {
+    /**
+     * Calendar field of the buckets at each depth of the tree
+     */
+    private static final int[] FIELDS = {Calendar.YEAR, Calendar.MONTH,
+                                         Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY,
+                                         Calendar.MINUTE, Calendar.SECOND};
+
+    /**
+     * Depth of the packets themselves
+     */
+    private static final int PACKET = FIELDS.length;
+
+    private static final Comparator<Node> ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            if (a.start != b.start) {
+                return (a.start < b.start) ? -1 : 1;
+            }
+            return (a.sequence < b.sequence) ? -1 : ((a.sequence == b.sequence) ? 0 : 1);
+        }
+    };
+
+    private final PacketHistory history;
+    private final Node root;
+    private final Calendar calendar = Calendar.getInstance();
+    private final EventListenerList listeners = new EventListenerList();
+    private Map<Node, List<Node>> children = new HashMap<Node, List<Node>>();
+    private PacketHistory.Snapshot snapshot;
+
+    /**
+     * Constructs a new tree model
+     * @param history   the packets to show
+     * @param rootName  label of the root node
+     */
+    public PacketTreeModel(PacketHistory history, String rootName) {
+        this.history = history;
+        this.root = new Node(-1, Long.MIN_VALUE, Long.MAX_VALUE, -1, rootName);
+        this.snapshot = history.snapshot();
+    }
+
+    /**
+     * Catches up with the packet history, updating the nodes already shown
+     */
+    public void refresh() {
+        Map<Node, List<Node>> shown = children;
+
+        snapshot = history.snapshot();
+        children = new HashMap<Node, List<Node>>();
+        refresh(new TreePath(root), shown);
+    }
+
+    /**
+     * Rebuilds a packet of the tree
+     * @param node a node of the tree, or null when nothing is selected
+     * @return the packet, or null if node is not a packet or is no longer
+     *         stored
+     */
+    public Packet getPacket(Object node) {
+        Node n = (Node) node;
+        return (n != null && n.level == PACKET) ? history.get(n.sequence) : null;
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        return getChildren((Node) parent).get(index);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        return getChildren((Node) parent).size();
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return ((Node) node).level == PACKET;
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        int index;
+
+        if (parent == null || child == null) {
+            return -1;
+        }
+        index = Collections.binarySearch(getChildren((Node) parent), (Node) child, ORDER);
+        return (index < 0) ? -1 : index;
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // Nodes can not be edited
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener l) {
+        listeners.add(TreeModelListener.class, l);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener l) {
+        listeners.remove(TreeModelListener.class, l);
+    }
+
+    /**
+     * Returns the children of a node, working them out on first use
+     * @param node the parent
+     * @return children in time order
+     */
+    private List<Node> getChildren(Node node) {
+        List<Node> list = children.get(node);
+
+        if (list == null) {
+            list = computeChildren(node);
+            children.put(node, list);
+        }
+        return list;
+    }
+
+    /**
+     * Works out the children of a node from the current snapshot.
+     *
+     * Packets are listed one by one. Buckets are found by jumping from the
+     * first packet of each bucket straight to the first packet after it.
+     * @param node the parent
+     * @return children in time order
+     */
+    private List<Node> computeChildren(Node node) {
+        List<Node> list = new ArrayList<Node>();
+        int level = node.level + 1;
+        int index = snapshot.indexOf(node.start);
+        int end = snapshot.indexOf(node.end);
+        long epoch;
+        long start;
+        int label;
+
+        while (index < end) {
+            epoch = snapshot.getEpoch(index);
+            if (epoch == PacketHistory.MISSING) {
+                index++;
+                continue;
+            }
+
+            if (level == PACKET) {
+                list.add(new Node(level, epoch, epoch, snapshot.getSequence(index),
+                                  Long.toString(TimeUtils.toMillis(epoch) % 1000)));
+                index++;
+            } else {
+                calendar.setTimeInMillis(TimeUtils.toMillis(epoch));
+                for (int deeper = level + 1; deeper < FIELDS.length; deeper++) {
+                    calendar.set(FIELDS[deeper], calendar.getActualMinimum(FIELDS[deeper]));
+                }
+                calendar.set(Calendar.MILLISECOND, 0);
+                start = TimeUtils.fromMillis(calendar.getTimeInMillis());
+                label = calendar.get(FIELDS[level]);
+                calendar.add(FIELDS[level], 1);
+
+                list.add(new Node(level, start, TimeUtils.fromMillis(calendar.getTimeInMillis()),
+                                  -1, Integer.toString(label)));
+                index = Math.max(index + 1, snapshot.indexOf(list.get(list.size() - 1).end));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Recomputes a node that was shown before and reports how its children
+     * changed, then does the same for each of its children that was shown.
+     *
+     * Packets only ever join at the newest end and leave at the oldest end, so
+     * the old children are expected to be the new children with some removed
+     * from the front and some added to the back. Anything else, such as the
+     * history being cleared and refilled out of order, is reported as the
+     * whole subtree changing.
+     * @param path  path to the node
+     * @param shown children of every node shown before the refresh
+     */
+    private void refresh(TreePath path, Map<Node, List<Node>> shown) {
+        Node node = (Node) path.getLastPathComponent();
+        List<Node> before = shown.get(node);
+        List<Node> after;
+        int removed = 0;
+        boolean prefix;
+
+        if (before == null) {
+            return;
+        }
+        after = computeChildren(node);
+
+        while (removed < before.size()
+               && (after.isEmpty() || ORDER.compare(before.get(removed), after.get(0)) < 0)) {
+            removed++;
+        }
+        prefix = before.size() - removed <= after.size();
+        for (int i = removed; prefix && i < before.size(); i++) {
+            prefix = before.get(i).equals(after.get(i - removed));
+        }
+
+        if (!prefix) {
+            children.put(node, after);
+            fire(path, null, null, false, false);
+            return;
+        }
+
+        if (removed > 0) {
+            children.put(node, new ArrayList<Node>(before.subList(removed, before.size())));
+            fire(path, range(0, removed), before.subList(0, removed).toArray(), false, true);
+        }
+        children.put(node, after);
+        if (after.size() > before.size() - removed) {
+            fire(path, range(before.size() - removed, after.size()),
+                 after.subList(before.size() - removed, after.size()).toArray(), true, false);
+        }
+
+        for (Node child : after) {
+            if (shown.containsKey(child)) {
+                refresh(path.pathByAddingChild(child), shown);
+            }
+        }
+    }
+
+    /**
+     * Tells the listeners about a change
+     * @param path      path to the parent that changed
+     * @param indices   positions of the children inserted or removed
+     * @param nodes     children inserted or removed
+     * @param inserted  whether the children were inserted
+     * @param removed   whether the children were removed, if neither the whole
+     *                  subtree changed
+     */
+    private void fire(TreePath path, int[] indices, Object[] nodes, boolean inserted,
+                      boolean removed) {
+        TreeModelEvent event = new TreeModelEvent(this, path, indices, nodes);
+        Object[] list = listeners.getListenerList();
+
+        for (int i = list.length - 2; i >= 0; i -= 2) {
+            TreeModelListener listener = (TreeModelListener) list[i + 1];
+            if (inserted) {
+                listener.treeNodesInserted(event);
+            } else if (removed) {
+                listener.treeNodesRemoved(event);
+            } else {
+                listener.treeStructureChanged(event);
+            }
+        }
+    }
+
+    /**
+     * Consecutive integers
+     * @param from  first integer
+     * @param to    integer after the last
+     * @return      integers from from to to - 1
+     */
+    private static int[] range(int from, int to) {
+        int[] indices = new int[to - from];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = from + i;
+        }
+        return indices;
+    }
+
+    /**
+     * A bucket of time or a single packet. Buckets cover [start, end) in
+     * nanoseconds since the epoch, packets are identified by their sequence
+     * number in the history.
+     */
+    private static class Node {
+        private final int level;
+        private final long start;
+        private final long end;
+        private final long sequence;
+        private final String label;
+
+        private Node(int level, long start, long end, long sequence, String label) {
+            this.level = level;
+            this.start = start;
+            this.end = end;
+            this.sequence = sequence;
+            this.label = label;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            Node node = (Node) obj;
+            return level == node.level && start == node.start && sequence == node.sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (31 * (31 * level + (start ^ (start >>> 32))) + sequence);
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.ui;
+
+/**
+ * Fixed size ring of plot points with running extremes and decimation.
+ *
+ * Points are kept in primitive arrays, so adding a point never allocates and
+ * the oldest point is dropped in constant time once the ring is full. The
+ * minimum and maximum y of the points held are tracked with two monotonic
+ * queues and cost amortized constant time per point. x values are expected
+ * never to decrease, as with time stamps, which makes the x extremes the
+ * oldest and newest points.
+ *
+ * Before rendering the points are reduced to at most two per bucket, the
+ * smallest and largest of each, so a plot only ever draws about two points
+ * per pixel column however large the ring is while keeping every peak.
+ * @author Christe, Anthony
+ */
+public class PlotBuffer {
+    private final long[] xs;
+    private final double[] ys;
+    // Sequence numbers of the points that can still become the minimum or
+    // maximum, oldest first, with increasing and decreasing y respectively
+    private final long[] minQueue;
+    private final long[] maxQueue;
+    private long minHead = 0;
+    private long minTail = 0;
+    private long maxHead = 0;
+    private long maxTail = 0;
+    private long count = 0;
+
+    /**
+     * Constructs an empty buffer
+     * @param capacity maximum number of points held
+     */
+    public PlotBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        xs = new long[capacity];
+        ys = new double[capacity];
+        minQueue = new long[capacity];
+        maxQueue = new long[capacity];
+    }
+
+    /**
+     * Appends a point, dropping the oldest point if the buffer is full
+     * @param x x value, no smaller than the previous one
+     * @param y y value
+     */
+    public void add(long x, double y) {
+        int capacity = xs.length;
+        long oldest = count - capacity;
+
+        if (oldest >= 0) {
+            if (minHead < minTail && minQueue[slot(minHead)] == oldest) {
+                minHead++;
+            }
+            if (maxHead < maxTail && maxQueue[slot(maxHead)] == oldest) {
+                maxHead++;
+            }
+        }
+
+        xs[slot(count)] = x;
+        ys[slot(count)] = y;
+
+        while (minTail > minHead && ys[slot(minQueue[slot(minTail - 1)])] >= y) {
+            minTail--;
+        }
+        minQueue[slot(minTail++)] = count;
+        while (maxTail > maxHead && ys[slot(maxQueue[slot(maxTail - 1)])] <= y) {
+            maxTail--;
+        }
+        maxQueue[slot(maxTail++)] = count;
+
+        count++;
+    }
+
+    /**
+     * Removes every point
+     */
+    public void clear() {
+        count = 0;
+        minHead = minTail = 0;
+        maxHead = maxTail = 0;
+    }
+
+    /**
+     * Number of points held
+     * @return number of points
+     */
+    public int size() {
+        return (int) Math.min(count, xs.length);
+    }
+
+    /**
+     * Maximum number of points held
+     * @return capacity of the buffer
+     */
+    public int capacity() {
+        return xs.length;
+    }
+
+    /**
+     * Returns the x value of a point
+     * @param index position of the point, 0 being the oldest
+     * @return x value
+     */
+    public long getX(int index) {
+        return xs[slot(sequence(index))];
+    }
+
+    /**
+     * Returns the y value of a point
+     * @param index position of the point, 0 being the oldest
+     * @return y value
+     */
+    public double getY(int index) {
+        return ys[slot(sequence(index))];
+    }
+
+    /**
+     * Smallest x value held
+     * @return x value of the oldest point
+     */
+    public long getMinX() {
+        return getX(0);
+    }
+
+    /**
+     * Largest x value held
+     * @return x value of the newest point
+     */
+    public long getMaxX() {
+        return getX(size() - 1);
+    }
+
+    /**
+     * Smallest y value held
+     * @return smallest y value, or NaN if the buffer is empty
+     */
+    public double getMinY() {
+        return count == 0 ? Double.NaN : ys[slot(minQueue[slot(minHead)])];
+    }
+
+    /**
+     * Largest y value held
+     * @return largest y value, or NaN if the buffer is empty
+     */
+    public double getMaxY() {
+        return count == 0 ? Double.NaN : ys[slot(maxQueue[slot(maxHead)])];
+    }
+
+    /**
+     * Reduces the points held to the smallest and largest of each bucket.
+     *
+     * The points are split into buckets of consecutive points and each bucket
+     * contributes its minimum and maximum in the order they were added. When
+     * there are no more points than fit the output they are copied unchanged.
+     * @param buckets number of buckets, normally the plot width in pixels
+     * @param outX    receives the x values, at least 2 * buckets long
+     * @param outY    receives the y values, at least 2 * buckets long
+     * @return number of points written
+     */
+    public int decimate(int buckets, long[] outX, double[] outY) {
+        int size = size();
+        int written = 0;
+        int start;
+        int end;
+        int low;
+        int high;
+
+        if (size <= 2 * buckets) {
+            for (int i = 0; i < size; i++) {
+                outX[i] = getX(i);
+                outY[i] = getY(i);
+            }
+            return size;
+        }
+
+        for (int b = 0; b < buckets; b++) {
+            start = (int) ((long) b * size / buckets);
+            end = (int) ((long) (b + 1) * size / buckets);
+            low = start;
+            high = start;
+            for (int i = start + 1; i < end; i++) {
+                double y = getY(i);
+                if (y < getY(low)) {
+                    low = i;
+                } else if (y > getY(high)) {
+                    high = i;
+                }
+            }
+            written = emit(Math.min(low, high), outX, outY, written);
+            if (low != high) {
+                written = emit(Math.max(low, high), outX, outY, written);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Copies a point to the decimated output
+     * @param index   position of the point
+     * @param outX    receives the x value
+     * @param outY    receives the y value
+     * @param written number of points already written
+     * @return number of points written
+     */
+    private int emit(int index, long[] outX, double[] outY, int written) {
+        outX[written] = getX(index);
+        outY[written] = getY(index);
+        return written + 1;
+    }
+
+    /**
+     * Sequence number of a held point
+     * @param index position of the point, 0 being the oldest
+     * @return number of points added before it
+     */
+    private long sequence(int index) {
+        int size = size();
+
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return count - size + index;
+    }
+
+    /**
+     * Array slot of a sequence number
+     * @param sequence sequence number
+     * @return index into the arrays
+     */
+    private int slot(long sequence) {
+        return (int) (sequence % xs.length);
+    }
+}
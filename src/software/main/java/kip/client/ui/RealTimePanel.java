@@ -20,10 +20,9 @@
 package kip.client.ui;
 
 import java.awt.GridLayout;
-import java.util.Calendar;
 import javax.swing.JPanel;
 import kip.client.ClientActionManager;
-import kip.client.Packet;
+import kip.client.RealTimeFeed;
 
 /**
  * Real time panel which holds multiple real time plots
@@ -36,6 +35,7 @@ public class RealTimePanel extends JPanel {
     private RealTimePlot wattPanel = null;
     private ClientActionManager cam = null;
     private double freqBuf = 0.0;
+    private double freqMax = 0.0;
     
     public RealTimePanel(ClientActionManager cam) {
         super(new GridLayout(0, 1), true);
@@ -56,30 +56,25 @@ public class RealTimePanel extends JPanel {
     }
 
     /**
-     * Update all real time plots stored in this panel. 
+     * Update all real time plots stored in this panel, on the event dispatch
+     * thread.
      * 
-     * Data is pulled from local buffer. Once the buffer is polled, it becomes
-     * empty. When that happens, we can just update all the plots with the current
-     * time and 0's for y-values. Otherwise, we get the most recent buffered packet
-     * since the last update.
-     * @param packet packet used to update real time plots
+     * Each plot gets the mean of its values over the frame and shows their
+     * maximum. When no packet arrived during the frame, the plots are updated
+     * with 0's for y-values, except for frequency which keeps the last value
+     * measured.
+     * @param epoch milliseconds since the epoch when the frame ended
+     * @param frame values gathered from the packets received during the frame
      */
-    public void updatePanels(Packet packet) {
-        long epoch = Calendar.getInstance().getTimeInMillis();
-        double freq = 0;
-        
-        if (packet == null) {
-            frequencyPanel.updatePlot(epoch, 0);
-            currentPanel.updatePlot(epoch, 0);
-            wattPanel.updatePlot(epoch, 0);
-        } else {
-            freq = packet.getFreqCh1();
-            if(freq > 0) {
-                freqBuf = freq;
-            }
-            frequencyPanel.updatePlot(epoch, freqBuf);
-            currentPanel.updatePlot(epoch, packet.getCurrentCh1());
-            wattPanel.updatePlot(epoch, packet.getWatts());
+    public void updatePanels(long epoch, RealTimeFeed.Frame frame) {
+        if (frame.has(RealTimeFeed.FREQUENCY)) {
+            freqBuf = frame.getMean(RealTimeFeed.FREQUENCY);
+            freqMax = frame.getMax(RealTimeFeed.FREQUENCY);
         }
+        frequencyPanel.updatePlot(epoch, freqBuf, freqMax);
+        currentPanel.updatePlot(epoch, frame.getMean(RealTimeFeed.CURRENT),
+                                frame.getMax(RealTimeFeed.CURRENT));
+        wattPanel.updatePlot(epoch, frame.getMean(RealTimeFeed.WATTS),
+                             frame.getMax(RealTimeFeed.WATTS));
     }
 }
@@ -20,7 +20,6 @@
 package kip.client.ui;
 
 import de.erichseifert.gral.data.DataTable;
-import de.erichseifert.gral.data.statistics.Statistics;
 import de.erichseifert.gral.plots.BarPlot;
 import de.erichseifert.gral.plots.XYPlot;
 import de.erichseifert.gral.plots.axes.AxisRenderer;
@@ -33,7 +32,11 @@ import javax.swing.JPanel;
 import kip.utils.ConfigurationManager;
 
 /**
- * Real time plot UI
+ * Real time plot UI.
+ * 
+ * Points are kept in a plot buffer of REAL_TIME_BUFFER points and only the
+ * smallest and largest of each pixel column are handed to the plot, so
+ * drawing costs the same however many points are kept.
  * @author Christe, Anthony
  */
 @SuppressWarnings({"serial", "unchecked"})
@@ -42,12 +45,25 @@ public class RealTimePlot extends JPanel {
     private XYPlot plot = null;
     private InteractivePanel panel = null;
     private LineRenderer lines = null;
+    /**
+     * Number of x-axis ticks shown once the buffer has filled
+     */
+    private static final int X_TICKS = 20;
+    
+    /**
+     * Number of pixel columns decimated to before the plot has been laid out
+     */
+    private static final int DEFAULT_WIDTH = 800;
+    
     private int yMax = 0;
     private int yGap = 0;
     private String title = null;
     private String xTitle = null;
     private String yTitle = null;
     private int bufSize = 0;
+    private PlotBuffer buffer = null;
+    private long[] plotX = null;
+    private double[] plotY = null;
 
     /**
      * Constructs a new real time plot
@@ -71,6 +87,7 @@ public class RealTimePlot extends JPanel {
         this.yTitle = yTitle;
         this.bufSize = Integer.parseInt(ConfigurationManager.getProperty(
                 ConfigurationManager.REAL_TIME_BUFFER));
+        this.buffer = new PlotBuffer(bufSize);
         initPanel();
     }
 
@@ -109,38 +126,80 @@ public class RealTimePlot extends JPanel {
         plot.setInsets(new Insets2D.Double(n, w, s, e));
     }
 
+    /**
+     * Update real time plot with a single value.
+     * @param x the x location on the plot
+     * @param y the y location on the plot
+     */
+    public void updatePlot(long x, double y) {
+        updatePlot(x, y, y);
+    }
+
     /**
      * Update real time plot.
      * 
      * Title is changed to match current data. The x-axis and range are also
      * dynamically updated.
-     * @param x the x location on the plot
-     * @param y the y location on the plot
+     * @param x    the x location on the plot
+     * @param y    the y location on the plot, the mean of the values since the
+     *             last update
+     * @param peak the largest value since the last update
      */
-    public void updatePlot(long x, double y) {
-        double min;
+    public void updatePlot(long x, double y, double peak) {
+        long min;
+        double max;
+        int width = panel.getWidth() > 0 ? panel.getWidth() : DEFAULT_WIDTH;
+        int count;
         
-        if(y > yMax) {
-            yMax = (int) y;
+        if(plotX == null || plotX.length < 2 * width) {
+            plotX = new long[2 * width];
+            plotY = new double[2 * width];
         }
         
-        plot.setSetting(BarPlot.TITLE, title + ": " + y);
-        data.add(x, y);
+        plot.setSetting(BarPlot.TITLE, (peak > y)
+                        ? title + ": " + y + " (max " + peak + ")"
+                        : title + ": " + y);
+        buffer.add(x, y);
+        count = buffer.decimate(width, plotX, plotY);
+        setRows(data, plotX, plotY, count);
 
-        if (data.getRowCount() > bufSize) {
-            data.remove(0);
-        }
+        min = buffer.getMinX();
+        max = Math.max(Math.max(yMax, buffer.getMaxY()), peak);
 
-        min = data.getColumn(0).getStatistics(Statistics.MIN);
-
-        plot.getAxisRenderer(XYPlot.AXIS_X).setSetting(
-                AxisRenderer.TICKS_SPACING,
-                (x - min) / bufSize);
+        if(x > min) {
+            plot.getAxisRenderer(XYPlot.AXIS_X).setSetting(
+                    AxisRenderer.TICKS_SPACING,
+                    (double) (x - min) / Math.min(bufSize, X_TICKS));
+        }
         plot.getAxis(XYPlot.AXIS_X).setRange(min, x);
-        plot.getAxis(XYPlot.AXIS_Y).setRange(0, yMax + (yMax * .20));
+        plot.getAxis(XYPlot.AXIS_Y).setRange(0, max + (max * .20));
 
         if (this.isVisible()) {
             this.repaint();
         }
     }
+    
+    /**
+     * Replaces the rows of a two column table, reusing the rows it already has
+     * rather than clearing it
+     * @param table table of x and y columns
+     * @param xs    x values
+     * @param ys    y values
+     * @param count number of rows
+     */
+    private static void setRows(DataTable table, long[] xs, double[] ys, int count) {
+        int rows = table.getRowCount();
+        
+        for (int i = rows - 1; i >= count; i--) {
+            table.remove(i);
+        }
+        for (int i = 0; i < count; i++) {
+            if (i < rows) {
+                table.set(0, i, xs[i]);
+                table.set(1, i, ys[i]);
+            } else {
+                table.add(xs[i], ys[i]);
+            }
+        }
+    }
 }
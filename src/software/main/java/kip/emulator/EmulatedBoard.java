@@ -0,0 +1,321 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.emulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import kip.utils.CommandFrames;
+import kip.utils.Constants;
+import kip.utils.PacketUtils;
+import kip.utils.PacketValidator;
+
+/**
+ * State of one board of an emulator fleet.
+ *
+ * Each board listens on its own port with its own id and answers commands the
+ * way KiPEmulator does. Command packets are handled by the fleet's receiver
+ * thread, which only records triggers and id changes here. Frames are built
+ * and sent by the one sender thread that owns the board, into a reused direct
+ * buffer, with waveforms taken from a precomputed sine table, and numbered
+ * in the reserved words so the client can tell when frames are lost or
+ * reordered.
+ * @author Christe, Anthony
+ */
+public class EmulatedBoard {
+    /**
+     * Sine of (2 pi i + phase) degrees, for every whole phase and sample, the
+     * same wave KiPEmulator.generateSineWave computes
+     */
+    private static final double[][] SINE = new double[360][Constants.SERVER_SAMPLES_PER_CH];
+
+    static {
+        for (int phase = 0; phase < SINE.length; phase++) {
+            for (int i = 0; i < Constants.SERVER_SAMPLES_PER_CH; i++) {
+                SINE[phase][i] = Math.sin(Math.toRadians((2 * Math.PI) * i + phase));
+            }
+        }
+    }
+
+    /**
+     * Zeros written over a frame before it is built
+     */
+    private static final byte[] BLANK = new byte[Constants.SERVER_PACKET_SIZE];
+
+    private final DatagramChannel channel;
+    private final int port;
+    private final Random random;
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(Constants.SERVER_PACKET_SIZE);
+    private final ByteBuffer held = ByteBuffer.allocateDirect(Constants.SERVER_PACKET_SIZE);
+    private final AtomicInteger triggers = new AtomicInteger();
+    private volatile byte id;
+    private volatile byte nextId;
+    private volatile SocketAddress client;
+    private volatile int streamRate = 0;
+    private boolean holding = false;
+    private int sequence = 0;
+    private double rate = 0;
+    private long streamStart = -1;
+    private long streamed = 0;
+
+    /**
+     * Opens the board's channel
+     * @param port  the port the board listens on
+     * @param id    the id of the board
+     * @param seed  seed of the board's random waveforms and faults
+     * @throws IOException if the port can not be bound
+     */
+    public EmulatedBoard(int port, byte id, long seed) throws IOException {
+        this.port = port;
+        this.id = id;
+        this.nextId = id;
+        this.random = new Random(seed);
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Get the channel the board listens and sends on
+     * @return the non-blocking channel of the board
+     */
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Get the port the board listens on
+     * @return the port of the board
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the id the board puts in its packets
+     * @return the id of the board
+     */
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Get the client the board sends its packets to
+     * @return address of the client, or null if no client has been heard from
+     */
+    public SocketAddress getClient() {
+        return client;
+    }
+
+    /**
+     * Sets the client the board sends its packets to
+     * @param client address of the client
+     */
+    public void setClient(SocketAddress client) {
+        this.client = client;
+    }
+
+    /**
+     * Acts on a valid command packet. Called from the receiver thread.
+     * @param command   buffer positioned at the start of the command packet
+     * @param source    address the command came from
+     */
+    public void handle(ByteBuffer command, SocketAddress source) {
+        int start = command.position();
+
+        switch (command.get(start + Constants.CLIENT_COMMAND_INDEX)) {
+            case Constants.CLIENT_CMD_TRIGGER:
+                client = source;
+                triggers.incrementAndGet();
+                break;
+            case Constants.CLIENT_CMD_SET_ID:
+                nextId = command.get(start + Constants.CLIENT_ARG1_INDEX);
+                break;
+            case Constants.CLIENT_CMD_RESET:
+                id = nextId;
+                break;
+            case Constants.CLIENT_CMD_START_STREAM:
+                client = source;
+                streamRate = CommandFrames.getStreamRate(command);
+                break;
+            case Constants.CLIENT_CMD_STOP_STREAM:
+                streamRate = 0;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Works out how many packets are due, for the triggers received since the
+     * last call plus the packets a stream at a fixed rate should have sent by
+     * now. A stream the client started runs at the rate it asked for, in
+     * place of the fleet's rate. Called from the sender thread.
+     * @param now       current time in nanoseconds
+     * @param fleetRate packets per second streamed to the client when it has
+     *                  not started a stream (0 for none)
+     * @param maxBurst  most stream packets sent at once; a stream that fell
+     *                  further behind skips the rest
+     * @param fleet     counters of the fleet
+     * @return          number of packets to send
+     */
+    int due(long now, double fleetRate, int maxBurst, FleetStatistics fleet) {
+        double current = (streamRate > 0) ? streamRate : fleetRate;
+        long owed;
+
+        if (current != rate) {
+            // Restart the stream's schedule from now at the new rate
+            rate = current;
+            streamStart = -1;
+        }
+        if (rate <= 0 || client == null) {
+            return triggers.getAndSet(0);
+        }
+        if (streamStart < 0) {
+            streamStart = now;
+            streamed = 0;
+        }
+
+        owed = (long) ((now - streamStart) * rate / 1e9) - streamed;
+        if (owed > maxBurst) {
+            fleet.late(owed - maxBurst);
+            streamed += owed - maxBurst;
+            owed = maxBurst;
+        }
+        streamed += owed;
+        return (int) owed + triggers.getAndSet(0);
+    }
+
+    /**
+     * Builds a new frame and sends it to the client, injecting faults. Called
+     * from the sender thread.
+     * @param loss      chance the frame is never sent
+     * @param reorder   chance the frame is held back and sent after the next one
+     * @param corrupt   chance a bit of the frame is flipped after its checksum
+     *                  was computed
+     * @param fleet     counters of the fleet
+     * @throws IOException if the frame can not be sent
+     */
+    void send(double loss, double reorder, double corrupt, FleetStatistics fleet)
+            throws IOException {
+        SocketAddress target = client;
+        int index;
+
+        if (target == null) {
+            return;
+        }
+
+        fill();
+        if (corrupt > 0 && random.nextDouble() < corrupt) {
+            index = random.nextInt(Constants.SERVER_PACKET_SIZE);
+            frame.put(index, (byte) (frame.get(index) ^ (1 << random.nextInt(8))));
+            fleet.corrupted();
+        }
+        if (loss > 0 && random.nextDouble() < loss) {
+            fleet.lost();
+            return;
+        }
+        if (!holding && reorder > 0 && random.nextDouble() < reorder) {
+            held.clear();
+            held.put(frame);
+            holding = true;
+            fleet.reordered();
+            return;
+        }
+
+        transmit(frame, target, fleet);
+        if (holding) {
+            held.flip();
+            transmit(held, target, fleet);
+            holding = false;
+        }
+    }
+
+    /**
+     * Closes the board's channel
+     * @throws IOException if the channel can not be closed
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Sends a frame without waiting for room in the socket buffer
+     * @param data      the frame to send
+     * @param target    address of the client
+     * @param fleet     counters of the fleet
+     * @throws IOException if the frame can not be sent
+     */
+    private void transmit(ByteBuffer data, SocketAddress target, FleetStatistics fleet)
+            throws IOException {
+        if (channel.send(data, target) > 0) {
+            fleet.sent();
+        } else {
+            fleet.overrun();
+        }
+    }
+
+    /**
+     * Builds a frame with a jittered voltage and a pair of opposite currents,
+     * like KiPEmulator sends. The whole frame is zeroed first, so a bit flipped
+     * in a byte that is not otherwise written does not carry over into the
+     * following frames.
+     */
+    private void fill() {
+        int currentAmp = 480 + random.nextInt(41);
+        int currentPhase = random.nextInt(360);
+
+        frame.clear();
+        frame.put(BLANK);
+        frame.clear();
+        fillWave(Constants.SERVER_DAC_START_INDEX, 763 + random.nextInt(11), random.nextInt(360));
+        fillWave(Constants.SERVER_DAC_START_INDEX + 2, currentAmp, currentPhase);
+        fillWave(Constants.SERVER_DAC_START_INDEX + 4, currentAmp, (currentPhase + 180) % 360);
+        frame.put(Constants.SERVER_HEADER_INDEX, Constants.SERVER_HEADER);
+        frame.put(Constants.SERVER_ID_INDEX, id);
+        frame.put(Constants.SERVER_FOOTER_INDEX, Constants.SERVER_FOOTER);
+        sequence = PacketUtils.nextSequence(sequence);
+        frame.putInt(Constants.SERVER_SEQUENCE_INDEX, sequence);
+        frame.put(Constants.SERVER_CHECKSUM_INDEX, (byte) 0);
+        frame.put(Constants.SERVER_CHECKSUM_INDEX, PacketValidator.sumWords(frame));
+    }
+
+    /**
+     * Writes the samples of one data source into the frame
+     * @param first index of the first sample of the data source
+     * @param amp   amplitude of the wave
+     * @param phase phase of the wave in whole degrees
+     */
+    private void fillWave(int first, int amp, int phase) {
+        double[] wave = SINE[phase];
+        int sample;
+
+        for (int i = 0; i < wave.length; i++) {
+            // Truncated to 0 below the axis like the hardware
+            sample = Math.max(0, (int) (amp * wave[i]));
+            frame.put(first + 6 * i, (byte) (sample >> 8));
+            frame.put(first + 6 * i + 1, (byte) sample);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.emulator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters kept by an emulator fleet
+ * @author Christe, Anthony
+ */
+public class FleetStatistics {
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+    private final AtomicLong corrupted = new AtomicLong();
+    private final AtomicLong overrun = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Counts a frame sent to a client
+     */
+    void sent() {
+        sent.incrementAndGet();
+    }
+
+    /**
+     * Counts a frame dropped on purpose
+     */
+    void lost() {
+        lost.incrementAndGet();
+    }
+
+    /**
+     * Counts a frame held back to be sent after the next one
+     */
+    void reordered() {
+        reordered.incrementAndGet();
+    }
+
+    /**
+     * Counts a frame with a bit flipped on purpose
+     */
+    void corrupted() {
+        corrupted.incrementAndGet();
+    }
+
+    /**
+     * Counts a frame that did not fit in the socket send buffer
+     */
+    void overrun() {
+        overrun.incrementAndGet();
+    }
+
+    /**
+     * Counts stream frames skipped because a sender fell behind
+     * @param count number of frames skipped
+     */
+    void late(long count) {
+        late.addAndGet(count);
+    }
+
+    /**
+     * Counts a command packet received, valid or not
+     * @param valid whether the command packet was valid
+     */
+    void command(boolean valid) {
+        commands.incrementAndGet();
+        if (!valid) {
+            invalid.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a frame that could not be sent because of an error
+     * @return number of send errors so far
+     */
+    long error() {
+        return errors.incrementAndGet();
+    }
+
+    /**
+     * Number of frames sent to clients
+     * @return frames sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Number of frames dropped on purpose
+     * @return frames lost
+     */
+    public long getLost() {
+        return lost.get();
+    }
+
+    /**
+     * Number of frames sent after the frame that followed them
+     * @return frames reordered
+     */
+    public long getReordered() {
+        return reordered.get();
+    }
+
+    /**
+     * Number of frames sent with a bit flipped
+     * @return frames corrupted
+     */
+    public long getCorrupted() {
+        return corrupted.get();
+    }
+
+    /**
+     * Number of frames that did not fit in the socket send buffer
+     * @return frames overrun
+     */
+    public long getOverrun() {
+        return overrun.get();
+    }
+
+    /**
+     * Number of stream frames skipped because a sender fell behind
+     * @return frames late
+     */
+    public long getLate() {
+        return late.get();
+    }
+
+    /**
+     * Number of command packets received
+     * @return commands received
+     */
+    public long getCommands() {
+        return commands.get();
+    }
+
+    /**
+     * Number of command packets received that were not valid
+     * @return invalid commands
+     */
+    public long getInvalid() {
+        return invalid.get();
+    }
+
+    /**
+     * Number of frames that could not be sent because of an error
+     * @return send errors
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Sent: " + getSent() + "  Lost: " + getLost() + "  Reordered: " + getReordered()
+               + "  Corrupted: " + getCorrupted() + "  Overrun: " + getOverrun()
+               + "  Late: " + getLate() + "  Commands: " + getCommands()
+               + "  Invalid: " + getInvalid() + "  Errors: " + getErrors();
+    }
+}
@@ -23,7 +23,14 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import kip.utils.CommandFrames;
 import kip.utils.Constants;
 import kip.utils.PacketUtils;
 
@@ -37,6 +44,17 @@ public class KiPEmulator {
     private static int port = -1;
     private static DatagramSocket socket = null;
     private static Random rand = new Random();
+    private static int sequence = 0;
+    private static ScheduledFuture<?> stream = null;
+    private static final ScheduledExecutorService streamer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Emulator stream");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     public static void main(String[] args) {
         // Grab the port number to start emulator
@@ -105,6 +123,12 @@ public class KiPEmulator {
             case Constants.CLIENT_CMD_RESET:
                 reset();
                 break;
+            case Constants.CLIENT_CMD_START_STREAM:
+                startStream(address, port, CommandFrames.getStreamRate(ByteBuffer.wrap(data)));
+                break;
+            case Constants.CLIENT_CMD_STOP_STREAM:
+                stopStream();
+                break;
             default:
                 System.out.println("Unknown command in client packet");
         }
@@ -117,6 +141,16 @@ public class KiPEmulator {
      */
     private static void sendData(InetAddress address, int port) {
         System.out.println("Responding to " + address + ":" + port + "\n\t" + PacketUtils.generateTimestamp() + "\n");
+        send(address, port);
+    }
+    
+    /**
+     * Create a numbered packet of emulated DAC measurements and send it to
+     * the client without printing anything
+     * @param address   the ip or host address of the client
+     * @param port      the listening port of the client
+     */
+    private static synchronized void send(InetAddress address, int port) {
         int currentAmp = getRandomData(500, 20);
         int currentPhase = getRandomData(0, 180);
         byte[] buffer = PacketUtils.createServerPacket(getID(),
@@ -124,7 +158,7 @@ public class KiPEmulator {
                 768, 5), getRandomData(0, 180)), generateSineWave(currentAmp,
                                                                   currentPhase),
                                                        generateSineWave(
-                currentAmp, currentPhase + 180));
+                currentAmp, currentPhase + 180), sequence = PacketUtils.nextSequence(sequence));
         DatagramPacket packet = new DatagramPacket(buffer, buffer.length,
                                                    address, port);
         try {
@@ -136,6 +170,40 @@ public class KiPEmulator {
         }
     }
     
+    /**
+     * Send packets to the client at a fixed rate until told to stop, replacing
+     * any stream already running
+     * @param address   the ip or host address of the client
+     * @param port      the listening port of the client
+     * @param hertz     how many packets to send per second
+     */
+    private static synchronized void startStream(final InetAddress address, final int port,
+                                                 int hertz) {
+        stopStream();
+        if (hertz <= 0) {
+            System.out.println("Stream rate must be at least 1 Hz");
+            return;
+        }
+        System.out.println("Streaming to " + address + ":" + port + " at " + hertz + " Hz");
+        stream = streamer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                send(address, port);
+            }
+        }, 0, 1000000000L / hertz, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Stop sending packets to the client
+     */
+    private static synchronized void stopStream() {
+        if (stream != null) {
+            System.out.println("Stopping stream");
+            stream.cancel(false);
+            stream = null;
+        }
+    }
+    
     /**
      * Generates a sine wave with a selected amplitude and phase
      * @param amp   the amplitude of the sine way
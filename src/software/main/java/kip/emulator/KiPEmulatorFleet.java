@@ -0,0 +1,383 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.emulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import kip.utils.Constants;
+import kip.utils.PacketValidator;
+
+/**
+ * Emulates a fleet of KiP boards from one process, to load the client with
+ * the traffic of a whole site.
+ *
+ * Every board listens on its own port, numbered up from the first port, with
+ * its own id and waveforms, and answers triggers, id changes, resets and
+ * stream commands like KiPEmulator. One receiver thread waits on a selector for commands to any
+ * board. The boards are split between a few sender threads, which wake up
+ * every tick and send each board's due frames straight from its reused
+ * buffer: one per trigger received, plus those of a stream at a fixed rate to
+ * the board's client once the board has one. The stream runs at the rate the
+ * client asked for when it started one, or else at the fleet's rate. A client
+ * is known once it sends a trigger or starts a stream, or can be given up
+ * front.
+ *
+ * Frames can be dropped, held back and sent after the next one, or have a bit
+ * flipped, each with a set chance, to see how the client copes. Nothing is
+ * printed per packet; the counters are printed once a second instead.
+ *
+ * Usage: KiPEmulatorFleet [-n boards] [-p first port] [-i first id]
+ *                         [-r packets per second per board]
+ *                         [-t client host:port] [-s sender threads]
+ *                         [-loss chance] [-reorder chance] [-corrupt chance]
+ * @author Christe, Anthony
+ */
+public class KiPEmulatorFleet {
+    /**
+     * How long senders sleep between sends
+     */
+    private static final long TICK_NANOS = 500000;
+
+    /**
+     * Most stream frames a board sends in one tick after falling behind
+     */
+    private static final int MAX_BURST = 16;
+
+    private final List<EmulatedBoard> boards = new ArrayList<EmulatedBoard>();
+    private final FleetStatistics statistics = new FleetStatistics();
+    private final ByteBuffer command = ByteBuffer.allocateDirect(Constants.CLIENT_PACKET_SIZE + 1);
+    private final Thread receiver;
+    private final Thread[] senders;
+    private final Selector selector;
+    private volatile boolean running = false;
+    private volatile double rate = 0;
+    private volatile double loss = 0;
+    private volatile double reorder = 0;
+    private volatile double corrupt = 0;
+
+    /**
+     * Opens the ports of every board of the fleet
+     * @param count     number of boards
+     * @param firstPort port of the first board; each next board listens on the
+     *                  next port
+     * @param firstId   id of the first board; ids count up from it and wrap
+     *                  around past 127
+     * @param threads   number of sender threads
+     * @throws IOException if a port can not be bound
+     */
+    public KiPEmulatorFleet(int count, int firstPort, byte firstId, int threads)
+            throws IOException {
+        selector = Selector.open();
+        try {
+            for (int i = 0; i < count; i++) {
+                EmulatedBoard board = new EmulatedBoard(firstPort + i, (byte) (firstId + i), i);
+                boards.add(board);
+                board.getChannel().register(selector, SelectionKey.OP_READ, board);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "Fleet receiver");
+        receiver.setDaemon(true);
+
+        senders = new Thread[Math.max(1, Math.min(threads, count))];
+        for (int i = 0; i < senders.length; i++) {
+            final List<EmulatedBoard> owned = new ArrayList<EmulatedBoard>();
+            for (int j = i; j < count; j += senders.length) {
+                owned.add(boards.get(j));
+            }
+            senders[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    send(owned);
+                }
+            }, "Fleet sender " + i);
+            senders[i].setDaemon(true);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = 500;
+        int port = 4445;
+        byte id = 1;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        String target = null;
+        double rate = 0;
+        double loss = 0;
+        double reorder = 0;
+        double corrupt = 0;
+        KiPEmulatorFleet fleet;
+        InetSocketAddress client = null;
+        long last = 0;
+        long sent;
+        int split;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-n")) {
+                    count = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-p")) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-i")) {
+                    id = Byte.parseByte(args[++i]);
+                } else if (args[i].equals("-r")) {
+                    rate = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("-t")) {
+                    target = args[++i];
+                    split = target.lastIndexOf(':');
+                    client = new InetSocketAddress(target.substring(0, split),
+                                                   Integer.parseInt(target.substring(split + 1)));
+                } else if (args[i].equals("-s")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-loss")) {
+                    loss = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("-reorder")) {
+                    reorder = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("-corrupt")) {
+                    corrupt = Double.parseDouble(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Unrecognized arguments");
+            System.err.println("Usage: KiPEmulatorFleet [-n boards] [-p first port] [-i first id] "
+                               + "[-r packets per second per board] [-t client host:port] "
+                               + "[-s sender threads] [-loss chance] [-reorder chance] "
+                               + "[-corrupt chance]");
+            return;
+        }
+        if (client != null && client.isUnresolved()) {
+            System.err.println("Unknown client host " + client.getHostString());
+            return;
+        }
+
+        fleet = new KiPEmulatorFleet(count, port, id, threads);
+        fleet.setRate(rate);
+        fleet.setFaults(loss, reorder, corrupt);
+        if (client != null) {
+            fleet.setClient(client);
+        }
+        fleet.start();
+        System.out.println("Fleet of " + count + " boards started on ports " + port + "-"
+                           + (port + count - 1));
+
+        while (true) {
+            Thread.sleep(1000);
+            sent = fleet.getStatistics().getSent();
+            System.out.println((sent - last) + " packets/s  " + fleet.getStatistics());
+            last = sent;
+        }
+    }
+
+    /**
+     * Starts receiving commands and sending frames
+     */
+    public void start() {
+        running = true;
+        receiver.start();
+        for (Thread sender : senders) {
+            sender.start();
+        }
+    }
+
+    /**
+     * Stops the fleet and closes the ports of its boards
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              senders to stop
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread sender : senders) {
+            if (sender.isAlive()) {
+                sender.join();
+            }
+        }
+        close();
+    }
+
+    /**
+     * Get the boards of the fleet
+     * @return the boards, in port order
+     */
+    public List<EmulatedBoard> getBoards() {
+        return Collections.unmodifiableList(boards);
+    }
+
+    /**
+     * Get the counters kept by the fleet
+     * @return sent, faulted and command counts
+     */
+    public FleetStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets how fast each board streams frames to its client
+     * @param rate packets per second per board (0 to only answer triggers)
+     */
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Sets the chance of each fault happening to a frame
+     * @param loss      chance a frame is never sent
+     * @param reorder   chance a frame is sent after the one that follows it
+     * @param corrupt   chance a frame has a bit flipped
+     */
+    public void setFaults(double loss, double reorder, double corrupt) {
+        this.loss = loss;
+        this.reorder = reorder;
+        this.corrupt = corrupt;
+    }
+
+    /**
+     * Sends the frames of every board to a client, without waiting for it to
+     * send a trigger
+     * @param client address of the client
+     */
+    public void setClient(SocketAddress client) {
+        for (EmulatedBoard board : boards) {
+            board.setClient(client);
+        }
+    }
+
+    /**
+     * Wait for commands to any board and hand them to their board
+     */
+    private void receive() {
+        SocketAddress source;
+        EmulatedBoard board;
+        boolean valid;
+
+        try {
+            while (running) {
+                if (selector.select() == 0) {
+                    continue;
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    board = (EmulatedBoard) key.attachment();
+                    while (true) {
+                        command.clear();
+                        source = board.getChannel().receive(command);
+                        if (source == null) {
+                            break;
+                        }
+                        command.flip();
+                        valid = PacketValidator.check(command, Constants.CLIENT_PACKET)
+                                == PacketValidator.Reason.VALID;
+                        statistics.command(valid);
+                        if (valid) {
+                            board.handle(command, source);
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (ClosedSelectorException e) {
+            // Fleet was shut down
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Problem receiving command");
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends the due frames of a sender's boards every tick until the fleet
+     * stops
+     * @param owned the boards of the sender
+     */
+    private void send(List<EmulatedBoard> owned) {
+        long now;
+        int due;
+
+        while (running) {
+            now = System.nanoTime();
+            for (EmulatedBoard board : owned) {
+                due = board.due(now, rate, MAX_BURST, statistics);
+                for (int i = 0; i < due && running; i++) {
+                    try {
+                        board.send(loss, reorder, corrupt, statistics);
+                    } catch (IOException e) {
+                        // Skip the rest of this board's frames for the tick
+                        // and keep sending for the other boards
+                        failed(board, e);
+                        break;
+                    } catch (RuntimeException e) {
+                        failed(board, e);
+                        break;
+                    }
+                }
+            }
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+    }
+
+    /**
+     * Counts a frame that could not be sent, reporting the first error only
+     * so a client that went away does not flood the output
+     * @param board the board that failed to send
+     * @param e     the error
+     */
+    private void failed(EmulatedBoard board, Exception e) {
+        if (statistics.error() == 1 && running) {
+            System.err.println("Problem sending packet from port " + board.getPort());
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Closes the selector and the ports of every board opened
+     */
+    private void close() {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Problem closing selector");
+        }
+        for (EmulatedBoard board : boards) {
+            try {
+                board.close();
+            } catch (IOException e) {
+                System.err.println("Problem closing port " + board.getPort());
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed capacity, lock-free queue that can be shared by any number of
+ * producers and consumers.
+ *
+ * Every slot of the ring carries a sequence number telling producers and
+ * consumers whose turn it is to use that slot, so neither side ever blocks.
+ * offer fails when the queue is full and poll returns null when it is empty.
+ *
+ * @param <E> type of the elements held in the queue
+ * @author Christe, Anthony
+ */
+public class BoundedQueue<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a new queue
+     * @param capacity minimum number of elements the queue can hold, rounded
+     *                 up to the next power of two
+     */
+    public BoundedQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element to the tail of the queue
+     * @param element the element to add
+     * @return true if the element was added, false if the queue is full
+     */
+    public boolean offer(E element) {
+        long pos = tail.get();
+        int idx;
+        long diff;
+
+        while (true) {
+            idx = (int) (pos & mask);
+            diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(idx, element);
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            pos = tail.get();
+        }
+    }
+
+    /**
+     * Removes the element at the head of the queue
+     * @return the head of the queue, or null if the queue is empty
+     */
+    public E poll() {
+        long pos = head.get();
+        int idx;
+        long diff;
+        E element;
+
+        while (true) {
+            idx = (int) (pos & mask);
+            diff = sequences.get(idx) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    element = elements.get(idx);
+                    elements.lazySet(idx, null);
+                    sequences.set(idx, pos + mask + 1);
+                    return element;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+            pos = head.get();
+        }
+    }
+
+    /**
+     * Approximate number of elements in the queue
+     * @return number of elements in the queue
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Maximum number of elements the queue can hold
+     * @return capacity of the queue
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
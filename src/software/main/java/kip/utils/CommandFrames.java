@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Client command frames that never change, built once and shared.
+ *
+ * Commands without arguments, such as TRIGGER and RESET, always produce the
+ * same bytes, so each is built and checksummed the first time it is asked for
+ * and kept in a read only direct buffer. Every caller gets its own view of
+ * that buffer to send from, so sending a frame allocates nothing and the
+ * channel writes it without first copying it into a direct buffer.
+ * @author Christe, Anthony
+ */
+public class CommandFrames {
+    private static final AtomicReferenceArray<ByteBuffer> FRAMES = new AtomicReferenceArray<ByteBuffer>(256);
+
+    /**
+     * Returns a view of the frame of a command sent without arguments
+     * @param command the command, such as CLIENT_CMD_TRIGGER or CLIENT_CMD_RESET
+     * @return read only buffer holding the whole frame, to be rewound before
+     *         each send
+     */
+    public static ByteBuffer get(byte command) {
+        ByteBuffer frame = FRAMES.get(command & 0xFF);
+
+        if (frame == null) {
+            FRAMES.compareAndSet(command & 0xFF, null, build(command));
+            frame = FRAMES.get(command & 0xFF);
+        }
+        return frame.duplicate();
+    }
+
+    /**
+     * Returns a view of the trigger frame
+     * @return read only buffer holding the trigger frame
+     */
+    public static ByteBuffer trigger() {
+        return get(Constants.CLIENT_CMD_TRIGGER);
+    }
+
+    /**
+     * Returns a view of the reset frame
+     * @return read only buffer holding the reset frame
+     */
+    public static ByteBuffer reset() {
+        return get(Constants.CLIENT_CMD_RESET);
+    }
+
+    /**
+     * Returns a view of the frame that stops a board streaming packets
+     * @return read only buffer holding the stop stream frame
+     */
+    public static ByteBuffer stopStream() {
+        return get(Constants.CLIENT_CMD_STOP_STREAM);
+    }
+
+    /**
+     * Builds the frame that starts a board streaming packets. The frame
+     * depends on the rate, so it is not cached.
+     * @param hertz packets per second, from 1 to 65535
+     * @return buffer holding the start stream frame
+     */
+    public static ByteBuffer startStream(int hertz) {
+        if (hertz < 1 || hertz > 0xFFFF) {
+            throw new IllegalArgumentException("Stream rate out of range: " + hertz);
+        }
+        return ByteBuffer.wrap(PacketUtils.createClientPacket(Constants.CLIENT_CMD_START_STREAM,
+                (byte) 0, (byte) (hertz >> 8), (byte) hertz, (byte) 0, (byte) 0, (byte) 0, (byte) 0));
+    }
+
+    /**
+     * Reads the rate of a start stream frame
+     * @param frame the frame, positioned at its start
+     * @return packets per second asked for
+     */
+    public static int getStreamRate(ByteBuffer frame) {
+        int start = frame.position();
+
+        return ((frame.get(start + Constants.CLIENT_ARG2_0_INDEX) & 0xFF) << 8)
+               | (frame.get(start + Constants.CLIENT_ARG2_1_INDEX) & 0xFF);
+    }
+
+    /**
+     * Lists the bytes of a frame for debugging output
+     * @param frame the frame, its position is left unchanged
+     * @return the bytes of the frame from its position to its limit
+     */
+    public static String toString(ByteBuffer frame) {
+        byte[] data = new byte[frame.remaining()];
+
+        frame.duplicate().get(data);
+        return Arrays.toString(data);
+    }
+
+    /**
+     * Builds the frame of a command without arguments
+     * @param command the command
+     * @return read only direct buffer holding the frame
+     */
+    private static ByteBuffer build(byte command) {
+        byte[] data = PacketUtils.createClientPacket(command, (byte) 0, (byte) 0, (byte) 0,
+                                                     (byte) 0, (byte) 0, (byte) 0, (byte) 0);
+        ByteBuffer frame = ByteBuffer.allocateDirect(data.length);
+
+        frame.put(data);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+}
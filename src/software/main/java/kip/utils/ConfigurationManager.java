@@ -39,10 +39,28 @@ public class ConfigurationManager {
     public static final int DEFAULT_BOARD_DURATION = 6;
     public static final int DEFAULT_BOARD_MAC = 7;
     public static final int DEBUG = 8;
+    public static final int INGEST_QUEUE_SIZE = 9;
+    public static final int DECODER_THREADS = 10;
+    public static final int RECEIVE_BUFFER_SIZE = 11;
+    public static final int RECEIVE_BATCH_SIZE = 12;
+    public static final int HISTORY_CAPACITY = 13;
+    public static final int HISTORY_MEMORY_BUDGET = 14;
+    public static final int BOARD_HISTORY_CAPACITY = 15;
+    public static final int TRIGGER_THREADS = 16;
+    public static final int TRIGGER_LOG_INTERVAL = 17;
+    public static final int EVENT_LOG_SIZE = 18;
+    public static final int EVENT_LOG_RATE = 19;
+    public static final int STATUS_LINES = 20;
+    public static final int BOARD_HISTORY_MEMORY_BUDGET = 21;
     
     private static HashMap<Integer, String> configuration;
     private static HashMap<String, Integer> settingToInt;
     private static boolean debug = false;
+    
+    // Defaults are available even before a configuration file is read
+    static {
+        init();
+    }
 
     /**
      * Set up default configuration options of configuration file is not present.
@@ -62,6 +80,19 @@ public class ConfigurationManager {
         settingToInt.put("DEFAULT_BOARD_DURATION", DEFAULT_BOARD_DURATION);
         settingToInt.put("DEFAULT_BOARD_MAC", DEFAULT_BOARD_MAC);
         settingToInt.put("DEBUG", DEBUG);
+        settingToInt.put("INGEST_QUEUE_SIZE", INGEST_QUEUE_SIZE);
+        settingToInt.put("DECODER_THREADS", DECODER_THREADS);
+        settingToInt.put("RECEIVE_BUFFER_SIZE", RECEIVE_BUFFER_SIZE);
+        settingToInt.put("RECEIVE_BATCH_SIZE", RECEIVE_BATCH_SIZE);
+        settingToInt.put("HISTORY_CAPACITY", HISTORY_CAPACITY);
+        settingToInt.put("HISTORY_MEMORY_BUDGET", HISTORY_MEMORY_BUDGET);
+        settingToInt.put("BOARD_HISTORY_CAPACITY", BOARD_HISTORY_CAPACITY);
+        settingToInt.put("TRIGGER_THREADS", TRIGGER_THREADS);
+        settingToInt.put("TRIGGER_LOG_INTERVAL", TRIGGER_LOG_INTERVAL);
+        settingToInt.put("EVENT_LOG_SIZE", EVENT_LOG_SIZE);
+        settingToInt.put("EVENT_LOG_RATE", EVENT_LOG_RATE);
+        settingToInt.put("STATUS_LINES", STATUS_LINES);
+        settingToInt.put("BOARD_HISTORY_MEMORY_BUDGET", BOARD_HISTORY_MEMORY_BUDGET);
         
         configuration.put(REAL_TIME_REFRESH, "2");
         configuration.put(REAL_TIME_BUFFER, "10");
@@ -72,6 +103,19 @@ public class ConfigurationManager {
         configuration.put(DEFAULT_BOARD_DURATION, "");
         configuration.put(DEFAULT_BOARD_MAC, "");
         configuration.put(DEBUG, "0");
+        configuration.put(INGEST_QUEUE_SIZE, "4096");
+        configuration.put(DECODER_THREADS, "0");
+        configuration.put(RECEIVE_BUFFER_SIZE, "4194304");
+        configuration.put(RECEIVE_BATCH_SIZE, "64");
+        configuration.put(HISTORY_CAPACITY, "100000");
+        configuration.put(HISTORY_MEMORY_BUDGET, "128");
+        configuration.put(BOARD_HISTORY_CAPACITY, "10000");
+        configuration.put(TRIGGER_THREADS, "2");
+        configuration.put(TRIGGER_LOG_INTERVAL, "0");
+        configuration.put(EVENT_LOG_SIZE, "1024");
+        configuration.put(EVENT_LOG_RATE, "100");
+        configuration.put(STATUS_LINES, "1000");
+        configuration.put(BOARD_HISTORY_MEMORY_BUDGET, "256");
     }
 
     /**
@@ -137,6 +181,45 @@ public class ConfigurationManager {
                                 if(Integer.parseInt(splitLine[1]) == 1) 
                                     debug = true;
                                 break;
+                            case INGEST_QUEUE_SIZE:
+                                configuration.put(INGEST_QUEUE_SIZE, splitLine[1]);
+                                break;
+                            case DECODER_THREADS:
+                                configuration.put(DECODER_THREADS, splitLine[1]);
+                                break;
+                            case RECEIVE_BUFFER_SIZE:
+                                configuration.put(RECEIVE_BUFFER_SIZE, splitLine[1]);
+                                break;
+                            case RECEIVE_BATCH_SIZE:
+                                configuration.put(RECEIVE_BATCH_SIZE, splitLine[1]);
+                                break;
+                            case HISTORY_CAPACITY:
+                                configuration.put(HISTORY_CAPACITY, splitLine[1]);
+                                break;
+                            case HISTORY_MEMORY_BUDGET:
+                                configuration.put(HISTORY_MEMORY_BUDGET, splitLine[1]);
+                                break;
+                            case BOARD_HISTORY_CAPACITY:
+                                configuration.put(BOARD_HISTORY_CAPACITY, splitLine[1]);
+                                break;
+                            case TRIGGER_THREADS:
+                                configuration.put(TRIGGER_THREADS, splitLine[1]);
+                                break;
+                            case TRIGGER_LOG_INTERVAL:
+                                configuration.put(TRIGGER_LOG_INTERVAL, splitLine[1]);
+                                break;
+                            case EVENT_LOG_SIZE:
+                                configuration.put(EVENT_LOG_SIZE, splitLine[1]);
+                                break;
+                            case EVENT_LOG_RATE:
+                                configuration.put(EVENT_LOG_RATE, splitLine[1]);
+                                break;
+                            case STATUS_LINES:
+                                configuration.put(STATUS_LINES, splitLine[1]);
+                                break;
+                            case BOARD_HISTORY_MEMORY_BUDGET:
+                                configuration.put(BOARD_HISTORY_MEMORY_BUDGET, splitLine[1]);
+                                break;
                             default:
                                 System.err.println(
                                         "Invalid configuration file @ " + lineCnt);
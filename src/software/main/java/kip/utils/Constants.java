@@ -70,6 +70,18 @@ public class Constants {
      */
     public static final byte CLIENT_CMD_SET_DELAY = (byte) 0x5;
     
+    /**
+     * Command word that tells board to send packets continuously, at the rate
+     * in hertz held in the first two bytes of argument 2 (high byte first),
+     * until told to stop
+     */
+    public static final byte CLIENT_CMD_START_STREAM = (byte) 0x6;
+    
+    /**
+     * Command word that tells board to stop sending packets continuously
+     */
+    public static final byte CLIENT_CMD_STOP_STREAM = (byte) 0x7;
+    
     /**
      * Command word that tells board to reset (reverts back to default ID/IP/MAC
      */
@@ -165,6 +177,11 @@ public class Constants {
      */
     public static final int SERVER_SAMPLES_PER_CH = 64;
     
+    /**
+     * Number of samples per second taken of each data source
+     */
+    public static final double SERVER_SAMPLE_RATE = 1500;
+    
     /**
      * Location of header in server packet
      */
@@ -210,6 +227,13 @@ public class Constants {
      */
     public static final int SERVER_RESERVED_END_INDEX = 399;
     
+    /**
+     * Location of the 32 bit sequence number (high byte first) in the reserved
+     * words. Boards count every packet they send from 1, skipping 0 when the
+     * count wraps; 0 means the board does not number its packets
+     */
+    public static final int SERVER_SEQUENCE_INDEX = SERVER_RESERVED_START_INDEX;
+    
     /**
      * Location of checksum in server packet
      */
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+/**
+ * Results of a single pass over the DAC measurements of a server packet.
+ *
+ * Holds the de-interleaved samples along with the peak average, frequency and
+ * RMS of every data source (voltage, current channel 1, current channel 2).
+ * An analysis object can be filled over and over again by
+ * {@link PowerUtils#analyze(java.nio.ByteBuffer, DACAnalysis)} without
+ * allocating.
+ *
+ * @author Christe, Anthony
+ */
+public class DACAnalysis {
+    /**
+     * Number of data sources in a server packet
+     */
+    public static final int CHANNELS = 3;
+
+    private final int[][] samples = new int[CHANNELS][Constants.SERVER_SAMPLES_PER_CH];
+    private final int[] peak = new int[CHANNELS];
+    private final int[] peakCount = new int[CHANNELS];
+    private final double[] frequency = new double[CHANNELS];
+    private final double[] rms = new double[CHANNELS];
+    
+    // Scratch space used while analyzing
+    final int[] first = new int[CHANNELS];
+    final int[] second = new int[CHANNELS];
+    final int[] last = new int[CHANNELS];
+    final int[] count = new int[CHANNELS];
+    final int[] sum = new int[CHANNELS];
+    final long[] squares = new long[CHANNELS];
+
+    /**
+     * Stores the results for one data source
+     * @param channel   the data source
+     * @param peak      average of the local maxima
+     * @param peakCount number of local maxima found
+     * @param frequency frequency computed from the first two maxima
+     * @param rms       root mean square of the samples
+     */
+    void set(int channel, int peak, int peakCount, double frequency, double rms) {
+        this.peak[channel] = peak;
+        this.peakCount[channel] = peakCount;
+        this.frequency[channel] = frequency;
+        this.rms[channel] = rms;
+    }
+
+    /**
+     * Get the samples of a data source
+     * @param channel the data source
+     * @return samples for the data source
+     */
+    public int[] getSamples(int channel) {
+        return samples[channel];
+    }
+
+    /**
+     * Get the samples of all data sources, one row per data source
+     * @return samples for all data sources
+     */
+    public int[][] getSamples() {
+        return samples;
+    }
+
+    /**
+     * Get the average of the local maxima of a data source
+     * @param channel the data source
+     * @return peak DAC value of the data source
+     */
+    public int getPeak(int channel) {
+        return peak[channel];
+    }
+
+    /**
+     * Get the number of local maxima found in a data source
+     * @param channel the data source
+     * @return number of local maxima
+     */
+    public int getPeakCount(int channel) {
+        return peakCount[channel];
+    }
+
+    /**
+     * Get the frequency of a data source
+     * @param channel the data source
+     * @return frequency of the data source
+     */
+    public double getFrequency(int channel) {
+        return frequency[channel];
+    }
+
+    /**
+     * Get the root mean square of a data source in DAC units
+     * @param channel the data source
+     * @return root mean square of the data source
+     */
+    public double getRms(int channel) {
+        return rms[channel];
+    }
+}
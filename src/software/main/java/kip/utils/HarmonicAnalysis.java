@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+/**
+ * Power quality of one voltage and current pair of a server packet.
+ *
+ * Holds the harmonic amplitudes and total harmonic distortion of both signals,
+ * their crest factors, and the active, reactive and apparent power and power
+ * factor of the pair. Filled by
+ * {@link PowerUtils#analyzeHarmonics(int[], Spectrum, int[], Spectrum, double, double, HarmonicAnalysis)},
+ * which can reuse the same object over and over again without allocating.
+ *
+ * @author Christe, Anthony
+ */
+public class HarmonicAnalysis {
+    /**
+     * Most harmonics that fit in the spectrum of a frame
+     */
+    public static final int MAX_HARMONICS = Spectrum.BINS - 1;
+
+    final double[] voltageHarmonics = new double[MAX_HARMONICS + 1];
+    final double[] currentHarmonics = new double[MAX_HARMONICS + 1];
+    int fundamentalBin;
+    int harmonics;
+    double voltageThd;
+    double currentThd;
+    double voltageCrestFactor;
+    double currentCrestFactor;
+    double voltageRms;
+    double currentRms;
+    double activePower;
+    double reactivePower;
+    double apparentPower;
+
+    /**
+     * Get the spectrum bin of the fundamental, the strongest voltage component
+     * @return cycles per frame of the fundamental, 0 if there is no AC voltage
+     */
+    public int getFundamentalBin() {
+        return fundamentalBin;
+    }
+
+    /**
+     * Get the frequency of the fundamental
+     * @return frequency in hertz
+     */
+    public double getFundamentalFrequency() {
+        return Spectrum.getFrequency(fundamentalBin);
+    }
+
+    /**
+     * Get the number of harmonics, including the fundamental, that fit in the
+     * spectrum
+     * @return number of harmonics
+     */
+    public int getHarmonicCount() {
+        return harmonics;
+    }
+
+    /**
+     * Get the amplitude of a voltage harmonic
+     * @param harmonic order of the harmonic, 1 being the fundamental
+     * @return amplitude in volts, 0 past the last harmonic
+     */
+    public double getVoltageHarmonic(int harmonic) {
+        return (harmonic <= harmonics) ? voltageHarmonics[harmonic] : 0.0;
+    }
+
+    /**
+     * Get the amplitude of a current harmonic
+     * @param harmonic order of the harmonic, 1 being the fundamental
+     * @return amplitude in amperes, 0 past the last harmonic
+     */
+    public double getCurrentHarmonic(int harmonic) {
+        return (harmonic <= harmonics) ? currentHarmonics[harmonic] : 0.0;
+    }
+
+    /**
+     * Get the total harmonic distortion of the voltage
+     * @return ratio of the harmonics to the fundamental
+     */
+    public double getVoltageThd() {
+        return voltageThd;
+    }
+
+    /**
+     * Get the total harmonic distortion of the current
+     * @return ratio of the harmonics to the fundamental
+     */
+    public double getCurrentThd() {
+        return currentThd;
+    }
+
+    /**
+     * Get the crest factor of the voltage
+     * @return ratio of the peak to the RMS
+     */
+    public double getVoltageCrestFactor() {
+        return voltageCrestFactor;
+    }
+
+    /**
+     * Get the crest factor of the current
+     * @return ratio of the peak to the RMS
+     */
+    public double getCurrentCrestFactor() {
+        return currentCrestFactor;
+    }
+
+    /**
+     * Get the root mean square of the voltage
+     * @return volts
+     */
+    public double getVoltageRms() {
+        return voltageRms;
+    }
+
+    /**
+     * Get the root mean square of the current
+     * @return amperes
+     */
+    public double getCurrentRms() {
+        return currentRms;
+    }
+
+    /**
+     * Get the active power, the mean of the instantaneous power
+     * @return watts
+     */
+    public double getActivePower() {
+        return activePower;
+    }
+
+    /**
+     * Get the reactive power summed over the harmonics, positive when the
+     * current lags the voltage
+     * @return volt-amperes reactive
+     */
+    public double getReactivePower() {
+        return reactivePower;
+    }
+
+    /**
+     * Get the apparent power
+     * @return volt-amperes
+     */
+    public double getApparentPower() {
+        return apparentPower;
+    }
+
+    /**
+     * Get the power factor
+     * @return ratio of the active to the apparent power, 0 if there is no power
+     */
+    public double getPowerFactor() {
+        return (apparentPower == 0) ? 0.0 : activePower / apparentPower;
+    }
+}
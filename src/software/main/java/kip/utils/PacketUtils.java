@@ -19,8 +19,8 @@
 
 package kip.utils;
 
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 
@@ -29,6 +29,9 @@ import java.util.Calendar;
  *
  * Provides packet validation, creation, and inspection methods.
  *
+ * All methods are pure functions of their arguments and hold no locks, so
+ * packets from many boards can be decoded in parallel.
+ *
  * @author Christe, Anthony
  */
 public class PacketUtils {
@@ -36,42 +39,14 @@ public class PacketUtils {
      * Determines if a packet is valid by checking its length, header, footer,
      * and checksum;
      *
+     * Use a PacketValidator to also learn why a packet is invalid.
+     *
      * @param data       the data stored in the packet
      * @param packetType the type of packet being verified (server or client)
      * @return validity of packet
      */
     public static boolean isValidPacket(byte[] data, final int packetType) {
-        if (packetType != Constants.SERVER_PACKET && packetType != Constants.CLIENT_PACKET) {
-            return false;
-        }
-
-        boolean server = (packetType == Constants.SERVER_PACKET);
-        int size = (server) ? Constants.SERVER_PACKET_SIZE : Constants.CLIENT_PACKET_SIZE;
-        byte header = (server) ? Constants.SERVER_HEADER : Constants.CLIENT_HEADER;
-        int headerIndex = (server) ? Constants.SERVER_HEADER_INDEX : Constants.CLIENT_HEADER_INDEX;
-        byte footer = (server) ? Constants.SERVER_FOOTER : Constants.CLIENT_FOOTER;
-        int footerIndex = (server) ? Constants.SERVER_FOOTER_INDEX : Constants.CLIENT_FOOTER_INDEX;
-        int checksumIndex = (server) ? Constants.SERVER_CHECKSUM_INDEX : Constants.CLIENT_CHECKSUM_INDEX;
-
-        if (data.length != size) {
-            System.out.println("0");
-            System.out.println(data.length + " " + size);
-            return false;
-        }
-        if (data[headerIndex] != header) {
-            System.out.println(1);
-            return false;
-        }
-        if (data[footerIndex] != footer) {
-            System.out.println(data[footerIndex] + " " + footer);
-            System.out.println(2);
-            return false;
-        }
-        if (data[checksumIndex] != checksum(data, packetType)) {
-            System.out.println(3);
-            return false;
-        }
-        return true;
+        return PacketValidator.check(data, packetType) == PacketValidator.Reason.VALID;
     }
 
     /**
@@ -111,13 +86,13 @@ public class PacketUtils {
      * @param arg2_5    Index 5 of second argument
      * @return          client data ready to insert into UDP packet
      */
-    public static synchronized byte[] createClientPacket(byte command, byte arg1,
-                                                         byte arg2_0,
-                                                         byte arg2_1,
-                                                         byte arg2_2,
-                                                         byte arg2_3,
-                                                         byte arg2_4,
-                                                         byte arg2_5) {
+    public static byte[] createClientPacket(byte command, byte arg1,
+                                            byte arg2_0,
+                                            byte arg2_1,
+                                            byte arg2_2,
+                                            byte arg2_3,
+                                            byte arg2_4,
+                                            byte arg2_5) {
         byte[] packet = new byte[Constants.CLIENT_PACKET_SIZE];
 
         packet[Constants.CLIENT_HEADER_INDEX] = Constants.CLIENT_HEADER;
@@ -150,6 +125,21 @@ public class PacketUtils {
      */
     public static byte[] createServerPacket(byte id, int[] voltage, int[] curCh1,
                                             int[] curCh2) {
+        return createServerPacket(id, voltage, curCh1, curCh2, 0);
+    }
+
+    /**
+     * Creates a numbered server (emulator packet).
+     *
+     * @param id       the id of the board
+     * @param voltage  the voltage samples
+     * @param curCh1   the current channel 1 samples
+     * @param curCh2   the current channel 2 samples
+     * @param sequence the sequence number of the packet, 0 for none
+     * @return the server packet data ready to be inserted into UDP packet
+     */
+    public static byte[] createServerPacket(byte id, int[] voltage, int[] curCh1,
+                                            int[] curCh2, int sequence) {
         byte[] packet = new byte[Constants.SERVER_PACKET_SIZE];
         int cnt = 0;
         byte[] DAC;
@@ -179,11 +169,23 @@ public class PacketUtils {
         packet[Constants.SERVER_HEADER_INDEX] = Constants.SERVER_HEADER;
         packet[Constants.SERVER_ID_INDEX] = id;
         packet[Constants.SERVER_FOOTER_INDEX] = Constants.SERVER_FOOTER;
+        ByteBuffer.wrap(packet).putInt(Constants.SERVER_SEQUENCE_INDEX, sequence);
         packet[Constants.SERVER_CHECKSUM_INDEX] = checksum(packet,
                                                            Constants.SERVER_PACKET);
         return packet;
     }
 
+    /**
+     * Returns the sequence number that follows another, skipping 0 so a
+     * numbered packet is never mistaken for an unnumbered one
+     *
+     * @param sequence the sequence number of the last packet, 0 before the first
+     * @return the sequence number of the next packet
+     */
+    public static int nextSequence(int sequence) {
+        return (sequence == -1) ? 1 : sequence + 1;
+    }
+
     /**
      * Return the highest DAC value reached by a sample point
      *
@@ -191,36 +193,32 @@ public class PacketUtils {
      * @param channel the data source to get the max DAC value for
      * @return the max DAC value for the selected data source
      */
-    public static synchronized int getMaxDACValue(byte[] data, int channel) {
-        int[] samples = getDACMeasurements(data)[channel];
-        ArrayList<Integer> maximas = new ArrayList<Integer>();
-        int average = 0;
-        for (int i = 2; i < samples.length - 2; i++) {
-            if ((samples[i] >= samples[i + 1]) && (samples[i] >= samples[i - 1])) {
-                if ((samples[i] > samples[i + 2]) && (samples[i] > samples[i - 2])) {
-                    if (samples[i] > 4) {
-                        if (maximas.size() > 0) {
-                            if (i - maximas.get(maximas.size() - 1) > 5) {
-                                maximas.add(i);
-                            }
-                        } else {
-                            maximas.add(i);
-                        }
-                    }
+    public static int getMaxDACValue(byte[] data, int channel) {
+        return getMaxDACValue(getDACMeasurements(data)[channel]);
+    }
 
-                }
-            }
-        }
-        
-        if(maximas.size() == 0) {
-            return 0;
-        }
+    /**
+     * Return the highest DAC value reached by already decoded samples.
+     *
+     * The value is the average of the local maxima found in the samples.
+     *
+     * @param samples the decoded samples of a single data source
+     * @return the max DAC value for the samples
+     */
+    public static int getMaxDACValue(int[] samples) {
+        int last = -1;
+        int count = 0;
+        int sum = 0;
         
-        for(Integer i : maximas) {
-            average += samples[i];
+        for (int i = 2; i < samples.length - 2; i++) {
+            if (PowerUtils.isMaxima(samples, i, last)) {
+                last = i;
+                sum += samples[i];
+                count++;
+            }
         }
         
-        return average / maximas.size();
+        return (count == 0) ? 0 : sum / count;
     }
 
     /**
@@ -233,27 +231,41 @@ public class PacketUtils {
      * @param data the data to get usable samples from
      * @return a 2d array of usable sample values from all data sources
      */
-    public static synchronized int[][] getDACMeasurements(byte[] data) {
+    public static int[][] getDACMeasurements(byte[] data) {
+        return getDACMeasurements(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Return a 2D array where each row represents a data source.
+     *
+     * Reads the samples straight out of the buffer using absolute indexes
+     * relative to the start of the buffer, so the buffer's position is left
+     * untouched and no copy of the packet is needed.
+     *
+     * @param data buffer holding the packet
+     * @return a 2d array of usable sample values from all data sources
+     */
+    public static int[][] getDACMeasurements(ByteBuffer data) {
         int[][] measurements = new int[3][Constants.SERVER_SAMPLES_PER_CH];
         int idx = 0;
 
         // Voltage
         for (int i = Constants.SERVER_DAC_START_INDEX; i < Constants.SERVER_DAC_END_INDEX; i += 6) {
-            measurements[0][idx++] = getDACMeasurement(data[i], data[i + 1]);
+            measurements[0][idx++] = getDACMeasurement(data.get(i), data.get(i + 1));
         }
 
         idx = 0;
 
         // Current ch 1
         for (int i = Constants.SERVER_DAC_START_INDEX + 2; i < Constants.SERVER_DAC_END_INDEX; i += 6) {
-            measurements[1][idx++] = getDACMeasurement(data[i], data[i + 1]);
+            measurements[1][idx++] = getDACMeasurement(data.get(i), data.get(i + 1));
         }
 
         idx = 0;
 
         // Current ch 2
         for (int i = Constants.SERVER_DAC_START_INDEX + 4; i < Constants.SERVER_DAC_END_INDEX; i += 6) {
-            measurements[2][idx++] = getDACMeasurement(data[i], data[i + 1]);
+            measurements[2][idx++] = getDACMeasurement(data.get(i), data.get(i + 1));
         }
 
         return measurements;
@@ -266,7 +278,7 @@ public class PacketUtils {
      * @param high the high byte
      * @return an integer computed from low and high byte
      */
-    public static synchronized int getDACMeasurement(byte high, byte low) {
+    public static int getDACMeasurement(byte high, byte low) {
         int result = 0;
         result |= ((high & 0xFF) << 8);
         result |= (low & 0xFF);
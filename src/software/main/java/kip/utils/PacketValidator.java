@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Validates packets and counts why packets fail.
+ *
+ * Validation checks the length, header, footer and checksum of a packet
+ * without printing or allocating anything, so it can run on every datagram
+ * received. Each validator keeps a counter per outcome.
+ *
+ * Packets held in a byte array are summed a byte at a time. Packets held in
+ * a buffer, such as the direct buffers datagrams are received into, are
+ * summed eight bytes at a time: each long read from the buffer is split into
+ * its even and odd bytes, which are added as four 16 bit lanes that can not
+ * overflow before they are folded together.
+ * @author Christe, Anthony
+ */
+public class PacketValidator {
+    /**
+     * Outcome of validating a packet
+     */
+    public enum Reason {
+        /**
+         * The packet is valid
+         */
+        VALID,
+
+        /**
+         * The packet type is neither server nor client
+         */
+        TYPE,
+
+        /**
+         * The packet is not the size of its type
+         */
+        LENGTH,
+
+        /**
+         * The header byte is wrong
+         */
+        HEADER,
+
+        /**
+         * The footer byte is wrong
+         */
+        FOOTER,
+
+        /**
+         * The checksum does not match the packet's bytes
+         */
+        CHECKSUM
+    }
+
+    private static final Reason[] REASONS = Reason.values();
+    private static final long EVEN_BYTES = 0x00FF00FF00FF00FFL;
+
+    /**
+     * Longs that can be added into the 16 bit lanes before they might overflow
+     */
+    private static final int WORDS_PER_FOLD = 128;
+
+    private final AtomicLongArray counts = new AtomicLongArray(REASONS.length);
+
+    /**
+     * Validates a packet and counts the outcome
+     * @param data       the data stored in the packet
+     * @param packetType the type of packet being verified (server or client)
+     * @return why the packet is invalid, or VALID
+     */
+    public Reason validate(byte[] data, int packetType) {
+        Reason reason = check(data, packetType);
+        counts.incrementAndGet(reason.ordinal());
+        return reason;
+    }
+
+    /**
+     * Validates a packet and counts the outcome
+     * @param frame      buffer holding the packet from its position to its
+     *                   limit, left unchanged
+     * @param packetType the type of packet being verified (server or client)
+     * @return why the packet is invalid, or VALID
+     */
+    public Reason validate(ByteBuffer frame, int packetType) {
+        Reason reason = check(frame, packetType);
+        counts.incrementAndGet(reason.ordinal());
+        return reason;
+    }
+
+    /**
+     * Number of packets validated with an outcome
+     * @param reason the outcome
+     * @return number of packets
+     */
+    public long getCount(Reason reason) {
+        return counts.get(reason.ordinal());
+    }
+
+    /**
+     * Number of packets that failed validation for any reason
+     * @return number of invalid packets
+     */
+    public long getInvalid() {
+        long invalid = 0;
+
+        for (int i = 0; i < REASONS.length; i++) {
+            if (REASONS[i] != Reason.VALID) {
+                invalid += counts.get(i);
+            }
+        }
+        return invalid;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < REASONS.length; i++) {
+            text.append((i == 0) ? "" : "  ").append(REASONS[i]).append(": ").append(counts.get(i));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Checks a packet held in an array
+     * @param data       the data stored in the packet
+     * @param packetType the type of packet being verified (server or client)
+     * @return why the packet is invalid, or VALID
+     */
+    public static Reason check(byte[] data, int packetType) {
+        boolean server = (packetType == Constants.SERVER_PACKET);
+        int checksumIndex = (server) ? Constants.SERVER_CHECKSUM_INDEX : Constants.CLIENT_CHECKSUM_INDEX;
+
+        if (packetType != Constants.SERVER_PACKET && packetType != Constants.CLIENT_PACKET) {
+            return Reason.TYPE;
+        }
+        if (data.length != ((server) ? Constants.SERVER_PACKET_SIZE : Constants.CLIENT_PACKET_SIZE)) {
+            return Reason.LENGTH;
+        }
+        if (data[(server) ? Constants.SERVER_HEADER_INDEX : Constants.CLIENT_HEADER_INDEX]
+                != ((server) ? Constants.SERVER_HEADER : Constants.CLIENT_HEADER)) {
+            return Reason.HEADER;
+        }
+        if (data[(server) ? Constants.SERVER_FOOTER_INDEX : Constants.CLIENT_FOOTER_INDEX]
+                != ((server) ? Constants.SERVER_FOOTER : Constants.CLIENT_FOOTER)) {
+            return Reason.FOOTER;
+        }
+        if ((byte) (sum(data) - data[checksumIndex]) != data[checksumIndex]) {
+            return Reason.CHECKSUM;
+        }
+        return Reason.VALID;
+    }
+
+    /**
+     * Checks a packet held in a buffer, summing it eight bytes at a time
+     * @param frame      buffer holding the packet from its position to its
+     *                   limit, left unchanged
+     * @param packetType the type of packet being verified (server or client)
+     * @return why the packet is invalid, or VALID
+     */
+    public static Reason check(ByteBuffer frame, int packetType) {
+        boolean server = (packetType == Constants.SERVER_PACKET);
+        int start = frame.position();
+        byte checksum;
+
+        if (packetType != Constants.SERVER_PACKET && packetType != Constants.CLIENT_PACKET) {
+            return Reason.TYPE;
+        }
+        if (frame.remaining() != ((server) ? Constants.SERVER_PACKET_SIZE : Constants.CLIENT_PACKET_SIZE)) {
+            return Reason.LENGTH;
+        }
+        if (frame.get(start + ((server) ? Constants.SERVER_HEADER_INDEX : Constants.CLIENT_HEADER_INDEX))
+                != ((server) ? Constants.SERVER_HEADER : Constants.CLIENT_HEADER)) {
+            return Reason.HEADER;
+        }
+        if (frame.get(start + ((server) ? Constants.SERVER_FOOTER_INDEX : Constants.CLIENT_FOOTER_INDEX))
+                != ((server) ? Constants.SERVER_FOOTER : Constants.CLIENT_FOOTER)) {
+            return Reason.FOOTER;
+        }
+        checksum = frame.get(start + ((server) ? Constants.SERVER_CHECKSUM_INDEX : Constants.CLIENT_CHECKSUM_INDEX));
+        if ((byte) (sumWords(frame) - checksum) != checksum) {
+            return Reason.CHECKSUM;
+        }
+        return Reason.VALID;
+    }
+
+    /**
+     * Sums the bytes of an array a byte at a time
+     * @param data the bytes
+     * @return sum of the bytes, modulo 256
+     */
+    public static byte sum(byte[] data) {
+        byte sum = 0;
+
+        for (int i = 0; i < data.length; i++) {
+            sum += data[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Sums the bytes of a buffer eight at a time
+     * @param frame the bytes from its position to its limit, left unchanged
+     * @return sum of the bytes, modulo 256
+     */
+    public static byte sumWords(ByteBuffer frame) {
+        int i = frame.position();
+        int limit = frame.limit();
+        int words = 0;
+        long lanes = 0;
+        long word;
+        long sum = 0;
+
+        for (; i + 8 <= limit; i += 8) {
+            word = frame.getLong(i);
+            lanes += (word & EVEN_BYTES) + ((word >>> 8) & EVEN_BYTES);
+            if (++words == WORDS_PER_FOLD) {
+                sum += fold(lanes);
+                lanes = 0;
+                words = 0;
+            }
+        }
+        sum += fold(lanes);
+        for (; i < limit; i++) {
+            sum += frame.get(i);
+        }
+        return (byte) sum;
+    }
+
+    /**
+     * Adds the four 16 bit lanes of a long
+     * @param lanes the lanes
+     * @return sum of the lanes
+     */
+    private static long fold(long lanes) {
+        return (lanes & 0xFFFF) + ((lanes >>> 16) & 0xFFFF) + ((lanes >>> 32) & 0xFFFF)
+               + (lanes >>> 48);
+    }
+}
@@ -19,10 +19,7 @@
 
 package kip.utils;
 
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 /**
  * Provides methods for analyzing and calculating power measurements.
@@ -36,6 +33,29 @@ public class PowerUtils {
     private static final double SLOPE_CH_1 = 0.00785;
     private static final double SLOPE_CH_2 = 0.085;
     
+    /**
+     * Volts per DAC unit of the voltage channel. The nominal supply of
+     * Constants.VOLTAGE volts RMS reads a peak of NOMINAL_VOLTAGE_PEAK.
+     */
+    private static final int NOMINAL_VOLTAGE_PEAK = 768;
+    private static final double SLOPE_VOLTAGE = Constants.VOLTAGE * Constants.SQRT_OF_2
+                                                / NOMINAL_VOLTAGE_PEAK;
+    
+    /**
+     * Sampling rate divided by the distance between two maxima gives frequency
+     */
+    private static final double FREQUENCY_SCALE = Constants.SERVER_SAMPLE_RATE;
+    
+    /**
+     * Samples at or below this DAC value are never considered maxima
+     */
+    private static final int MAXIMA_FLOOR = 4;
+    
+    /**
+     * Minimum number of samples between two maxima
+     */
+    private static final int MAXIMA_SPACING = 5;
+    
     /**
      * Calculate watts
      *
@@ -72,53 +92,211 @@ public class PowerUtils {
      * @return          the frequency of the power
      */
     public static double getFrequency(int[] samples) {
-        ArrayList<Integer> maximas = new ArrayList<Integer>();
-        for (int i = 2; i < samples.length - 2; i++) 
-        {
-            if ((samples[i] >= samples[i + 1]) && (samples[i] >= samples[i - 1]))
-				if ((samples[i] > samples[i + 2]) && (samples[i] > samples[i - 2])) 
-				{
-					if(samples[i] > 4)
-					{
-						if(maximas.size() > 0)
-						{
-							if( i - maximas.get(maximas.size() -1) > 5)
-							{
-								maximas.add(i);
-							}
-						}
-						else
-						{
-							maximas.add(i);
-						}
-					}
+        int first = -1;
+        int last = -1;
 
-				}
-        }
-        if (maximas.size() < 2) 
-        {
-            return 0.0;
+        for (int i = 2; i < samples.length - 2; i++) {
+            if (isMaxima(samples, i, last)) {
+                if (first < 0) {
+                    first = i;
+                    last = i;
+                } else {
+                    return FREQUENCY_SCALE * (1.0 / (i - first));
+                }
+            }
         }
-        return 1500*(1.0 / (maximas.get(1) - maximas.get(0)));
+        return 0.0;
     }
 
     /**
-     * Performs a FFT over the data
-     * @param samples   samples to perform FFT over
-     * @return          transformed voltage
+     * Determines whether sample i is a local maxima.
+     *
+     * A maxima must be at least as large as its direct neighbors, larger than
+     * the samples two positions away, above the noise floor, and more than
+     * MAXIMA_SPACING samples after the previous maxima.
+     * @param samples   samples being searched
+     * @param i         index of sample to test (2 <= i < samples.length - 2)
+     * @param last      index of the previous maxima, or -1 if there is none
+     * @return          whether or not sample i is a local maxima
+     */
+    static boolean isMaxima(int[] samples, int i, int last) {
+        int s = samples[i];
+        return s >= samples[i + 1] && s >= samples[i - 1]
+               && s > samples[i + 2] && s > samples[i - 2]
+               && s > MAXIMA_FLOOR
+               && (last < 0 || i - last > MAXIMA_SPACING);
+    }
+
+    /**
+     * Decodes and analyzes all data sources of a server packet in one pass.
+     *
+     * The interleaved DAC region is walked once. Each sample is de-interleaved
+     * into result and, as soon as the two samples following it are known,
+     * tested for being a local maxima. Peak averages, frequencies and RMS for
+     * all three data sources are computed along the way, so nothing is
+     * allocated and the packet is not decoded again.
+     * @param data      buffer holding the server packet, indexed from 0
+     * @param result    analysis object to fill
+     * @return          result, for convenience
      */
-    public static double[] voltageTransform(int[] samples) {
-        double[][] data = new double[2][samples.length];
+    public static DACAnalysis analyze(ByteBuffer data, DACAnalysis result) {
+        final int n = Constants.SERVER_SAMPLES_PER_CH;
+        int[][] samples = result.getSamples();
+        int[] first = result.first;
+        int[] second = result.second;
+        int[] last = result.last;
+        int[] count = result.count;
+        int[] sum = result.sum;
+        long[] squares = result.squares;
+        int idx = Constants.SERVER_DAC_START_INDEX;
+        int sample;
+        int j;
+        
+        for (int ch = 0; ch < DACAnalysis.CHANNELS; ch++) {
+            first[ch] = -1;
+            second[ch] = -1;
+            last[ch] = -1;
+            count[ch] = 0;
+            sum[ch] = 0;
+            squares[ch] = 0;
+        }
+
+        for (int i = 0; i < n; i++) {
+            // Sample i - 2 now has both of its right hand neighbors
+            j = i - 2;
+            for (int ch = 0; ch < DACAnalysis.CHANNELS; ch++, idx += 2) {
+                sample = ((data.get(idx) & 0xFF) << 8) | (data.get(idx + 1) & 0xFF);
+                samples[ch][i] = sample;
+                squares[ch] += (long) sample * sample;
 
-        for (int i = 0; i < data[0].length; i++) {
-            data[0][i] = i;
-            data[1][i] = 0;
+                if (j >= 2 && isMaxima(samples[ch], j, last[ch])) {
+                    if (count[ch] == 0) {
+                        first[ch] = j;
+                    } else if (count[ch] == 1) {
+                        second[ch] = j;
+                    }
+                    last[ch] = j;
+                    sum[ch] += samples[ch][j];
+                    count[ch]++;
+                }
+            }
         }
 
-        FastFourierTransformer.transformInPlace(data, DftNormalization.STANDARD,
-                                                TransformType.FORWARD);
-        //System.out.println(java.util.Arrays.toString(samples) + "\n");
-        //System.out.println(java.util.Arrays.toString(data[0]) + "\n");
-        return data[0];
+        for (int ch = 0; ch < DACAnalysis.CHANNELS; ch++) {
+            result.set(ch,
+                       (count[ch] == 0) ? 0 : sum[ch] / count[ch],
+                       count[ch],
+                       (count[ch] < 2) ? 0.0 : FREQUENCY_SCALE * (1.0 / (second[ch] - first[ch])),
+                       Math.sqrt((double) squares[ch] / n));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the spectrum of the voltage samples
+     * @param samples   voltage samples to transform
+     * @return          spectrum of the voltage
+     */
+    public static Spectrum voltageTransform(int[] samples) {
+        return RealFFT.transform(samples, new Spectrum());
+    }
+
+    /**
+     * Analyzes the power quality of the voltage paired with one of the current
+     * channels
+     * @param analysis          decoded samples of the packet
+     * @param spectra           spectra of the voltage and both current channels
+     * @param currentChannel    current channel 1 or 2
+     * @param result            analysis object to fill
+     * @return                  result, for convenience
+     */
+    public static HarmonicAnalysis analyzeHarmonics(DACAnalysis analysis, Spectrum[] spectra,
+                                                    int currentChannel, HarmonicAnalysis result) {
+        return analyzeHarmonics(analysis.getSamples(0), spectra[0],
+                                analysis.getSamples(currentChannel), spectra[currentChannel],
+                                SLOPE_VOLTAGE, (currentChannel == 1) ? SLOPE_CH_1 : SLOPE_CH_2,
+                                result);
+    }
+    
+    /**
+     * Analyzes the power quality of a voltage and current pair.
+     *
+     * RMS, crest factors and active power come from one pass over the paired
+     * samples. The fundamental is the strongest AC bin of the voltage spectrum
+     * and every multiple of it that fits in the spectrum is taken as a
+     * harmonic of both signals. Reactive power is summed over those harmonics
+     * and apparent power is the product of the RMS values.
+     * @param voltage           voltage samples
+     * @param voltageSpectrum   spectrum of the voltage samples
+     * @param current           current samples
+     * @param currentSpectrum   spectrum of the current samples
+     * @param voltageSlope      volts per DAC unit
+     * @param currentSlope      amperes per DAC unit
+     * @param result            analysis object to fill
+     * @return                  result, for convenience
+     */
+    public static HarmonicAnalysis analyzeHarmonics(int[] voltage, Spectrum voltageSpectrum,
+                                                    int[] current, Spectrum currentSpectrum,
+                                                    double voltageSlope, double currentSlope,
+                                                    HarmonicAnalysis result) {
+        final int n = voltage.length;
+        double[] voltageMagnitude = voltageSpectrum.magnitude;
+        double[] currentMagnitude = currentSpectrum.magnitude;
+        long voltageSquares = 0;
+        long currentSquares = 0;
+        long products = 0;
+        int voltagePeak = 0;
+        int currentPeak = 0;
+        int fundamental = 0;
+        int bin;
+        double strongest = 0;
+        double voltageDistortion = 0;
+        double currentDistortion = 0;
+        double reactive = 0;
+        
+        for (int i = 0; i < n; i++) {
+            voltageSquares += (long) voltage[i] * voltage[i];
+            currentSquares += (long) current[i] * current[i];
+            products += (long) voltage[i] * current[i];
+            voltagePeak = Math.max(voltagePeak, voltage[i]);
+            currentPeak = Math.max(currentPeak, current[i]);
+        }
+        
+        result.voltageRms = Math.sqrt((double) voltageSquares / n) * voltageSlope;
+        result.currentRms = Math.sqrt((double) currentSquares / n) * currentSlope;
+        result.voltageCrestFactor = (result.voltageRms == 0) ? 0.0
+                                    : voltagePeak * voltageSlope / result.voltageRms;
+        result.currentCrestFactor = (result.currentRms == 0) ? 0.0
+                                    : currentPeak * currentSlope / result.currentRms;
+        result.activePower = (double) products / n * voltageSlope * currentSlope;
+        result.apparentPower = result.voltageRms * result.currentRms;
+        
+        for (int k = 1; k < Spectrum.BINS; k++) {
+            if (voltageMagnitude[k] > strongest) {
+                strongest = voltageMagnitude[k];
+                fundamental = k;
+            }
+        }
+        result.fundamentalBin = fundamental;
+        result.harmonics = (fundamental == 0) ? 0 : (Spectrum.BINS - 1) / fundamental;
+        
+        for (int h = 1; h <= result.harmonics; h++) {
+            bin = h * fundamental;
+            result.voltageHarmonics[h] = voltageMagnitude[bin] * voltageSlope;
+            result.currentHarmonics[h] = currentMagnitude[bin] * currentSlope;
+            if (h > 1) {
+                voltageDistortion += result.voltageHarmonics[h] * result.voltageHarmonics[h];
+                currentDistortion += result.currentHarmonics[h] * result.currentHarmonics[h];
+            }
+            reactive += result.voltageHarmonics[h] * result.currentHarmonics[h] / 2
+                        * Math.sin(voltageSpectrum.phase[bin] - currentSpectrum.phase[bin]);
+        }
+        
+        result.reactivePower = reactive;
+        result.voltageThd = (result.harmonics == 0 || result.voltageHarmonics[1] == 0) ? 0.0
+                            : Math.sqrt(voltageDistortion) / result.voltageHarmonics[1];
+        result.currentThd = (result.harmonics == 0 || result.currentHarmonics[1] == 0) ? 0.0
+                            : Math.sqrt(currentDistortion) / result.currentHarmonics[1];
+        return result;
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+/**
+ * Fast Fourier transform of the real valued samples of a data source.
+ *
+ * Specialized for frames of SERVER_SAMPLES_PER_CH samples. The even and odd
+ * samples are packed into one complex sequence of half the length, which is
+ * transformed with an iterative radix-2 FFT and then split back into the
+ * spectrum of the real samples. Twiddle factors and the bit reversal
+ * permutation are computed once, and each thread transforms in its own
+ * scratch arrays, so a transform allocates nothing.
+ *
+ * @author Christe, Anthony
+ */
+public class RealFFT {
+    private static final int N = Constants.SERVER_SAMPLES_PER_CH;
+    private static final int HALF = N / 2;
+
+    /**
+     * cos and sin of 2 pi k / N for k from 0 to N / 2
+     */
+    private static final double[] COS = new double[HALF + 1];
+    private static final double[] SIN = new double[HALF + 1];
+
+    /**
+     * Bit reversal permutation of the half length transform
+     */
+    private static final int[] REVERSED = new int[HALF];
+
+    private static final ThreadLocal<double[][]> SCRATCH = new ThreadLocal<double[][]>() {
+        @Override
+        protected double[][] initialValue() {
+            return new double[2][HALF];
+        }
+    };
+
+    static {
+        int bits = Integer.numberOfTrailingZeros(HALF);
+
+        if (Integer.bitCount(N) != 1) {
+            throw new ExceptionInInitializerError("Samples per channel must be a power of 2");
+        }
+        for (int k = 0; k <= HALF; k++) {
+            COS[k] = Math.cos(2 * Math.PI * k / N);
+            SIN[k] = Math.sin(2 * Math.PI * k / N);
+        }
+        for (int i = 0; i < HALF; i++) {
+            REVERSED[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Transforms the samples of a data source
+     * @param samples   SERVER_SAMPLES_PER_CH samples
+     * @param result    spectrum to fill
+     * @return          result, for convenience
+     */
+    public static Spectrum transform(int[] samples, Spectrum result) {
+        double[][] scratch = SCRATCH.get();
+        double[] re = scratch[0];
+        double[] im = scratch[1];
+        double ar, ai, br, bi, er, ei, or, oi, xr, xi;
+        int j;
+
+        // Pack even samples as real parts and odd samples as imaginary parts
+        for (int i = 0; i < HALF; i++) {
+            j = REVERSED[i];
+            re[j] = samples[2 * i];
+            im[j] = samples[2 * i + 1];
+        }
+
+        // Butterflies. The twiddle of a half length transform of size m is
+        // the N point twiddle at N / m times the index
+        for (int size = 2; size <= HALF; size <<= 1) {
+            int step = N / size;
+            for (int start = 0; start < HALF; start += size) {
+                for (int k = 0; k < size / 2; k++) {
+                    int top = start + k;
+                    int bottom = top + size / 2;
+                    double wr = COS[k * step];
+                    double wi = -SIN[k * step];
+                    double tr = wr * re[bottom] - wi * im[bottom];
+                    double ti = wr * im[bottom] + wi * re[bottom];
+                    re[bottom] = re[top] - tr;
+                    im[bottom] = im[top] - ti;
+                    re[top] += tr;
+                    im[top] += ti;
+                }
+            }
+        }
+
+        // Split into the transforms of the even (E) and odd (O) samples and
+        // recombine: X[k] = E[k] + exp(-2 pi i k / N) O[k]
+        for (int k = 0; k <= HALF; k++) {
+            ar = re[k % HALF];
+            ai = im[k % HALF];
+            br = re[(HALF - k) % HALF];
+            bi = -im[(HALF - k) % HALF];
+            er = (ar + br) / 2;
+            ei = (ai + bi) / 2;
+            or = (ai - bi) / 2;
+            oi = (br - ar) / 2;
+            xr = er + COS[k] * or + SIN[k] * oi;
+            xi = ei + COS[k] * oi - SIN[k] * or;
+
+            result.real[k] = xr;
+            result.imaginary[k] = xi;
+            result.magnitude[k] = Math.sqrt(xr * xr + xi * xi)
+                                  * ((k == 0 || k == HALF) ? 1.0 : 2.0) / N;
+            result.phase[k] = Math.atan2(xi, xr);
+        }
+        return result;
+    }
+}
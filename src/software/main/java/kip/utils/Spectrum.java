@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+/**
+ * One sided spectrum of the samples of a data source.
+ *
+ * Bin k holds the component at k cycles per frame, from 0 (DC) to half the
+ * number of samples. The complex bins are those of the standard discrete
+ * Fourier transform. Magnitudes are amplitudes in DAC units, so a sine wave of
+ * amplitude A falling exactly on a bin shows a magnitude of A in that bin.
+ * A spectrum object can be filled over and over again by
+ * {@link RealFFT#transform(int[], Spectrum)} without allocating.
+ *
+ * @author Christe, Anthony
+ */
+public class Spectrum {
+    /**
+     * Number of bins in the spectrum of a data source
+     */
+    public static final int BINS = Constants.SERVER_SAMPLES_PER_CH / 2 + 1;
+
+    final double[] real = new double[BINS];
+    final double[] imaginary = new double[BINS];
+    final double[] magnitude = new double[BINS];
+    final double[] phase = new double[BINS];
+
+    /**
+     * Get the real part of a bin
+     * @param bin cycles per frame
+     * @return real part of the transform
+     */
+    public double getReal(int bin) {
+        return real[bin];
+    }
+
+    /**
+     * Get the imaginary part of a bin
+     * @param bin cycles per frame
+     * @return imaginary part of the transform
+     */
+    public double getImaginary(int bin) {
+        return imaginary[bin];
+    }
+
+    /**
+     * Get the amplitude of a bin
+     * @param bin cycles per frame
+     * @return amplitude in DAC units
+     */
+    public double getMagnitude(int bin) {
+        return magnitude[bin];
+    }
+
+    /**
+     * Get the amplitudes of every bin. The array is shared, do not modify it.
+     * @return amplitudes in DAC units indexed by bin
+     */
+    public double[] getMagnitudes() {
+        return magnitude;
+    }
+
+    /**
+     * Get the phase of a bin
+     * @param bin cycles per frame
+     * @return phase in radians, from -pi to pi
+     */
+    public double getPhase(int bin) {
+        return phase[bin];
+    }
+
+    /**
+     * Get the frequency of a bin
+     * @param bin cycles per frame
+     * @return frequency in hertz
+     */
+    public static double getFrequency(int bin) {
+        return bin * Constants.SERVER_SAMPLE_RATE / Constants.SERVER_SAMPLES_PER_CH;
+    }
+}
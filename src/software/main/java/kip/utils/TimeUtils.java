@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+import java.util.Calendar;
+
+/**
+ * Time stamps as primitive nanoseconds since the epoch.
+ *
+ * The wall clock is read once when KiP starts and every later time stamp is
+ * that reading plus the time elapsed on the monotonic clock. Time stamps are
+ * cheap to take, never go backwards, and order packets received less than a
+ * millisecond apart. Calendar fields are only computed when asked for.
+ *
+ * @author Christe, Anthony
+ */
+public class TimeUtils {
+    /**
+     * Nanoseconds per millisecond
+     */
+    public static final long NANOS_PER_MILLI = 1000000L;
+
+    private static final long ANCHOR_EPOCH_NANOS = System.currentTimeMillis() * NANOS_PER_MILLI;
+    private static final long ANCHOR_MONOTONIC_NANOS = System.nanoTime();
+
+    /**
+     * Current time
+     * @return nanoseconds since the epoch
+     */
+    public static long now() {
+        return ANCHOR_EPOCH_NANOS + (System.nanoTime() - ANCHOR_MONOTONIC_NANOS);
+    }
+
+    /**
+     * Converts a time stamp to milliseconds
+     * @param epochNanos nanoseconds since the epoch
+     * @return milliseconds since the epoch
+     */
+    public static long toMillis(long epochNanos) {
+        return epochNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Converts milliseconds to a time stamp
+     * @param epochMillis milliseconds since the epoch
+     * @return nanoseconds since the epoch
+     */
+    public static long fromMillis(long epochMillis) {
+        return epochMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Converts a time stamp to a calendar in the default time zone
+     * @param epochNanos nanoseconds since the epoch
+     * @return calendar set to the time stamp
+     */
+    public static Calendar toCalendar(long epochNanos) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(toMillis(epochNanos));
+        return calendar;
+    }
+}
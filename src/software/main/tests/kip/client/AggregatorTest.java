@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.util.Arrays;
+import java.util.List;
+import kip.utils.PacketUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class AggregatorTest {
+    private static final long SECOND = 1000000000L;
+    
+    /**
+     * Creates a packet whose voltage samples are all value and whose current
+     * samples are 0 and 2 * value
+     */
+    private Packet createPacket(byte id, long epoch, int value) {
+        int[] voltage = new int[64];
+        int[] current = new int[64];
+        
+        Arrays.fill(voltage, value);
+        for (int i = 0; i < current.length; i += 2) {
+            current[i + 1] = 2 * value;
+        }
+        return new Packet(epoch, PacketUtils.createServerPacket(id, voltage, current, current));
+    }
+
+    /**
+     * Test that packets are summarized per board and window.
+     */
+    @Test
+    public void testQuery() {
+        System.out.println("query");
+        Aggregator aggregator = new Aggregator();
+        List<Rollup> rollups;
+        
+        // Two packets a second for three minutes from board 1
+        for (int i = 0; i < 360; i++) {
+            aggregator.add(createPacket((byte) 1, 1000 * SECOND + i * SECOND / 2, i / 2 + 1));
+        }
+        aggregator.add(createPacket((byte) 2, 1000 * SECOND, 7));
+        
+        rollups = aggregator.query(1, Aggregator.SECOND, 1000 * SECOND, 1010 * SECOND);
+        assertEquals(10, rollups.size());
+        assertEquals(1003 * SECOND, rollups.get(3).getStart());
+        assertEquals(2, rollups.get(3).getPackets());
+        assertEquals(4, rollups.get(3).getMean(Packet.VOLTAGE), 0.0);
+        assertEquals(0, rollups.get(3).getMin(Packet.CURRENT_CHANNEL_1), 0.0);
+        assertEquals(8, rollups.get(3).getMax(Packet.CURRENT_CHANNEL_1), 0.0);
+        assertEquals(4, rollups.get(3).getMean(Packet.CURRENT_CHANNEL_1), 0.0);
+        assertEquals(Math.sqrt(32), rollups.get(3).getRms(Packet.CURRENT_CHANNEL_1), 1e-9);
+        assertEquals(128 * 16, rollups.get(3).getEnergy(Packet.VOLTAGE), 0.0);
+        
+        // Minute windows are aligned to the epoch, 1000 s is 40 s into one
+        rollups = aggregator.query(1, Aggregator.MINUTE, 0, 2000 * SECOND);
+        assertEquals(4, rollups.size());
+        assertEquals(40, rollups.get(0).getPackets());
+        assertEquals(120, rollups.get(1).getPackets());
+        assertEquals(1, rollups.get(0).getMin(Packet.VOLTAGE), 0.0);
+        assertEquals(20, rollups.get(0).getMax(Packet.VOLTAGE), 0.0);
+        
+        Rollup hour = aggregator.summarize(1, Aggregator.HOUR, 0, 3600 * SECOND);
+        assertEquals(360, hour.getPackets());
+        assertEquals(180, hour.getMax(Packet.VOLTAGE), 0.0);
+        
+        assertEquals(1, aggregator.query(2, Aggregator.SECOND, 0, 2000 * SECOND).size());
+        assertEquals(0, aggregator.query(3, Aggregator.SECOND, 0, 2000 * SECOND).size());
+        assertEquals(0, aggregator.summarize(3, Aggregator.SECOND, 0, SECOND).getPackets());
+    }
+
+    /**
+     * Test that late packets land in their window while it is still kept.
+     */
+    @Test
+    public void testLate() {
+        System.out.println("late");
+        Aggregator aggregator = new Aggregator();
+        
+        aggregator.add(createPacket((byte) 0, 5000 * SECOND, 1));
+        aggregator.add(createPacket((byte) 0, 9000 * SECOND, 1));
+        aggregator.add(createPacket((byte) 0, 8000 * SECOND, 1));
+        assertEquals(0, aggregator.getLate());
+        assertEquals(2, aggregator.query(0, Aggregator.SECOND, 0, 10000 * SECOND).size());
+        
+        // Seconds are only kept for an hour, hours for a month, so a packet
+        // only in its minute and hour windows is not late
+        aggregator.add(createPacket((byte) 0, 5200 * SECOND, 1));
+        assertEquals(0, aggregator.getLate());
+        assertEquals(2, aggregator.query(0, Aggregator.SECOND, 0, 10000 * SECOND).size());
+        assertEquals(4, aggregator.summarize(0, Aggregator.HOUR, 0, 10800 * SECOND).getPackets());
+        
+        // Older than any window kept
+        aggregator.add(createPacket((byte) 0, 40 * 24 * 3600 * SECOND, 1));
+        aggregator.add(createPacket((byte) 0, 5300 * SECOND, 1));
+        assertEquals(1, aggregator.getLate());
+    }
+}
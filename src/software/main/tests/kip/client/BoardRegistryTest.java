@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import kip.utils.PacketUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class BoardRegistryTest {
+    private final SocketAddress first = new InetSocketAddress("192.168.1.151", 10001);
+    private final SocketAddress second = new InetSocketAddress("192.168.1.152", 10001);
+
+    /**
+     * Test that boards are kept apart by both id and address.
+     */
+    @Test
+    public void testPartitions() {
+        System.out.println("partitions");
+        BoardRegistry registry = new BoardRegistry(16);
+        final AtomicInteger added = new AtomicInteger();
+        
+        registry.addBoardListener(new BoardListener() {
+            @Override
+            public void boardAdded(BoardPartition board) {
+                added.incrementAndGet();
+            }
+        });
+        
+        BoardPartition board = registry.get((byte) 1, first, 0);
+        assertSame(board, registry.get((byte) 1, first, 0));
+        assertNotSame(board, registry.get((byte) 2, first, 0));
+        assertNotSame(board, registry.get((byte) 1, second, 0));
+        assertSame(board, registry.find((byte) 1, new InetSocketAddress("192.168.1.151", 10001)));
+        assertNull(registry.find((byte) 3, first));
+        assertEquals(3, registry.size());
+        assertEquals(3, added.get());
+        
+        Packet packet = new Packet(0L, PacketUtils.createServerPacket((byte) 1, new int[64],
+                                                                     new int[64], new int[64]));
+        board.add(packet, true);
+        board.add(packet, false);
+        assertEquals(2, board.getPackets());
+        assertEquals(1, board.getInvalid());
+        assertEquals(2, board.getPacketHistory().size());
+        assertEquals(0, registry.find((byte) 2, first).getPacketHistory().size());
+    }
+
+    /**
+     * Test that a board always maps to the same decoder and boards spread over
+     * every decoder.
+     */
+    @Test
+    public void testShard() {
+        System.out.println("shard");
+        int[] counts = new int[4];
+        int shard;
+        
+        for (int id = 0; id < 256; id++) {
+            shard = BoardRegistry.shard((byte) id, first, counts.length);
+            assertEquals(shard, BoardRegistry.shard((byte) id, first, counts.length));
+            counts[shard]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 32);
+        }
+        assertEquals(0, BoardRegistry.shard((byte) 5, null, 1));
+    }
+
+    /**
+     * Test that rollups are only kept once asked for and are charged to the
+     * memory budget.
+     */
+    @Test
+    public void testRollups() {
+        System.out.println("rollups");
+        HistoryBudget budget = new HistoryBudget(Long.MAX_VALUE);
+        BoardRegistry registry = new BoardRegistry(16, budget);
+        BoardPartition board = registry.get((byte) 1, first, 0);
+        long histories = budget.getReserved();
+        Packet packet = new Packet(0L, PacketUtils.createServerPacket((byte) 1, new int[64],
+                                                                     new int[64], new int[64]));
+        
+        board.add(packet, true);
+        assertEquals(histories, budget.getReserved());
+        
+        Aggregator aggregator = board.getAggregator();
+        assertSame(aggregator, board.getAggregator());
+        assertEquals(0, aggregator.summarize(1, Aggregator.SECOND, 0, 1000000000L).getPackets());
+        board.add(packet, true);
+        assertEquals(1, aggregator.summarize(1, Aggregator.SECOND, 0, 1000000000L).getPackets());
+        assertEquals(histories + Aggregator.BOARD_SIZE, budget.getReserved());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.net.InetSocketAddress;
+import javax.swing.JTextArea;
+import kip.utils.CommandFrames;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class EventLogTest {
+    
+    private static int lines(String text) {
+        return text.isEmpty() ? 0 : text.split("\n").length;
+    }
+
+    /**
+     * Test that events are formatted when drained.
+     */
+    @Test
+    public void testDrain() {
+        System.out.println("drain");
+        EventLog log = new EventLog(16, 0, 100);
+        InetSocketAddress board = new InetSocketAddress("localhost", 10001);
+        String text;
+        
+        log.log("Hello");
+        log.received(board, (byte) 7, true, 402, new byte[402]);
+        log.sent(board, CommandFrames.trigger());
+        text = log.drain();
+        
+        assertEquals(3, lines(text));
+        assertTrue(text.contains("] Hello\n"));
+        assertTrue(text.contains("<RCV> [VALID] " + board + " ID=7"));
+        assertTrue(text.contains("<SND> " + board));
+        assertEquals("", log.drain());
+    }
+
+    /**
+     * Test that floods are suppressed and reported rather than kept.
+     */
+    @Test
+    public void testLimits() {
+        System.out.println("limits");
+        EventLog limited = new EventLog(1024, 10, 100);
+        EventLog small = new EventLog(8, 0, 100);
+        EventLog narrow = new EventLog(64, 0, 5);
+        JTextArea status = new JTextArea();
+        String text;
+        
+        for (int i = 0; i < 100; i++) {
+            limited.log("Packet " + i);
+            small.log("Packet " + i);
+            narrow.log("Packet " + i);
+        }
+        
+        // Rate limited to 10 a second, unless the test straddled a second
+        assertTrue(limited.getSuppressed() >= 80);
+        text = limited.drain();
+        assertTrue(text.contains(" log messages suppressed\n"));
+        assertEquals(0, limited.getSuppressed());
+        
+        // Queue holds 8 events
+        assertEquals(92, small.getSuppressed());
+        assertEquals(9, lines(small.drain()));
+        
+        // Only the lines that fit the status window are formatted
+        text = narrow.drain();
+        // Plus the line reporting the 36 that did not fit the queue
+        assertEquals(6, lines(text));
+        assertTrue(text.contains("Packet 63\n"));
+        
+        narrow.log("First");
+        narrow.drain(status);
+        for (int i = 0; i < 10; i++) {
+            narrow.log("More " + i);
+            narrow.drain(status);
+        }
+        assertFalse(status.getText().contains("First"));
+        assertTrue(status.getText().contains("More 9"));
+    }
+}
@@ -19,6 +19,9 @@
 
 package kip.client;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import kip.utils.Constants;
 import kip.utils.PacketUtils;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -28,26 +31,208 @@ import org.junit.Test;
  * @author Christe, Anthony
  */
 public class PacketHistoryTest {
-    private PacketHistory history;
-    private Packet packet;
-    public PacketHistoryTest() {
-        byte[] data = PacketUtils.createServerPacket((byte) 0, new int[64], new int[64], new int[64]);
-        packet = new Packet(java.util.Calendar.getInstance(), data);
-        history = new PacketHistory();
+    /**
+     * Test that a full history discards its oldest packets first.
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        PacketHistory small = new PacketHistory(3);
+        
+        for (int i = 0; i < 5; i++) {
+            small.add(new Packet(1000 + i, PacketUtils.createServerPacket(
+                    (byte) i, new int[64], new int[64], new int[64])));
+        }
+        
+        PacketHistory.Snapshot snapshot = small.snapshot();
+        assertEquals(3, small.size());
+        assertEquals(3, snapshot.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1002 + i, snapshot.getEpoch(i));
+            assertEquals(1002 + i, snapshot.get(i).getEpochNanos());
+            assertEquals(2 + i, snapshot.get(i).getData()[Constants.SERVER_ID_INDEX]);
+        }
+        
+        // Packets overwritten after the snapshot was taken are reported missing
+        small.add(new Packet(2000, PacketUtils.createServerPacket(
+                (byte) 5, new int[64], new int[64], new int[64])));
+        assertEquals(PacketHistory.MISSING, snapshot.getEpoch(0));
+        assertNull(snapshot.get(0));
+        assertEquals(1003, snapshot.getEpoch(1));
+        
+        small.clear();
+        assertEquals(0, small.size());
+        assertEquals(0, small.snapshot().size());
+    }
+
+    /**
+     * Test that readers only ever see whole packets while a writer keeps
+     * wrapping around the history.
+     */
+    @Test
+    public void testConcurrentSnapshots() throws InterruptedException {
+        System.out.println("concurrentSnapshots");
+        final PacketHistory small = new PacketHistory(64);
+        final byte[] frame = new byte[Constants.SERVER_PACKET_SIZE];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 200000; i++) {
+                    // Every byte of the frame matches the low byte of the epoch
+                    Arrays.fill(frame, (byte) i);
+                    small.add(i, ByteBuffer.wrap(frame));
+                }
+            }
+        });
+        byte[] data = new byte[Constants.SERVER_PACKET_SIZE];
+        PacketHistory.Snapshot snapshot;
+        long epoch;
+        
+        writer.start();
+        while (writer.isAlive()) {
+            snapshot = small.snapshot();
+            for (int i = 0; i < snapshot.size(); i++) {
+                epoch = snapshot.getData(i, data);
+                if (epoch != PacketHistory.MISSING) {
+                    for (byte b : data) {
+                        assertEquals((byte) epoch, b);
+                    }
+                }
+            }
+        }
+        writer.join();
+        assertEquals(64, small.size());
+        assertEquals(199999, small.snapshot().getEpoch(63));
+    }
+
+    /**
+     * Test that histories sharing a memory budget stop growing once it is
+     * spent and keep their newest packets.
+     */
+    @Test
+    public void testBudget() {
+        System.out.println("budget");
+        HistoryBudget budget = new HistoryBudget(3 * 256 * PacketHistory.SLOT_SIZE);
+        PacketHistory first = new PacketHistory(1000, budget);
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+        
+        assertEquals(256 * PacketHistory.SLOT_SIZE, budget.getReserved());
+        for (int i = 0; i < 1000; i++) {
+            first.add(i, frame);
+        }
+        assertEquals(768, first.capacity());
+        assertEquals(768, first.size());
+        assertEquals(232, first.snapshot().getEpoch(0));
+        assertEquals(999, first.snapshot().getEpoch(767));
+        assertEquals(budget.getLimit(), budget.getReserved());
+        
+        // A history created past the budget still keeps its first segment
+        PacketHistory second = new PacketHistory(1000, budget);
+        for (int i = 0; i < 300; i++) {
+            second.add(i, frame);
+        }
+        assertEquals(256, second.capacity());
+        assertEquals(299, second.snapshot().getEpoch(255));
+        assertEquals(4 * 256 * PacketHistory.SLOT_SIZE, budget.getReserved());
+        
+        // Without a budget a history grows to its full capacity
+        PacketHistory unlimited = new PacketHistory(1000);
+        for (int i = 0; i < 1500; i++) {
+            unlimited.add(i, frame);
+        }
+        assertEquals(1000, unlimited.size());
+        assertEquals(500, unlimited.snapshot().getEpoch(0));
+    }
+
+    /**
+     * Test of the time lookups, of class PacketHistory.
+     */
+    @Test
+    public void testTimeIndex() {
+        System.out.println("timeIndex");
+        PacketHistory small = new PacketHistory(100);
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+        
+        // 150 packets 10 ns apart, the first 50 overwritten
+        for (int i = 0; i < 150; i++) {
+            small.add(10 * i, frame);
+        }
+        
+        PacketHistory.Snapshot snapshot = small.snapshot();
+        assertEquals(0, snapshot.indexOf(0));
+        assertEquals(0, snapshot.indexOf(500));
+        assertEquals(1, snapshot.indexOf(501));
+        assertEquals(100, snapshot.indexOf(5000));
+        
+        assertEquals(10, small.countBetween(600, 700));
+        assertEquals(100, small.countBetween(0, 5000));
+        assertEquals(0, small.countBetween(700, 600));
+        
+        PacketHistory.Snapshot range = small.range(605, 655);
+        assertEquals(5, range.size());
+        assertEquals(610, range.getEpoch(0));
+        assertEquals(650, range.getEpoch(4));
+        assertEquals(0, small.range(2000, 3000).size());
+        
+        assertEquals(500, small.nearest(0).getEpochNanos());
+        assertEquals(1010, small.nearest(1014).getEpochNanos());
+        assertEquals(1010, small.nearest(1015).getEpochNanos());
+        assertEquals(1020, small.nearest(1016).getEpochNanos());
+        assertEquals(1490, small.nearest(9999).getEpochNanos());
+        assertNull(new PacketHistory(4).nearest(0));
+        
+        // Overwriting the oldest packets keeps the lookups sorted
+        small.add(1500, frame);
+        assertEquals(1, snapshot.indexOf(505));
+        assertEquals(1, snapshot.nearest(505));
     }
 
     /**
-     * Test of getBuffer method, of class PacketHistory.
+     * Test of the time lookups when packets are added out of time order, as
+     * when a file is loaded on top of live packets.
      */
     @Test
-    public void testGetBuffer() {
-        System.out.println("getBuffer");
-        assertNull(history.getBuffer());
-        history.add(packet);
-        assertNotNull(history.getBuffer());
-        assertNull(history.getBuffer());
-        history.add(packet);
-        assertNotNull(history.getBuffer());
-        assertNull(history.getBuffer());
+    public void testUnsortedTimeIndex() {
+        System.out.println("unsortedTimeIndex");
+        PacketHistory small = new PacketHistory(100);
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+        long[] epochs = {100, 200, 300, 10, 20};
+        
+        for (long epoch : epochs) {
+            small.add(epoch, frame);
+        }
+        
+        assertEquals(2, small.countBetween(0, 50));
+        assertEquals(1, small.countBetween(150, 250));
+        assertEquals(5, small.countBetween(0, 1000));
+        
+        PacketHistory.Snapshot snapshot = small.snapshot();
+        assertEquals(5, snapshot.size());
+        assertEquals(10, snapshot.getEpoch(0));
+        assertEquals(300, snapshot.getEpoch(4));
+        assertEquals(3, snapshot.getSequence(0));
+        assertEquals(2, snapshot.indexOf(100));
+        
+        PacketHistory.Snapshot range = small.range(15, 250);
+        assertEquals(3, range.size());
+        assertEquals(20, range.getEpoch(0));
+        assertEquals(200, range.getEpoch(2));
+        assertEquals(1, range.range(100, 101).size());
+        
+        assertEquals(10, small.nearest(0).getEpochNanos());
+        assertEquals(20, small.nearest(40).getEpochNanos());
+        assertEquals(100, small.nearest(80).getEpochNanos());
+        
+        // Once the packets out of order are overwritten the history is sorted
+        // again
+        PacketHistory tiny = new PacketHistory(2);
+        for (long epoch : epochs) {
+            tiny.add(epoch, frame);
+        }
+        assertEquals(2, tiny.countBetween(0, 50));
+        tiny.add(30, frame);
+        tiny.add(40, frame);
+        assertEquals(0, tiny.countBetween(0, 25));
+        assertEquals(30, tiny.snapshot().getEpoch(0));
     }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import kip.utils.PacketUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class RealTimeFeedTest {
+    
+    private static Packet createPacket(int amplitude) {
+        int[] voltage = new int[64];
+        int[] current = new int[64];
+        
+        for (int i = 0; i < 64; i++) {
+            voltage[i] = 512 + (int) (300 * Math.sin(2 * Math.PI * 2 * i / 64));
+            current[i] = 512 + (int) (amplitude * Math.sin(2 * Math.PI * 2 * i / 64));
+        }
+        return new Packet(0L, PacketUtils.createServerPacket((byte) 1, voltage, current, current));
+    }
+
+    /**
+     * Test that every packet of a frame is folded into its mean and maximum.
+     */
+    @Test
+    public void testDrain() {
+        System.out.println("drain");
+        RealTimeFeed feed = new RealTimeFeed(null);
+        Packet low = createPacket(100);
+        Packet high = createPacket(400);
+        RealTimeFeed.Frame frame;
+        
+        feed.packetReceived(low);
+        feed.packetReceived(high);
+        feed.packetReceived(low);
+        frame = feed.drain();
+        
+        assertEquals(3, frame.getPackets());
+        assertTrue(frame.has(RealTimeFeed.CURRENT));
+        assertEquals((2 * low.getCurrentCh1() + high.getCurrentCh1()) / 3,
+                     frame.getMean(RealTimeFeed.CURRENT), 1e-9);
+        assertEquals(high.getCurrentCh1(), frame.getMax(RealTimeFeed.CURRENT), 1e-9);
+        assertEquals(high.getWatts(), frame.getMax(RealTimeFeed.WATTS), 1e-9);
+        
+        // Draining starts a new, empty frame
+        frame = feed.drain();
+        assertEquals(0, frame.getPackets());
+        assertFalse(frame.has(RealTimeFeed.FREQUENCY));
+        assertEquals(0.0, frame.getMean(RealTimeFeed.WATTS), 0);
+    }
+}
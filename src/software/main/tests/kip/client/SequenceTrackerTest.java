@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class SequenceTrackerTest {
+
+    /**
+     * Test that gaps count as missing and late packets as reordered.
+     */
+    @Test
+    public void testTrack() {
+        System.out.println("track");
+        SequenceTracker tracker = new SequenceTracker();
+        
+        // Unnumbered packets are ignored
+        tracker.track(0);
+        assertEquals(0, tracker.getNumbered());
+        
+        for (int sequence : new int[] {5005, 5006, 5007, 5010, 5008, 5011, 5012}) {
+            tracker.track(sequence);
+        }
+        assertEquals(7, tracker.getNumbered());
+        assertEquals(1, tracker.getMissing());
+        assertEquals(1, tracker.getReordered());
+        
+        // A board counting again from the start, further back than any reordering
+        tracker.track(1);
+        tracker.track(2);
+        assertEquals(1, tracker.getRestarts());
+        assertEquals(1, tracker.getMissing());
+    }
+
+    /**
+     * Test that wrapping around past the skipped 0 is not counted as a loss.
+     */
+    @Test
+    public void testWrap() {
+        System.out.println("wrap");
+        SequenceTracker tracker = new SequenceTracker();
+        
+        tracker.track(-2);
+        tracker.track(-1);
+        tracker.track(1);
+        tracker.track(2);
+        assertEquals(0, tracker.getMissing());
+        
+        // -1 lost at the wrap, then 1 arrives after 2
+        tracker = new SequenceTracker();
+        tracker.track(-2);
+        tracker.track(2);
+        tracker.track(1);
+        assertEquals(1, tracker.getMissing());
+        assertEquals(1, tracker.getReordered());
+        assertEquals(0, tracker.getRestarts());
+    }
+
+    /**
+     * Test that late packets only count as reordered when they fill a gap.
+     */
+    @Test
+    public void testDuplicates() {
+        System.out.println("duplicates");
+        SequenceTracker tracker = new SequenceTracker();
+        
+        for (int sequence : new int[] {10, 13, 11, 11, 13, 9}) {
+            tracker.track(sequence);
+        }
+        assertEquals(1, tracker.getMissing());
+        assertEquals(1, tracker.getReordered());
+        assertEquals(3, tracker.getDuplicates());
+        assertEquals(0, tracker.getRestarts());
+        
+        // The last gap filled, then filled again
+        tracker.track(12);
+        tracker.track(12);
+        assertEquals(0, tracker.getMissing());
+        assertEquals(2, tracker.getReordered());
+        assertEquals(4, tracker.getDuplicates());
+    }
+
+    /**
+     * Test that a board counting again from within the reorder window is a
+     * restart, not a run of reordered packets.
+     */
+    @Test
+    public void testNearRestart() {
+        System.out.println("nearRestart");
+        SequenceTracker tracker = new SequenceTracker();
+        
+        for (int sequence = 1; sequence <= 500; sequence++) {
+            tracker.track(sequence);
+        }
+        tracker.track(1);
+        tracker.track(2);
+        tracker.track(3);
+        assertEquals(1, tracker.getRestarts());
+        assertEquals(0, tracker.getReordered());
+        assertEquals(0, tracker.getDuplicates());
+        assertEquals(0, tracker.getMissing());
+        
+        // Counting again from a number other than 1
+        for (int sequence = 4; sequence <= 500; sequence++) {
+            tracker.track(sequence);
+        }
+        tracker.track(200);
+        tracker.track(201);
+        tracker.track(202);
+        assertEquals(2, tracker.getRestarts());
+        assertEquals(0, tracker.getReordered());
+        assertEquals(0, tracker.getDuplicates());
+        assertEquals(0, tracker.getMissing());
+    }
+}
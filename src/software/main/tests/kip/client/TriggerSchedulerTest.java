@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class TriggerSchedulerTest {
+    
+    private static void await(TriggerJob job) throws InterruptedException {
+        for (int i = 0; i < 500 && !job.isDone(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isDone());
+    }
+
+    /**
+     * Test that a fast run sends every trigger it does not report missed.
+     */
+    @Test
+    public void testFixedRate() throws Exception {
+        System.out.println("fixedRate");
+        TriggerScheduler scheduler = new TriggerScheduler(2);
+        DatagramChannel board = DatagramChannel.open();
+        DatagramChannel client = DatagramChannel.open();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        int received = 0;
+        
+        board.bind(new InetSocketAddress("localhost", 0));
+        board.configureBlocking(false);
+        
+        TriggerJob job = scheduler.schedule(client, board.getLocalAddress(), 2000, 200, null);
+        assertEquals(500000, job.getPeriod());
+        await(job);
+        assertEquals(200, job.getSent() + job.getMissed() + job.getOverrun());
+        assertTrue(job.getMaxJitter() >= job.getMeanJitter());
+        
+        while (board.receive(buffer) != null) {
+            buffer.clear();
+            received++;
+        }
+        assertEquals(job.getSent(), received);
+        assertTrue(scheduler.getJobs().isEmpty());
+        
+        scheduler.shutdown();
+        board.close();
+        client.close();
+    }
+
+    /**
+     * Test that many boards are polled at once by a couple of threads and that
+     * an endless run stops when cancelled.
+     */
+    @Test
+    public void testManyJobs() throws Exception {
+        System.out.println("manyJobs");
+        TriggerScheduler scheduler = new TriggerScheduler(2);
+        DatagramChannel client = DatagramChannel.open();
+        InetSocketAddress target = new InetSocketAddress("localhost", 9);
+        List<TriggerJob> jobs = new ArrayList<TriggerJob>();
+        
+        for (int i = 0; i < 100; i++) {
+            jobs.add(scheduler.schedule(client, target, 50 + i, 10, null));
+        }
+        TriggerJob endless = scheduler.schedule(client, target, 100, -1, null);
+        for (TriggerJob job : jobs) {
+            await(job);
+            assertEquals(10, job.getSent() + job.getMissed() + job.getOverrun());
+        }
+        assertFalse(endless.isDone());
+        assertEquals(1, scheduler.getJobs().size());
+        endless.cancel();
+        assertTrue(endless.isDone());
+        assertTrue(scheduler.getJobs().isEmpty());
+        
+        try {
+            scheduler.schedule(client, target, 0, 1, null);
+            fail("A rate of 0 should be refused");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        
+        scheduler.shutdown();
+        client.close();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import kip.utils.Constants;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class CaptureReaderTest {
+    private static final int RECORDS = 3000;
+    
+    /**
+     * Writes a capture where record i is stamped 10 * i and every byte of its
+     * frame is the low byte of i
+     */
+    private File writeCapture() throws IOException {
+        File file = File.createTempFile("kip", CaptureFormat.EXTENSION);
+        CaptureWriter writer = new CaptureWriter(file);
+        byte[] frame = new byte[Constants.SERVER_PACKET_SIZE];
+        
+        file.deleteOnExit();
+        for (int i = 0; i < RECORDS; i++) {
+            Arrays.fill(frame, (byte) i);
+            writer.write(10L * i, frame);
+        }
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Test that records read back as written, by ordinal and by time.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("roundTrip");
+        File file = writeCapture();
+        CaptureReader reader = new CaptureReader(file);
+        byte[] data = new byte[Constants.SERVER_PACKET_SIZE];
+        
+        assertEquals(RECORDS, reader.size());
+        assertTrue(reader.isSorted());
+        assertEquals(20000, reader.getEpoch(2000));
+        assertEquals(20000, reader.getData(2000, data));
+        assertEquals((byte) 2000, data[Constants.SERVER_PACKET_SIZE - 1]);
+        assertEquals((byte) 7, reader.getFrame(7).get(0));
+        assertEquals(Constants.SERVER_PACKET_SIZE, reader.getFrame(7).remaining());
+        assertEquals(70, reader.get(7).getEpochNanos());
+        
+        assertEquals(0, reader.indexOf(-5));
+        assertEquals(1025, reader.indexOf(10245));
+        assertEquals(1024, reader.indexOf(10240));
+        assertEquals(RECORDS - 1, reader.indexOf(10L * (RECORDS - 1)));
+        assertEquals(RECORDS, reader.indexOf(10L * RECORDS));
+        reader.close();
+    }
+
+    /**
+     * Test that a capture cut short keeps its complete records.
+     */
+    @Test
+    public void testTruncated() throws IOException {
+        System.out.println("truncated");
+        File file = writeCapture();
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.setLength(CaptureFormat.HEADER_SIZE + 1500L * CaptureFormat.RECORD_SIZE + 100);
+        raw.close();
+        
+        CaptureReader reader = new CaptureReader(file);
+        assertEquals(1500, reader.size());
+        assertTrue(reader.isSorted());
+        assertEquals(1100, reader.indexOf(10995));
+        reader.close();
+    }
+}
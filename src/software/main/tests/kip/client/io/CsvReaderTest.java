@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.io;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import kip.utils.Constants;
+import kip.utils.TimeUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class CsvReaderTest {
+    private File createFile(String contents) throws IOException {
+        File file = File.createTempFile("kip", ".csv");
+        FileWriter writer = new FileWriter(file);
+        
+        file.deleteOnExit();
+        writer.write(contents);
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Test that lines are parsed into time stamps and padded frames.
+     */
+    @Test
+    public void testNext() throws IOException {
+        System.out.println("next");
+        CsvReader reader = new CsvReader(createFile("1000,1,-2,127\r\n\n2000,-128\n3000"));
+        
+        assertTrue(reader.next());
+        assertEquals(TimeUtils.fromMillis(1000), reader.getEpoch());
+        assertEquals(Constants.SERVER_PACKET_SIZE, reader.getFrame().remaining());
+        assertEquals(-2, reader.getFrame().get(1));
+        assertEquals(127, reader.getFrame().get(2));
+        assertEquals(0, reader.getFrame().get(3));
+        assertTrue(reader.next());
+        assertEquals(TimeUtils.fromMillis(2000), reader.getEpoch());
+        assertEquals(-128, reader.getFrame().get(0));
+        assertEquals(0, reader.getFrame().get(1));
+        assertTrue(reader.next());
+        assertEquals(TimeUtils.fromMillis(3000), reader.getEpoch());
+        assertFalse(reader.next());
+        assertEquals(100, reader.getProgress());
+        reader.close();
+    }
+
+    /**
+     * Test that malformed lines are reported with their line number.
+     */
+    @Test
+    public void testMalformed() throws IOException {
+        System.out.println("malformed");
+        String[] bad = {"1000,1\n1000,128\n", "1000,1\n1000,,1\n", "1000,1\nabc\n", "1000,1\n1000;1\n"};
+        
+        for (String contents : bad) {
+            CsvReader reader = new CsvReader(createFile(contents));
+            assertTrue(reader.next());
+            try {
+                reader.next();
+                fail("Accepted " + contents);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().endsWith("line 2"));
+            }
+            reader.close();
+        }
+    }
+
+    /**
+     * Test that records written by CsvWriter within a time range read back
+     * unchanged.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("roundTrip");
+        File file = createFile("");
+        RecordSink sink = new TimeRangeFilter(new CsvWriter(file),
+                TimeUtils.fromMillis(1), TimeUtils.fromMillis(4));
+        byte[] frame = new byte[Constants.SERVER_PACKET_SIZE];
+        CsvReader reader;
+        
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < frame.length; j++) {
+                frame[j] = (byte) (i * j);
+            }
+            sink.write(TimeUtils.fromMillis(i), ByteBuffer.wrap(frame));
+        }
+        sink.close();
+        
+        reader = new CsvReader(file);
+        for (int i = 1; i < 4; i++) {
+            assertTrue(reader.next());
+            assertEquals(TimeUtils.fromMillis(i), reader.getEpoch());
+            for (int j = 0; j < frame.length; j++) {
+                assertEquals((byte) (i * j), reader.getFrame().get(j));
+            }
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.ui;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import javax.swing.JTree;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
+import javax.swing.tree.TreePath;
+import kip.client.Packet;
+import kip.client.PacketHistory;
+import kip.utils.Constants;
+import kip.utils.TimeUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class PacketTreeModelTest {
+    private final ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+    private int inserted = 0;
+    private int removed = 0;
+    private int changed = 0;
+    
+    /**
+     * Adds packets 250 ms apart starting at 2012-05-04 10:58:59.000
+     */
+    private void addPackets(PacketHistory history, int from, int count) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2012, Calendar.MAY, 4, 10, 58, 59);
+        
+        for (int i = from; i < from + count; i++) {
+            history.add(TimeUtils.fromMillis(calendar.getTimeInMillis() + 250L * i), frame);
+        }
+    }
+    
+    /**
+     * Follows the first child of each node down to the given depth
+     */
+    private Object descend(PacketTreeModel model, int depth) {
+        Object node = model.getRoot();
+        for (int i = 0; i < depth; i++) {
+            node = model.getChild(node, 0);
+        }
+        return node;
+    }
+
+    /**
+     * Test that packets are grouped into buckets of time.
+     */
+    @Test
+    public void testBuckets() {
+        System.out.println("buckets");
+        PacketHistory history = new PacketHistory(1000);
+        addPackets(history, 0, 12);
+        PacketTreeModel model = new PacketTreeModel(history, "Packets");
+        
+        assertEquals(1, model.getChildCount(model.getRoot()));
+        assertEquals("2012", descend(model, 1).toString());
+        assertEquals(Integer.toString(Calendar.MAY), descend(model, 2).toString());
+        assertEquals("4", descend(model, 3).toString());
+        
+        // 10:58:59 then 10:59:00 and 10:59:01
+        Object hour = descend(model, 4);
+        assertEquals(2, model.getChildCount(hour));
+        Object minute = model.getChild(hour, 1);
+        assertEquals("59", minute.toString());
+        assertEquals(2, model.getChildCount(minute));
+        
+        Object second = model.getChild(minute, 1);
+        assertEquals(4, model.getChildCount(second));
+        assertTrue(model.isLeaf(model.getChild(second, 3)));
+        assertEquals("750", model.getChild(second, 3).toString());
+        assertEquals(3, model.getIndexOfChild(second, model.getChild(second, 3)));
+        assertNotNull(model.getPacket(model.getChild(second, 3)));
+        assertNull(model.getPacket(second));
+    }
+
+    /**
+     * Test that refreshing reports new and dropped packets instead of
+     * rebuilding the tree.
+     */
+    @Test
+    public void testRefresh() {
+        System.out.println("refresh");
+        PacketHistory history = new PacketHistory(10);
+        addPackets(history, 0, 10);
+        PacketTreeModel model = new PacketTreeModel(history, "Packets");
+        model.addTreeModelListener(new TreeModelListener() {
+            @Override
+            public void treeNodesChanged(TreeModelEvent e) {
+            }
+
+            @Override
+            public void treeNodesInserted(TreeModelEvent e) {
+                inserted += e.getChildIndices().length;
+            }
+
+            @Override
+            public void treeNodesRemoved(TreeModelEvent e) {
+                removed += e.getChildIndices().length;
+            }
+
+            @Override
+            public void treeStructureChanged(TreeModelEvent e) {
+                changed++;
+            }
+        });
+        
+        // Show both minutes and the seconds of 10:59
+        Object hour = descend(model, 4);
+        assertEquals(2, model.getChildCount(hour));
+        Object minute = model.getChild(hour, 1);
+        assertEquals(2, model.getChildCount(minute));
+        Object last = model.getChild(minute, 1);
+        assertEquals(2, model.getChildCount(last));
+        
+        // Four more packets push out 10:58:59 and add to 10:59:01 and 10:59:02
+        addPackets(history, 10, 4);
+        model.refresh();
+        assertEquals(0, changed);
+        assertEquals(1, removed);
+        assertEquals(3, inserted);
+        assertEquals(1, model.getChildCount(hour));
+        assertEquals(3, model.getChildCount(minute));
+        assertEquals(4, model.getChildCount(last));
+        
+        history.clear();
+        model.refresh();
+        assertEquals(0, model.getChildCount(model.getRoot()));
+    }
+
+    /**
+     * Test that a selected packet pushed out of the history clears the
+     * selection without failing.
+     */
+    @Test
+    public void testEvictSelected() {
+        System.out.println("evictSelected");
+        PacketHistory history = new PacketHistory(10);
+        addPackets(history, 0, 10);
+        final PacketTreeModel model = new PacketTreeModel(history, "Packets");
+        final JTree tree = new JTree(model);
+        final List<Packet> selected = new ArrayList<Packet>();
+        
+        tree.addTreeSelectionListener(new TreeSelectionListener() {
+            @Override
+            public void valueChanged(TreeSelectionEvent e) {
+                selected.add(model.getPacket(tree.getLastSelectedPathComponent()));
+            }
+        });
+        
+        // Select the first packet, at 10:58:59.000
+        TreePath path = new TreePath(model.getRoot());
+        for (int i = 0; i < 7; i++) {
+            path = path.pathByAddingChild(model.getChild(path.getLastPathComponent(), 0));
+        }
+        tree.setSelectionPath(path);
+        assertNotNull(selected.get(0));
+        
+        addPackets(history, 10, 4);
+        model.refresh();
+        assertNull(tree.getLastSelectedPathComponent());
+        assertNull(selected.get(selected.size() - 1));
+        
+        history.clear();
+        model.refresh();
+        assertNull(model.getPacket(null));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.client.ui;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class PlotBufferTest {
+
+    /**
+     * Test that the running extremes match a scan of the points held.
+     */
+    @Test
+    public void testExtremes() {
+        System.out.println("extremes");
+        PlotBuffer buffer = new PlotBuffer(50);
+        Random random = new Random(42);
+        double min;
+        double max;
+        
+        assertTrue(Double.isNaN(buffer.getMaxY()));
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(i, random.nextInt(100));
+            min = Double.MAX_VALUE;
+            max = -Double.MAX_VALUE;
+            for (int j = 0; j < buffer.size(); j++) {
+                min = Math.min(min, buffer.getY(j));
+                max = Math.max(max, buffer.getY(j));
+            }
+            assertEquals(min, buffer.getMinY(), 0);
+            assertEquals(max, buffer.getMaxY(), 0);
+        }
+        assertEquals(50, buffer.size());
+        assertEquals(950, buffer.getMinX());
+        assertEquals(999, buffer.getMaxX());
+        
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        buffer.add(5, 1.5);
+        assertEquals(1.5, buffer.getMinY(), 0);
+        assertEquals(1.5, buffer.getMaxY(), 0);
+    }
+
+    /**
+     * Test that decimating keeps every peak and the order of the points.
+     */
+    @Test
+    public void testDecimate() {
+        System.out.println("decimate");
+        PlotBuffer buffer = new PlotBuffer(100000);
+        long[] xs = new long[200];
+        double[] ys = new double[200];
+        int count;
+        
+        for (int i = 0; i < 100000; i++) {
+            buffer.add(i, i == 31337 ? 1000 : (i == 77777 ? -1000 : i % 10));
+        }
+        count = buffer.decimate(100, xs, ys);
+        assertTrue(count <= 200);
+        assertEquals(0, xs[0]);
+        for (int i = 1; i < count; i++) {
+            assertTrue(xs[i] > xs[i - 1]);
+        }
+        assertEquals(1000, max(ys, count), 0);
+        assertEquals(-1000, -max(negate(ys, count), count), 0);
+        
+        // Few points are copied unchanged
+        buffer = new PlotBuffer(10);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(i, i);
+        }
+        assertEquals(5, buffer.decimate(100, xs, ys));
+        assertEquals(4, ys[4], 0);
+    }
+    
+    private static double max(double[] values, int count) {
+        double max = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+    
+    private static double[] negate(double[] values, int count) {
+        double[] negated = new double[count];
+        for (int i = 0; i < count; i++) {
+            negated[i] = -values[i];
+        }
+        return negated;
+    }
+}
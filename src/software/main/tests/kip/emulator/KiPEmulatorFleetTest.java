@@ -0,0 +1,226 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.emulator;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import kip.utils.CommandFrames;
+import kip.utils.Constants;
+import kip.utils.PacketUtils;
+import kip.utils.PacketValidator;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class KiPEmulatorFleetTest {
+    private static final int FIRST_PORT = 42000 + new Random().nextInt(10000);
+
+    /**
+     * Test that every board answers triggers and streams valid frames with its
+     * own id.
+     */
+    @Test
+    public void testSend() throws Exception {
+        System.out.println("send");
+        KiPEmulatorFleet fleet = new KiPEmulatorFleet(3, FIRST_PORT, (byte) 10, 2);
+        DatagramChannel client = DatagramChannel.open();
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+        int[] counts = new int[3];
+
+        try {
+            client.bind(new InetSocketAddress("localhost", 0));
+            fleet.start();
+            
+            // Only triggered boards answer while no stream is set
+            client.send(ByteBuffer.wrap(PacketUtils.createClientPacket(Constants.CLIENT_CMD_TRIGGER,
+                    (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0)),
+                        new InetSocketAddress("localhost", FIRST_PORT + 1));
+            client.receive(frame);
+            frame.flip();
+            assertEquals(PacketValidator.Reason.VALID, PacketValidator.check(frame, Constants.SERVER_PACKET));
+            assertEquals(11, frame.get(Constants.SERVER_ID_INDEX));
+            assertEquals(1, fleet.getStatistics().getCommands());
+            
+            fleet.setRate(100);
+            fleet.setClient(client.getLocalAddress());
+            for (int i = 0; i < 30; i++) {
+                frame.clear();
+                client.receive(frame);
+                frame.flip();
+                assertEquals(PacketValidator.Reason.VALID, PacketValidator.check(frame, Constants.SERVER_PACKET));
+                counts[frame.get(Constants.SERVER_ID_INDEX) - 10]++;
+            }
+            for (int count : counts) {
+                assertTrue(count > 0);
+            }
+        } finally {
+            fleet.shutdown();
+            client.close();
+        }
+    }
+
+    /**
+     * Test that a board streams numbered frames once told to and stops when
+     * told to.
+     */
+    @Test
+    public void testStream() throws Exception {
+        System.out.println("stream");
+        KiPEmulatorFleet fleet = new KiPEmulatorFleet(1, FIRST_PORT + 20, (byte) 1, 1);
+        DatagramChannel client = DatagramChannel.open();
+        InetSocketAddress board = new InetSocketAddress("localhost", FIRST_PORT + 20);
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+        int last = 0;
+
+        try {
+            client.bind(new InetSocketAddress("localhost", 0));
+            fleet.start();
+            client.send(CommandFrames.startStream(500), board);
+            for (int i = 0; i < 20; i++) {
+                frame.clear();
+                client.receive(frame);
+                assertEquals(PacketUtils.nextSequence(last), frame.getInt(Constants.SERVER_SEQUENCE_INDEX));
+                last = frame.getInt(Constants.SERVER_SEQUENCE_INDEX);
+            }
+            
+            client.send(CommandFrames.stopStream(), board);
+            Thread.sleep(100);
+            long sent = fleet.getStatistics().getSent();
+            Thread.sleep(100);
+            assertEquals(sent, fleet.getStatistics().getSent());
+        } finally {
+            fleet.shutdown();
+            client.close();
+        }
+    }
+
+    /**
+     * Test that corrupted frames fail validation and lost frames are not sent.
+     */
+    @Test
+    public void testFaults() throws Exception {
+        System.out.println("faults");
+        KiPEmulatorFleet fleet = new KiPEmulatorFleet(1, FIRST_PORT + 10, (byte) 1, 1);
+        DatagramChannel client = DatagramChannel.open();
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+
+        try {
+            client.bind(new InetSocketAddress("localhost", 0));
+            fleet.setRate(200);
+            fleet.setFaults(0, 0, 1);
+            fleet.setClient(client.getLocalAddress());
+            fleet.start();
+            for (int i = 0; i < 10; i++) {
+                frame.clear();
+                client.receive(frame);
+                frame.flip();
+                assertNotSame(PacketValidator.Reason.VALID,
+                              PacketValidator.check(frame, Constants.SERVER_PACKET));
+            }
+            
+            fleet.setFaults(1, 0, 0);
+            Thread.sleep(100);
+            long sent = fleet.getStatistics().getSent();
+            Thread.sleep(100);
+            assertEquals(sent, fleet.getStatistics().getSent());
+            assertTrue(fleet.getStatistics().getLost() > 0);
+            assertTrue(fleet.getStatistics().getCorrupted() >= 10);
+        } finally {
+            fleet.shutdown();
+            client.close();
+        }
+    }
+
+    /**
+     * Test that a bit flipped in one frame does not carry over into the next.
+     */
+    @Test
+    public void testCorruptionDoesNotPersist() throws Exception {
+        System.out.println("corruptionDoesNotPersist");
+        EmulatedBoard board = new EmulatedBoard(FIRST_PORT + 30, (byte) 1, 1);
+        FleetStatistics statistics = new FleetStatistics();
+        DatagramChannel client = DatagramChannel.open();
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+
+        try {
+            client.bind(new InetSocketAddress("localhost", 0));
+            client.configureBlocking(false);
+            board.setClient(client.getLocalAddress());
+            
+            // Enough flips that the bytes no field writes are all but sure to
+            // be hit
+            for (int i = 0; i < 500; i++) {
+                board.send(0, 0, 1, statistics);
+                while (client.receive(frame) != null) {
+                    frame.clear();
+                }
+            }
+            
+            board.send(0, 0, 0, statistics);
+            while (client.receive(frame) == null) {
+                Thread.sleep(1);
+            }
+            frame.flip();
+            assertEquals(PacketValidator.Reason.VALID, PacketValidator.check(frame, Constants.SERVER_PACKET));
+            assertEquals(0, frame.get(Constants.SERVER_DELAY_INDEX_HIGH));
+            assertEquals(0, frame.get(Constants.SERVER_DELAY_INDEX_LOW));
+            for (int i = Constants.SERVER_SEQUENCE_INDEX + 4; i <= Constants.SERVER_RESERVED_END_INDEX; i++) {
+                assertEquals(0, frame.get(i));
+            }
+        } finally {
+            board.close();
+            client.close();
+        }
+    }
+
+    /**
+     * Test that send errors are counted and do not stop the sender.
+     */
+    @Test
+    public void testSendErrors() throws Exception {
+        System.out.println("sendErrors");
+        KiPEmulatorFleet fleet = new KiPEmulatorFleet(1, FIRST_PORT + 40, (byte) 1, 1);
+        DatagramChannel client = DatagramChannel.open();
+        ByteBuffer frame = ByteBuffer.allocate(Constants.SERVER_PACKET_SIZE);
+
+        try {
+            client.bind(new InetSocketAddress("localhost", 0));
+            fleet.setRate(200);
+            fleet.setClient(InetSocketAddress.createUnresolved("unknown.invalid", 4445));
+            fleet.start();
+            Thread.sleep(100);
+            assertTrue(fleet.getStatistics().getErrors() > 0);
+            assertEquals(0, fleet.getStatistics().getSent());
+            
+            fleet.setClient(client.getLocalAddress());
+            client.receive(frame);
+            frame.flip();
+            assertEquals(PacketValidator.Reason.VALID, PacketValidator.check(frame, Constants.SERVER_PACKET));
+        } finally {
+            fleet.shutdown();
+            client.close();
+        }
+    }
+}
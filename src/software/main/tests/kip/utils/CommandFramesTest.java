@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class CommandFramesTest {
+
+    /**
+     * Test that cached frames match freshly built packets.
+     */
+    @Test
+    public void testGet() {
+        System.out.println("get");
+        byte[] expected = PacketUtils.createClientPacket(Constants.CLIENT_CMD_TRIGGER, (byte) 0,
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0);
+        ByteBuffer frame = CommandFrames.trigger();
+        byte[] data = new byte[frame.remaining()];
+        
+        frame.get(data);
+        assertTrue(Arrays.equals(expected, data));
+        assertTrue(PacketUtils.isValidPacket(data, Constants.CLIENT_PACKET));
+        assertTrue(frame.isReadOnly());
+        assertTrue(frame.isDirect());
+        
+        // Each caller reads its own view
+        assertEquals(Constants.CLIENT_PACKET_SIZE, CommandFrames.trigger().remaining());
+        assertEquals(Constants.CLIENT_CMD_RESET,
+                     CommandFrames.reset().get(Constants.CLIENT_COMMAND_INDEX));
+        assertEquals(Arrays.toString(expected), CommandFrames.toString(CommandFrames.trigger()));
+    }
+
+    /**
+     * Test that the stream rate survives the start stream frame.
+     */
+    @Test
+    public void testStartStream() {
+        System.out.println("startStream");
+        ByteBuffer frame = CommandFrames.startStream(1000);
+        
+        assertEquals(PacketValidator.Reason.VALID, PacketValidator.check(frame, Constants.CLIENT_PACKET));
+        assertEquals(Constants.CLIENT_CMD_START_STREAM, frame.get(Constants.CLIENT_COMMAND_INDEX));
+        assertEquals(1000, CommandFrames.getStreamRate(frame));
+        assertEquals(65535, CommandFrames.getStreamRate(CommandFrames.startStream(65535)));
+        assertEquals(Constants.CLIENT_CMD_STOP_STREAM,
+                     CommandFrames.stopStream().get(Constants.CLIENT_COMMAND_INDEX));
+        
+        try {
+            CommandFrames.startStream(0);
+            fail("Rate of 0 accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
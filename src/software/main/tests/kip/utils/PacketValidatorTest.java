@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Christe, Anthony
+ * 
+ * This file is part of KiP.
+ *
+ * KiP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * KiP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package kip.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Christe, Anthony
+ */
+public class PacketValidatorTest {
+
+    /**
+     * Test that summing eight bytes at a time matches summing each byte.
+     */
+    @Test
+    public void testSumWords() {
+        System.out.println("sumWords");
+        Random random = new Random(7);
+        
+        for (int length = 0; length < 2100; length += 13) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length + 3);
+            buffer.position(3);
+            buffer.put(data);
+            buffer.position(3);
+            assertEquals(PacketValidator.sum(data), PacketValidator.sumWords(buffer));
+            assertEquals(3, buffer.position());
+        }
+        
+        // Every byte at its largest value fills the lanes fastest
+        byte[] ones = new byte[4096];
+        java.util.Arrays.fill(ones, (byte) 0xFF);
+        assertEquals(PacketValidator.sum(ones), PacketValidator.sumWords(ByteBuffer.wrap(ones)));
+    }
+
+    /**
+     * Test that each kind of damage is reported and counted.
+     */
+    @Test
+    public void testValidate() {
+        System.out.println("validate");
+        PacketValidator validator = new PacketValidator();
+        byte[] valid = PacketUtils.createServerPacket((byte) 1, new int[64], new int[64], new int[64]);
+        byte[] header = valid.clone();
+        byte[] footer = valid.clone();
+        byte[] checksum = valid.clone();
+        
+        header[Constants.SERVER_HEADER_INDEX]++;
+        footer[Constants.SERVER_FOOTER_INDEX]++;
+        checksum[Constants.SERVER_CHECKSUM_INDEX]++;
+        
+        for (int i = 0; i < 2; i++) {
+            assertEquals(PacketValidator.Reason.VALID, validator.validate(valid, Constants.SERVER_PACKET));
+            assertEquals(PacketValidator.Reason.HEADER, validator.validate(header, Constants.SERVER_PACKET));
+            assertEquals(PacketValidator.Reason.FOOTER, validator.validate(footer, Constants.SERVER_PACKET));
+            assertEquals(PacketValidator.Reason.CHECKSUM, validator.validate(checksum, Constants.SERVER_PACKET));
+            assertEquals(PacketValidator.Reason.VALID, validator.validate(ByteBuffer.wrap(valid), Constants.SERVER_PACKET));
+            assertEquals(PacketValidator.Reason.CHECKSUM, validator.validate(ByteBuffer.wrap(checksum), Constants.SERVER_PACKET));
+        }
+        assertEquals(PacketValidator.Reason.LENGTH, validator.validate(new byte[10], Constants.SERVER_PACKET));
+        assertEquals(PacketValidator.Reason.LENGTH, validator.validate(ByteBuffer.wrap(valid, 0, 100), Constants.SERVER_PACKET));
+        assertEquals(PacketValidator.Reason.TYPE, validator.validate(valid, 5));
+        
+        assertEquals(4, validator.getCount(PacketValidator.Reason.VALID));
+        assertEquals(4, validator.getCount(PacketValidator.Reason.CHECKSUM));
+        assertEquals(2, validator.getCount(PacketValidator.Reason.LENGTH));
+        assertEquals(11, validator.getInvalid());
+        
+        byte[] client = PacketUtils.createClientPacket(Constants.CLIENT_CMD_TRIGGER, (byte) 0, (byte) 0,
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0, (byte) 0);
+        assertEquals(PacketValidator.Reason.VALID, PacketValidator.check(ByteBuffer.wrap(client), Constants.CLIENT_PACKET));
+    }
+}
@@ -19,6 +19,9 @@
 
 package kip.utils;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import kip.emulator.KiPEmulator;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -55,19 +58,121 @@ public class PowerUtilsTest {
         assertEquals(expResult, result, 0.5);
     }
 
+    /**
+     * Test of analyze method, of class PowerUtils.
+     * 
+     * The single pass analysis has to agree with decoding the packet and
+     * running the individual peak and frequency methods on each data source.
+     */
+    @Test
+    public void testAnalyze() {
+        System.out.println("analyze");
+        DACAnalysis analysis = new DACAnalysis();
+        int[][] expected;
+        byte[] data;
+        double rms;
+        
+        for (int amp = 0; amp < 1000; amp += 37) {
+            data = PacketUtils.createServerPacket((byte) 0,
+                                                  KiPEmulator.generateSineWave(amp, 0),
+                                                  KiPEmulator.generateSineWave(amp / 2, 90),
+                                                  KiPEmulator.generateSineWave(amp / 3, 270));
+            expected = PacketUtils.getDACMeasurements(data);
+            PowerUtils.analyze(ByteBuffer.wrap(data), analysis);
+            
+            for (int ch = 0; ch < DACAnalysis.CHANNELS; ch++) {
+                assertArrayEquals(expected[ch], analysis.getSamples(ch));
+                assertEquals(PacketUtils.getMaxDACValue(data, ch), analysis.getPeak(ch));
+                assertEquals(PowerUtils.getFrequency(expected[ch]), analysis.getFrequency(ch), 0.0);
+                
+                rms = 0;
+                for (int sample : expected[ch]) {
+                    rms += sample * sample;
+                }
+                assertEquals(Math.sqrt(rms / expected[ch].length), analysis.getRms(ch), 1e-9);
+            }
+        }
+        
+        // Full scale samples overflow an int when squared
+        int[] full = new int[Constants.SERVER_SAMPLES_PER_CH];
+        Arrays.fill(full, 0xFFFF);
+        PowerUtils.analyze(ByteBuffer.wrap(PacketUtils.createServerPacket((byte) 0, full, full, full)),
+                           analysis);
+        assertEquals(0xFFFF, analysis.getRms(0), 1e-9);
+    }
+
     /**
      * Test of voltageTransform method, of class PowerUtils.
+     * 
+     * The transform has to agree with a direct evaluation of the discrete
+     * Fourier transform, and a sine wave falling on a bin has to show its
+     * amplitude and phase in that bin.
      */
-    /*
     @Test
     public void testVoltageTransform() {
         System.out.println("voltageTransform");
-        int[] samples = null;
-        double[] expResult = null;
-        double[] result = PowerUtils.voltageTransform(samples);
-        //assertArrayEquals(expResult, result);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        int n = Constants.SERVER_SAMPLES_PER_CH;
+        int[] samples = KiPEmulator.generateSineWave(700, 30);
+        Spectrum result = PowerUtils.voltageTransform(samples);
+        double re;
+        double im;
+        
+        for (int k = 0; k < Spectrum.BINS; k++) {
+            re = 0;
+            im = 0;
+            for (int i = 0; i < n; i++) {
+                re += samples[i] * Math.cos(2 * Math.PI * k * i / n);
+                im -= samples[i] * Math.sin(2 * Math.PI * k * i / n);
+            }
+            assertEquals(re, result.getReal(k), 1e-6);
+            assertEquals(im, result.getImaginary(k), 1e-6);
+        }
+        
+        for (int i = 0; i < n; i++) {
+            samples[i] = (int) Math.round(500 + 300 * Math.cos(2 * Math.PI * 5 * i / n + 0.5));
+        }
+        RealFFT.transform(samples, result);
+        assertEquals(500, result.getMagnitude(0), 0.5);
+        assertEquals(300, result.getMagnitude(5), 0.5);
+        assertEquals(0.5, result.getPhase(5), 0.01);
+        assertEquals(0, result.getMagnitude(6), 0.5);
+    }
+
+    /**
+     * Test of analyzeHarmonics method, of class PowerUtils.
+     */
+    @Test
+    public void testAnalyzeHarmonics() {
+        System.out.println("analyzeHarmonics");
+        int n = Constants.SERVER_SAMPLES_PER_CH;
+        int[] voltage = new int[n];
+        int[] current = new int[n];
+        double angle;
+        
+        // Fundamental at bin 4 with a 10% third harmonic on the voltage and a
+        // current lagging by 60 degrees
+        for (int i = 0; i < n; i++) {
+            angle = 2 * Math.PI * 4 * i / n;
+            voltage[i] = (int) Math.round(500 + 300 * Math.cos(angle) + 30 * Math.cos(3 * angle));
+            current[i] = (int) Math.round(200 + 100 * Math.cos(angle - Math.PI / 3));
+        }
+        
+        HarmonicAnalysis result = PowerUtils.analyzeHarmonics(
+                voltage, RealFFT.transform(voltage, new Spectrum()),
+                current, RealFFT.transform(current, new Spectrum()),
+                1.0, 1.0, new HarmonicAnalysis());
+        
+        assertEquals(4, result.getFundamentalBin());
+        assertEquals(8, result.getHarmonicCount());
+        assertEquals(300, result.getVoltageHarmonic(1), 0.5);
+        assertEquals(30, result.getVoltageHarmonic(3), 0.5);
+        assertEquals(0.1, result.getVoltageThd(), 0.005);
+        assertEquals(0.0, result.getCurrentThd(), 0.005);
+        assertEquals(500 * 200 + 300 * 100 / 2 * 0.5, result.getActivePower(), 50);
+        assertEquals(300 * 100 / 2 * Math.sin(Math.PI / 3), result.getReactivePower(), 50);
+        assertEquals(830.0 / Math.sqrt(500 * 500 + 300 * 300 / 2 + 30 * 30 / 2),
+                     result.getVoltageCrestFactor(), 0.01);
+        assertEquals(result.getActivePower() / result.getApparentPower(),
+                     result.getPowerFactor(), 1e-12);
     }
-    */
 }
@@ -0,0 +1,68 @@
+# Copyright 2012 Christe, Anthony
+# 
+# This file is part of KiP.
+#
+# KiP is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation, either version 3 of the License, or
+# (at your option) any later version.
+# 
+# KiP is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+# 
+# You should have received a copy of the GNU General Public License
+# along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+
+#!/bin/bash
+
+# Runs a benchmark. If the first argument names a benchmark class, that class
+# runs with the remaining arguments, otherwise the KiPBenchmarks suite runs
+# with all of them, e.g.
+#   ./benchmark.sh -o baseline.txt
+#   ./benchmark.sh -b baseline.txt history
+#   ./benchmark.sh DecodeScalingBenchmark 8 2
+#   ./benchmark.sh ValidationBenchmark
+
+# Base directory of source
+SRC="../main/java"
+
+# Base directory of benchmarks
+BENCHMARKS="../main/benchmarks"
+
+# Location to store temporary class files
+BIN="../bin-benchmarks"
+
+# GRAL library
+LIBGRAL="GRAL-0.8-dep.jar"
+
+# Apache Commons math library
+LIBAMATH="commons-math3-3.0.jar"
+
+# Location of libraries
+LIB="../../../lib/$LIBGRAL:../../../lib/$LIBAMATH"
+
+# JVM options, fixed so runs compare
+JVM_OPTS="-server -Xms512m -Xmx512m"
+
+# Benchmark to run
+BENCHMARK="KiPBenchmarks"
+if [ -n "$1" ] && [ -f "$BENCHMARKS/kip/benchmark/$1.java" ]
+then
+  BENCHMARK=$1
+  shift
+fi
+
+echo "Building benchmarks"
+rm -rf $BIN
+mkdir -p $BIN
+javac -cp $LIB -d $BIN $(find $SRC $BENCHMARKS -name '*.java') || exit 1
+
+echo "Running $BENCHMARK"
+java $JVM_OPTS -cp $BIN:$LIB kip.benchmark.$BENCHMARK "$@"
+status=$?
+
+echo "Cleaning up"
+rm -r $BIN
+exit $status
@@ -50,6 +50,9 @@ UTILS="../main/java/kip/utils/*.java"
 # kip.client source
 CLIENT="../main/java/kip/client/*.java"
 
+# kip.client.io source
+IO="../main/java/kip/client/io/*.java"
+
 # kip.client.ui source
 UI="../main/java/kip/client/ui/*.java"
 
@@ -83,7 +86,7 @@ cp $LIBBASE/* $DISTLIB/.
 echo "Class-Path: lib/$LIBGRAL lib/$LIBAMATH" > $MANIFEST
 
 echo "Building"
-javac -Xlint -cp $LIB -d $BIN $UTILS $CLIENT $UI $EMULATOR $SSL
+javac -Xlint -cp $LIB -d $BIN $UTILS $CLIENT $IO $UI $EMULATOR $SSL
 
 echo "Generating jar"
 jar cmf $MANIFEST $DIST/$JAR_TITLE -C $BIN . $SRC/*
@@ -0,0 +1,23 @@
+# Copyright 2012 Christe, Anthony
+# 
+# This file is part of KiP.
+#
+# KiP is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation, either version 3 of the License, or
+# (at your option) any later version.
+# 
+# KiP is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+# 
+# You should have received a copy of the GNU General Public License
+# along with KiP.  If not, see <http://www.gnu.org/licenses/>.
+
+#!/bin/bash
+
+# Emulates a fleet of boards. Arguments are passed on to KiPEmulatorFleet, e.g.
+#   sh fleet.sh -n 500 -p 4445 -r 20 -loss 0.01
+
+java -cp ../../../dist/KiP-1.0.jar kip.emulator.KiPEmulatorFleet "$@"